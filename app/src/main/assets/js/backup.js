@@ -1,3 +1,45 @@
+// Android: копии пишет нативный BackupStore (сжатие и запись в фоне), в localStorage они больше не кладутся
+if (window.AndroidBackup) {
+    // Копии, сделанные ещё в localStorage, один раз переносим в BackupStore
+    // с их исходным временем; ключ удаляется, только если перенеслись все
+    (function importLegacyBackups() {
+        const saved = localStorage.getItem('scenario_backups');
+        if (!saved) return;
+        try {
+            let imported = true;
+            for (const backup of JSON.parse(saved)) {
+                if (!backup || !backup.scenarioData) continue;
+                const baseName = (backup.fileName || 'untitled.json').replace('.json', '').replace(/\./g, '-');
+                const result = JSON.parse(window.AndroidBackup.importBackup(
+                    `${baseName}.json`, Date.parse(backup.timestamp) || 0, JSON.stringify(backup.scenarioData)));
+                if (!result.ok) imported = false;
+            }
+            if (imported) localStorage.removeItem('scenario_backups');
+        } catch (e) {
+            console.error('Legacy backups import failed:', e);
+        }
+    })();
+
+    listBackups = async function () {
+        const parsed = JSON.parse(window.AndroidBackup.list());
+        return parsed.ok ? parsed.backups.map(backup => backup.id) : [];
+    };
+
+    saveBackup = async function (name, content) {
+        window.AndroidBackup.submit(name, content);
+    };
+
+    readBackup = async function (id) {
+        const response = await fetch('https://appassets.androidplatform.net/backup/' + encodeURIComponent(id));
+        if (!response.ok) throw new Error('Backup not found: ' + id);
+        return await response.text();
+    };
+}
+
+function hasNativeBackups() {
+    return !!(window.AndroidBackup || window.chrome?.webview?.hostObjects?.backupManager);
+}
+
 if (window.chrome?.webview?.hostObjects?.backupManager) {
     listBackups = async function () {
         return await window.chrome.webview.hostObjects.backupManager.GetBackupFiles();
@@ -33,15 +75,21 @@ class BackupManager {
             this.settings = { ...this.settings, ...JSON.parse(savedSettings) };
             console.log('Loaded settings:', this.settings);
         }
+        if (window.AndroidBackup) {
+            window.AndroidBackup.setLimit(this.settings.limit);
+        }
     }
 
     saveSettings() {
         localStorage.setItem('backup_settings', JSON.stringify(this.settings));
+        if (window.AndroidBackup) {
+            window.AndroidBackup.setLimit(this.settings.limit);
+        }
     }
 
     async loadBackups() {
         let savedBackups;
-        if (window.chrome?.webview?.hostObjects?.backupManager) {
+        if (hasNativeBackups()) {
             savedBackups = await listBackups();
         } else {
             savedBackups = localStorage.getItem('scenario_backups');
@@ -98,18 +146,26 @@ class BackupManager {
             currentData.size = new Blob([dataStr]).size;
             currentData.charCount = dataStr.length;
 
-            this.backups.unshift(currentData);
+            // Нативное хранилище держит копии на диске, в памяти страницы их не копим
+            if (!hasNativeBackups()) {
+                this.backups.unshift(currentData);
 
-            if (this.backups.length > this.settings.limit) {
-                this.backups = this.backups.slice(0, this.settings.limit);
+                if (this.backups.length > this.settings.limit) {
+                    this.backups = this.backups.slice(0, this.settings.limit);
+                }
             }
 
             // Генерируем безопасное имя файла
-            const safeFileName = `${currentData.fileName.replace('.json', '').replace(/\./g, '-')}-${currentData.timestamp.replace(/[:.]/g, '-')}.json`;
-
-            if (window.chrome?.webview?.hostObjects?.backupManager) {
+            const baseName = currentData.fileName.replace('.json', '').replace(/\./g, '-');
+            // AndroidBackup склеивает снимки по имени и сам ставит время при записи,
+            // поэтому имя для него без метки времени
+            const safeFileName = window.AndroidBackup
+                ? `${baseName}.json`
+                : `${baseName}-${currentData.timestamp.replace(/[:.]/g, '-')}.json`;
+
+            if (hasNativeBackups()) {
                 console.log('Creating backup (app):', currentData.scenarioData);
-                await saveBackup(safeFileName, JSON.stringify(currentData.scenarioData));
+                await saveBackup(safeFileName, dataStr);
                 // Optional: обновляем список
                 await this.loadBackups();
             } else {
@@ -124,11 +180,11 @@ class BackupManager {
 
     async restoreBackup(index) {
         let allBackups = '';
-        if (window.chrome?.webview?.hostObjects?.backupManager) {
+        if (hasNativeBackups()) {
             allBackups = await listBackups();
         }
 
-        if (window.chrome?.webview?.hostObjects?.backupManager) {
+        if (hasNativeBackups()) {
             let fileContent;
             //alert(allBackups[index]);
             fileContent = await readBackup(allBackups[index]);
@@ -147,7 +203,16 @@ class BackupManager {
         return false;
     }
 
-    deleteBackup(index) {
+    async deleteBackup(index) {
+        if (window.AndroidBackup) {
+            const allBackups = await listBackups();
+            if (index >= 0 && index < allBackups.length) {
+                window.AndroidBackup.remove(allBackups[index]);
+                this.showBackupModal();
+                return true;
+            }
+            return false;
+        }
         if (index >= 0 && index < this.backups.length) {
             // Remove the backup
             this.backups.splice(index, 1);
@@ -219,7 +284,7 @@ class BackupManager {
         const listContainer = document.getElementById('backup-list');
         listContainer.innerHTML = '';
 
-        if (window.chrome?.webview?.hostObjects?.backupManager) {
+        if (hasNativeBackups()) {
             let allBackups
             allBackups = await listBackups();
 
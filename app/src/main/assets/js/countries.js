@@ -1763,6 +1763,11 @@ class CountryManager {
 
     pushToUndoStack() {
         if (!this.jsonData) return;
+
+        if (NativeHistory.available()) {
+            NativeHistory.commit('countries', this.jsonData);
+            return;
+        }
         
         this.undoStack.push(JSON.stringify(this.jsonData));
         if (this.undoStack.length > this.maxStackSize) {
@@ -1772,6 +1777,17 @@ class CountryManager {
     }
 
     undo() {
+        if (NativeHistory.available() && this.jsonData) {
+            const data = NativeHistory.undo('countries', this.jsonData);
+            if (!data) return;
+            this.jsonData = data;
+            this.updateJsonAndUI();
+            if (this.currentCountry) {
+                this.openCountry(this.currentCountry);
+            }
+            return;
+        }
+
         if (this.undoStack.length === 0) return;
 
         const currentState = JSON.stringify(this.jsonData);
@@ -1787,6 +1803,17 @@ class CountryManager {
     }
 
     redo() {
+        if (NativeHistory.available() && this.jsonData) {
+            const data = NativeHistory.redo('countries', this.jsonData);
+            if (!data) return;
+            this.jsonData = data;
+            this.updateJsonAndUI();
+            if (this.currentCountry) {
+                this.openCountry(this.currentCountry);
+            }
+            return;
+        }
+
         if (this.redoStack.length === 0) return;
 
         const currentState = JSON.stringify(this.jsonData);
@@ -2395,6 +2422,7 @@ class CountryManager {
 
     async loadScenario(scenarioData) {
         try {
+            NativeHistory.resetAll();
             this.jsonData = scenarioData;
             if (!this.jsonData.lands) {
                 this.jsonData.lands = {};
@@ -57,7 +57,8 @@ function createCustomDropdown(container, options = [], config = {}) {
             el.dataset.value = opt.value;
             el.setAttribute('aria-selected', opt.value === selectedValue ? 'true' : 'false');
             const checkmark = (opt.disabled === true) ? '' : `<span class="custom-dd__check" aria-hidden="true"></span>`;
-            const image = opt.img ? `<img src="${opt.img}.png" alt="" class="custom-dd__option-img"/>` : '';
+            const imgSrc = opt.img ? (window.thumbSrc ? thumbSrc(`${opt.img}.png`, 20) : `${opt.img}.png`) : '';
+            const image = opt.img ? `<img src="${imgSrc}" alt="" class="custom-dd__option-img"/>` : '';
             el.innerHTML = `${image}<span class="custom-dd__text">${opt.label}</span>${checkmark}`;
             list.appendChild(el);
         });
@@ -64,6 +64,7 @@ class EventManager {
 
     async loadScenario(content) {
         try {
+            NativeHistory.resetAll();
             this.jsonData = JSON.parse(content);
             if (!this.jsonData.custom_events) {
                 this.jsonData.custom_events = {};
@@ -939,6 +940,11 @@ generateUniqueId(minimumID = 0) {
 
     pushToUndoStack() {
         if (!this.jsonData) return;
+
+        if (NativeHistory.available()) {
+            NativeHistory.commit('events', this.jsonData);
+            return;
+        }
         
         this.undoStack.push(JSON.stringify(this.jsonData));
         if (this.undoStack.length > this.maxStackSize) {
@@ -948,6 +954,17 @@ generateUniqueId(minimumID = 0) {
     }
 
     undo() {
+        if (NativeHistory.available() && this.jsonData) {
+            const data = NativeHistory.undo('events', this.jsonData);
+            if (!data) return;
+            this.jsonData = data;
+            this.updateJsonInPreview();
+            if (this.currentEvent) {
+                this.openEvent(this.currentEvent);
+            }
+            return;
+        }
+
         if (this.undoStack.length === 0) return;
 
         const currentState = JSON.stringify(this.jsonData);
@@ -963,6 +980,17 @@ generateUniqueId(minimumID = 0) {
     }
 
     redo() {
+        if (NativeHistory.available() && this.jsonData) {
+            const data = NativeHistory.redo('events', this.jsonData);
+            if (!data) return;
+            this.jsonData = data;
+            this.updateJsonInPreview();
+            if (this.currentEvent) {
+                this.openEvent(this.currentEvent);
+            }
+            return;
+        }
+
         if (this.redoStack.length === 0) return;
 
         const currentState = JSON.stringify(this.jsonData);
@@ -29,6 +29,7 @@ class mapEditMgr {
 
         // Internal state
         this.mapData = null; // parsed map.json
+        this.geometry = null; // плоские буферы от AndroidMap (см. _loadGeometry)
         this.currentProvinceId = null; // numeric id from map.json
         this.provincesArray = null; // reference to window.countryManager.jsonData.provinces
 
@@ -97,6 +98,7 @@ class mapEditMgr {
             try {
                 const parsed = JSON.parse(ev.target.result);
                 this.mapData = parsed;
+                this._loadGeometry(ev.target.result, parsed);
 
                 if (this.fileStatus) {
                     this.fileStatus.textContent = `Загружен: ${file.name} — provinces: ${(parsed.provinces && parsed.provinces.length) || 0}`;
@@ -270,9 +272,9 @@ if (this.canvas && !this.canvas._memap_wheel_bound) {
         const contentX = mouseX / (this.tileSize * prevScale);
         const contentY = mouseY / (this.tileSize * prevScale);
 
-        // Установить новый масштаб и перерисовать
+        // Новый масштаб: сначала размер canvas, чтобы скролл было куда сдвинуть
         this.scale = newScale;
-        this._drawMap();
+        this._resizeCanvas();
 
         // Новая позиция мыши для того же контента
         const newMouseX = contentX * (this.tileSize * this.scale);
@@ -281,6 +283,9 @@ if (this.canvas && !this.canvas._memap_wheel_bound) {
         // Коррекция скролла родителя
         parent.scrollLeft = Math.max(0, prevScrollLeft + (newMouseX - mouseX));
         parent.scrollTop = Math.max(0, prevScrollTop + (newMouseY - mouseY));
+
+        // Рисуем один раз, уже для итоговой видимой области
+        this._drawMap();
     }, { passive: false });
 
     this.canvas._memap_wheel_bound = true;
@@ -327,17 +332,9 @@ if (this.canvas && !this.canvas._memap_wheel_bound) {
 
         const wUnits = this.mapWidth;
         const hUnits = this.mapHeight;
-
-        // Compute CSS pixel size of the canvas based on map units, tileSize and user scale
-        const cssWidth = Math.max(1, wUnits * this.tileSize * this.scale);
-        const cssHeight = Math.max(1, hUnits * this.tileSize * this.scale);
-
-        // Device pixel ratio handling for crisp rendering
         const dpr = window.devicePixelRatio || 1;
-        this.canvas.width = Math.floor(cssWidth * dpr);
-        this.canvas.height = Math.floor(cssHeight * dpr);
-        this.canvas.style.width = cssWidth + 'px';
-        this.canvas.style.height = cssHeight + 'px';
+        // При том же масштабе буфер не пересоздаётся: фон ниже всё равно закрывает его целиком
+        this._resizeCanvas();
 
         // Set transform so that drawing uses map units directly (vertices are in map units)
         // scaleFactor converts "map units" -> device pixels
@@ -351,9 +348,17 @@ if (this.canvas && !this.canvas._memap_wheel_bound) {
         this.ctx.fillRect(0, 0, wUnits, hUnits);
         this.ctx.restore();
 
-        // Draw each province
-        for (let province of this.mapData.provinces) {
-            this._drawProvince(province, false);
+        // Draw each province (с нативным индексом — только те, что видны)
+        const visible = this._visibleSlots();
+        if (visible) {
+            for (const slot of visible) {
+                const province = this.mapData.provinces[slot];
+                if (province) this._drawProvince(province, false);
+            }
+        } else {
+            for (let province of this.mapData.provinces) {
+                this._drawProvince(province, false);
+            }
         }
 
         // If a province is selected, re-highlight to ensure it's drawn on top
@@ -362,25 +367,31 @@ if (this.canvas && !this.canvas._memap_wheel_bound) {
         }
     }
 
-    _drawProvince(province, highlight = false) {
-        if (!this.ctx || !this.mapData) return;
+    // Подгоняет размер canvas под карту и масштаб; true, если буфер пересоздан.
+    // Присваивание width/height очищает и пересоздаёт буфер даже при том же
+    // значении, поэтому при неизменном размере его не трогаем
+    _resizeCanvas() {
+        // Compute CSS pixel size of the canvas based on map units, tileSize and user scale
+        const cssWidth = Math.max(1, this.mapWidth * this.tileSize * this.scale);
+        const cssHeight = Math.max(1, this.mapHeight * this.tileSize * this.scale);
 
-        // Получаем координаты вершин (в единицах карты)
-        const vertices = (province.vertex_indices || []).map(idx => {
-            const vertex = this.mapData.vertices_positions[String(idx)];
-            return (Array.isArray(vertex) && vertex.length >= 2) ? [Number(vertex[0]), Number(vertex[1])] : [0, 0];
-        });
+        // Device pixel ratio handling for crisp rendering
+        const dpr = window.devicePixelRatio || 1;
+        const width = Math.floor(cssWidth * dpr);
+        const height = Math.floor(cssHeight * dpr);
+        this.canvas.style.width = cssWidth + 'px';
+        this.canvas.style.height = cssHeight + 'px';
+        if (this.canvas.width === width && this.canvas.height === height) return false;
+        this.canvas.width = width;
+        this.canvas.height = height;
+        return true;
+    }
 
-        if (vertices.length < 3) return;
+    _drawProvince(province, highlight = false) {
+        if (!this.ctx || !this.mapData) return;
 
         // Создаем путь полигона (координаты в map units)
-        this.ctx.beginPath();
-        this.ctx.moveTo(vertices[0][0], vertices[0][1]);
-
-        for (let i = 1; i < vertices.length; i++) {
-            this.ctx.lineTo(vertices[i][0], vertices[i][1]);
-        }
-        this.ctx.closePath();
+        if (!this._traceProvince(province)) return;
 
         // Получаем данные провинции из глобального массива
         const provinceData = window.countryManager?.jsonData?.provinces?.[province.id] || {};
@@ -421,6 +432,159 @@ if (this.canvas && !this.canvas._memap_wheel_bound) {
         }
     }
 
+    // Строит путь провинции; false, если у неё меньше трёх вершин
+    _traceProvince(province) {
+        const g = this.geometry;
+        const slot = g ? g.slotById.get(province.id) : undefined;
+        if (slot !== undefined) {
+            // Готовые буферы: без поиска по строковым ключам и без новых массивов
+            const start = g.offsets[slot];
+            const end = g.offsets[slot + 1];
+            if (end - start < 3) return false;
+            const v = g.vertices;
+            const idx = g.indices;
+            let k = idx[start] * 2;
+            this.ctx.beginPath();
+            this.ctx.moveTo(v[k], v[k + 1]);
+            for (let i = start + 1; i < end; i++) {
+                k = idx[i] * 2;
+                this.ctx.lineTo(v[k], v[k + 1]);
+            }
+            this.ctx.closePath();
+            return true;
+        }
+
+        // Получаем координаты вершин (в единицах карты)
+        const vertices = (province.vertex_indices || []).map(idx => {
+            const vertex = this.mapData.vertices_positions[String(idx)];
+            return (Array.isArray(vertex) && vertex.length >= 2) ? [Number(vertex[0]), Number(vertex[1])] : [0, 0];
+        });
+
+        if (vertices.length < 3) return false;
+
+        this.ctx.beginPath();
+        this.ctx.moveTo(vertices[0][0], vertices[0][1]);
+
+        for (let i = 1; i < vertices.length; i++) {
+            this.ctx.lineTo(vertices[i][0], vertices[i][1]);
+        }
+        this.ctx.closePath();
+        return true;
+    }
+
+    /* -----------------------------
+         Viewport culling (AndroidMap.provincesInRect)
+         Рисуется видимая часть с запасом в пол-экрана с каждой стороны;
+         когда прокрутка выходит за нарисованное, карта перерисовывается.
+         ----------------------------- */
+    _visibleSlots() {
+        this._drawnRect = null;
+        if (!this.geometry || !window.AndroidMap || !this.canvas) return null;
+        const parent = this.canvas.parentElement;
+        if (!parent) return null;
+        this._bindCullingScroll(parent);
+
+        const rect = this._viewportRect(parent, 0.5);
+        if (!rect) return null;
+        try {
+            const res = JSON.parse(AndroidMap.provincesInRect(rect.x0, rect.y0, rect.x1, rect.y1));
+            if (!res.ok) return null;
+            this._drawnRect = rect;
+            return res.slots;
+        } catch (err) {
+            console.warn('AndroidMap.provincesInRect:', err);
+            return null;
+        }
+    }
+
+    // Видимая область контейнера в единицах карты, расширенная на margin её размера
+    _viewportRect(parent, margin) {
+        const k = this.tileSize * this.scale;
+        const view = parent.getBoundingClientRect();
+        const canvasRect = this.canvas.getBoundingClientRect();
+        if (!k || view.width === 0 || view.height === 0) return null;
+        const w = view.width / k;
+        const h = view.height / k;
+        const x = (view.left - canvasRect.left) / k;
+        const y = (view.top - canvasRect.top) / k;
+        return { x0: x - w * margin, y0: y - h * margin, x1: x + w * (1 + margin), y1: y + h * (1 + margin) };
+    }
+
+    _bindCullingScroll(parent) {
+        if (parent._memap_cull_bound) return;
+        parent._memap_cull_bound = true;
+        let pending = false;
+        parent.addEventListener('scroll', () => {
+            if (pending || !this._drawnRect) return;
+            pending = true;
+            requestAnimationFrame(() => {
+                pending = false;
+                const drawn = this._drawnRect;
+                const now = this._viewportRect(parent, 0);
+                if (!drawn || !now) return;
+                if (now.x0 < drawn.x0 || now.y0 < drawn.y0 || now.x1 > drawn.x1 || now.y1 > drawn.y1) {
+                    this._drawMap();
+                }
+            });
+        }, { passive: true });
+    }
+
+    /* -----------------------------
+         Native geometry (AndroidMap)
+         map.json разбирается в Java один раз, буферы приходят одним
+         бинарным ответом — формат описан в MapGeometry.java.
+         ----------------------------- */
+    async _loadGeometry(text, mapData) {
+        this.geometry = null;
+        if (!window.AndroidMap) return;
+        try {
+            // Буферы прежней карты больше не нужны — отпускаем их до разбора новой
+            AndroidMap.clear();
+            // Разбор идёт в пуле моста, страница в это время не замирает
+            const info = await NativeAsync.call(() => AndroidMap.loadAsync(text));
+            if (this.mapData !== mapData) return;
+            if (!info.ok) {
+                console.warn('AndroidMap.load:', info.error);
+                return;
+            }
+            const response = await fetch(info.url);
+            if (!response.ok) throw new Error(`HTTP ${response.status}`);
+            const geometry = this._decodeGeometry(await response.arrayBuffer());
+            // Пока шёл запрос, могли загрузить другой файл
+            if (this.mapData !== mapData) return;
+            this.geometry = geometry;
+            console.log(`Map geometry: ${info.provinces} provinces, ${info.bytes} bytes, parsed in ${info.parseMs} ms`);
+            this._drawMap();
+        } catch (err) {
+            console.warn('Native map geometry unavailable:', err);
+        }
+    }
+
+    _decodeGeometry(buffer) {
+        const head = new Int32Array(buffer, 0, 8);
+        if (head[0] !== 0x4F45474D || head[1] !== 1) throw new Error('Unknown geometry format');
+        const provinces = head[2], vertexCount = head[3], indexCount = head[4];
+        let offset = 48;
+        const take = (Type, length) => {
+            const view = new Type(buffer, offset, length);
+            offset += length * 4;
+            return view;
+        };
+        const geometry = {
+            ids: take(Int32Array, provinces),
+            offsets: take(Int32Array, provinces + 1),
+            boxes: take(Float32Array, provinces * 4),
+            centers: take(Float32Array, provinces * 2),
+            vertices: take(Float32Array, vertexCount * 2),
+            indices: take(Int32Array, indexCount),
+            slotById: new Map(),
+        };
+        for (let i = 0; i < provinces; i++) {
+            if (!geometry.slotById.has(geometry.ids[i])) geometry.slotById.set(geometry.ids[i], i);
+        }
+        return geometry;
+    }
+
     _getProvinceColorByMode(provinceId, provinceData) {
         switch (this.mapView) {
             case 'countries':
@@ -571,6 +735,16 @@ if (this.canvas && !this.canvas._memap_wheel_bound) {
     _findProvinceAtPoint(x, y) {
         if (!this.mapData) return null;
 
+        // Нативная сетка: проверяются только провинции одной клетки
+        if (this.geometry && window.AndroidMap) {
+            try {
+                const hit = JSON.parse(AndroidMap.provinceAt(x, y));
+                if (hit.ok) return hit.slot >= 0 ? this.mapData.provinces[hit.slot] || null : null;
+            } catch (err) {
+                console.warn('AndroidMap.provinceAt:', err);
+            }
+        }
+
         // Проверяем провинции в обратном порядке (последние рисуются сверху)
         for (let i = this.mapData.provinces.length - 1; i >= 0; i--) {
             const province = this.mapData.provinces[i];
@@ -880,6 +1054,11 @@ document.addEventListener('DOMContentLoaded', function() {
         console.error('[mapEditMgr] init error:', err);
     }
 
+    // Объект моста переживает перезагрузку страницы — карту освобождаем сами
+    window.addEventListener('pagehide', () => {
+        if (window.AndroidMap) AndroidMap.clear();
+    });
+
     try {
         document.querySelectorAll('.mapedit_input_needsave').forEach(el => {
             el.addEventListener('change', () => {
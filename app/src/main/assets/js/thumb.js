@@ -0,0 +1,41 @@
+// Уменьшенные картинки из приложения (ThumbnailServer).
+// thumbSrc(src, cssWidth) возвращает адрес копии нужной ширины; вне приложения
+// и для чужих адресов возвращает src как есть. Для статичной разметки:
+// <img data-thumb="64" src="..."> — src заменится после загрузки DOM
+// (картинке лучше стоять с loading="lazy", чтобы оригинал не успел скачаться).
+(function () {
+    const ORIGIN = 'https://appassets.androidplatform.net';
+    const LIBRARY = 'https://raw.githubusercontent.com/eenot-eenot/eeditor-ws-data/refs/heads/main/';
+    const enabled = window.location.origin === ORIGIN;
+
+    function thumbSrc(src, cssWidth) {
+        if (!enabled || !src) return src;
+        let url;
+        try {
+            url = new URL(src, document.baseURI).href;
+        } catch (e) {
+            return src;
+        }
+        const width = Math.ceil((cssWidth || 256) * (window.devicePixelRatio || 1));
+        if (url.startsWith(ORIGIN + '/assets/')) {
+            // Первый сегмент после /assets/ — номер сборки
+            const rest = url.substring((ORIGIN + '/assets/').length);
+            const slash = rest.indexOf('/');
+            if (slash < 0) return src;
+            return `${ORIGIN}/thumb/${width}/assets/${rest.substring(slash + 1)}`;
+        }
+        if (url.startsWith(LIBRARY)) {
+            return `${ORIGIN}/thumb/${width}/library/${url.substring(LIBRARY.length)}`;
+        }
+        return src;
+    }
+
+    window.thumbSrc = thumbSrc;
+
+    document.addEventListener('DOMContentLoaded', () => {
+        if (!enabled) return;
+        document.querySelectorAll('img[data-thumb]').forEach(img => {
+            img.src = thumbSrc(img.getAttribute('src'), parseInt(img.dataset.thumb, 10));
+        });
+    });
+})();
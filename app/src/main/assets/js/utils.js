@@ -207,10 +207,103 @@ function saveToPreview(data) {
     document.getElementById('preview-content').value = JSON.stringify(data, null, 4);
 }
 
+// Применяет изменения из AndroidHistory ({op, path, value}) к объекту на месте.
+// Возвращает корень: он меняется, только если заменён весь документ
+function applyHistoryChanges(target, changes) {
+    for (const change of changes) {
+        const path = change.path;
+        if (path.length === 0) {
+            if (change.op === 'set') target = change.value;
+            else if (change.op === 'len') target.length = change.value;
+            continue;
+        }
+        let parent = target;
+        for (let i = 0; i < path.length - 1; i++) {
+            parent = parent[path[i]];
+        }
+        const key = path[path.length - 1];
+        if (change.op === 'set') {
+            parent[key] = change.value;
+        } else if (change.op === 'del') {
+            delete parent[key];
+        } else if (change.op === 'len') {
+            parent[key].length = change.value;
+        }
+    }
+    return target;
+}
+
+// История undo/redo на стороне Android: хранит только разницу между версиями
+const NativeHistory = {
+    // Документ канала, возвращённый последним undo/redo: пока он не правился,
+    // история его уже знает и повторный шаг не передаёт документ целиком
+    lastStepped: {},
+
+    available() {
+        return !!window.AndroidHistory;
+    },
+
+    commit(channel, data) {
+        delete this.lastStepped[channel];
+        window.AndroidHistory.commit(channel, JSON.stringify(data));
+    },
+
+    // Открыт другой сценарий: история прежнего к нему не относится
+    resetAll() {
+        this.lastStepped = {};
+        if (this.available()) window.AndroidHistory.resetAll();
+    },
+
+    // Возвращают документ после шага или null, если шагать некуда
+    undo(channel, data) {
+        return this.step('undo', channel, data);
+    },
+
+    redo(channel, data) {
+        return this.step('redo', channel, data);
+    },
+
+    step(method, channel, data) {
+        const json = this.lastStepped[channel] === data ? null : JSON.stringify(data);
+        const result = JSON.parse(window.AndroidHistory[method](channel, json));
+        if (!result.ok) return null;
+        const next = applyHistoryChanges(data, result.changes);
+        this.lastStepped[channel] = next;
+        return next;
+    }
+};
+
+// История живёт в Activity и переживает перезагрузку страницы
+NativeHistory.resetAll();
+
+// Асинхронные методы моста (*Async) сразу возвращают id, а результат
+// приходит в window.onAndroidComplete(id, result) — см. BridgeExecutor.java
+const NativeAsync = {
+    pending: new Map(),
+
+    // call — функция, вызывающая *Async метод; промис разрешается его JSON-ответом
+    call(call) {
+        return new Promise((resolve) => {
+            this.pending.set(call(), resolve);
+        });
+    },
+
+    complete(id, result) {
+        const resolve = this.pending.get(id);
+        if (!resolve) return;
+        this.pending.delete(id);
+        resolve(result);
+    }
+};
+
+window.onAndroidComplete = (id, result) => NativeAsync.complete(id, result);
+
 // Экспортируем утилиты
 window.ColorUtils = ColorUtils;
 window.ValidationUtils = ValidationUtils;
 window.DOMUtils = DOMUtils; 
+window.NativeHistory = NativeHistory;
+window.NativeAsync = NativeAsync;
 
 document.addEventListener('DOMContentLoaded', function() {
     if (new URLSearchParams(window.location.search).get('dev') === 'true') {
@@ -167,6 +167,8 @@ function generateScenarioCard(scenario) {
     const mapId = scenario.id.slice(0, 2);
     const mapData = getMapData(scenario.id.slice(0, 3).join('_'));
     const imagePath = generateImagePath(scenario.id);
+    // Карточка не шире 250px, на узком экране — во всю ширину
+    const thumbPath = window.thumbSrc ? thumbSrc(imagePath, Math.min(window.innerWidth || 420, 420)) : imagePath;
     const scenarioPath = generateScenarioPath(scenario.id);
     const detailsLink = generateDetailsLink(scenario.id);
     const score = calculateScenarioScore(scenario);
@@ -217,7 +219,7 @@ function generateScenarioCard(scenario) {
                 <div class="download-up">
                     <div class="download-image-container">
                         <a href="${detailsLink}">
-                            <img loading="lazy" src="${imagePath}" class="download-goto-page" style="${scenario.img_special_styles || ''}">
+                            <img loading="lazy" src="${thumbPath}" class="download-goto-page" style="${scenario.img_special_styles || ''}">
                             <div class="gradient-overlay"></div>
                         </a>
                         <div class="download-awards">
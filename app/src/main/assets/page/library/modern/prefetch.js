@@ -0,0 +1,75 @@
+// Подкачка деталей сценариев для видимых карточек (AndroidLibrary).
+// Нативная очередь скачивает JSON и картинку в кэш, detalis.html потом
+// открывается без ожидания сети. Список шлётся сверху вниз — это и есть приоритет,
+// ушедшие с экрана карточки из очереди выбрасываются.
+(function () {
+    if (!window.AndroidLibrary || window.location.href.includes('file:///')) return;
+
+    const visible = new Set();
+    let timer = null;
+
+    function cardPath(card) {
+        const fullId = card.dataset.fullId;
+        if (!fullId) return null;
+        const parts = fullId.split('_');
+        if (parts.length < 3) return null;
+        return `lib/${parts[0]}/${parts[1]}/${fullId}`;
+    }
+
+    function send() {
+        timer = null;
+        const cards = Array.from(visible)
+            .filter(card => card.isConnected)
+            .sort((a, b) => a.getBoundingClientRect().top - b.getBoundingClientRect().top);
+        const paths = [];
+        for (const card of cards) {
+            const path = cardPath(card);
+            if (path && !paths.includes(path)) paths.push(path);
+        }
+        try {
+            AndroidLibrary.prefetch(JSON.stringify(paths));
+        } catch (e) {
+            console.warn('Prefetch failed:', e);
+        }
+    }
+
+    function schedule() {
+        if (timer === null) timer = setTimeout(send, 150);
+    }
+
+    // Немного заранее: карточка начинает качаться за экран до появления
+    const observer = new IntersectionObserver(entries => {
+        for (const entry of entries) {
+            if (entry.isIntersecting) visible.add(entry.target);
+            else visible.delete(entry.target);
+        }
+        schedule();
+    }, { rootMargin: '200px 0px' });
+
+    function observeCards(root) {
+        if (root.matches && root.matches('.download-card')) observer.observe(root);
+        if (root.querySelectorAll) root.querySelectorAll('.download-card').forEach(card => observer.observe(card));
+    }
+
+    document.addEventListener('DOMContentLoaded', () => {
+        observeCards(document);
+        // Карточки перерисовываются фильтрами и вкладками
+        new MutationObserver(mutations => {
+            for (const m of mutations) {
+                m.addedNodes.forEach(node => {
+                    if (node.nodeType === Node.ELEMENT_NODE) observeCards(node);
+                });
+                m.removedNodes.forEach(node => {
+                    if (node.nodeType === Node.ELEMENT_NODE && visible.delete(node)) schedule();
+                });
+            }
+        }).observe(document.body, { childList: true, subtree: true });
+    });
+
+    window.addEventListener('pagehide', () => {
+        try {
+            AndroidLibrary.cancelPrefetch();
+        } catch (e) {
+        }
+    });
+})();
@@ -373,6 +373,7 @@ class ScenarioManager {
 
     async loadScenario(scenarioData) {
         try {
+            NativeHistory.resetAll();
             const content = JSON.stringify(scenarioData, null, 4);
             if (previewContent) {
                 previewContent.value = content;
@@ -891,24 +892,43 @@ document.addEventListener('DOMContentLoaded', function() {
                 
                 showSuccess('Загружено', 'Готово к редактированию');
             } else*/ if (isAndroidApp) {
+                // Строка под именем файла: название сценария и размеры
+                const scenarioMetaHtml = (file) => {
+                    if (file.title === undefined) return '';
+                    const escape = (text) => String(text).replace(/[&<>"]/g, c => `&#${c.charCodeAt(0)};`);
+                    const parts = [];
+                    if (file.title) parts.push(escape(file.title));
+                    parts.push(`${file.lands} / ${file.provinces} / ${file.events}`);
+                    if (file.languages && file.languages.length) parts.push(file.languages.join(', '));
+                    return `<br><small>${parts.join(' · ')}</small>`;
+                };
+
                 (async function showScenariosModal() {
                     try {
                         let fileList
                         if (isAndroidApp) {
-                            Android.writeFile('scenarios/blank.txt', [], "text");
-                            Android.writeFile("test.txt", [], "text");
                         if (typeof Android === 'undefined' || !Android.listFiles) {
                             throw new Error("Android interface недоступен");
                         }
 
-                        // Получаем список файлов в папке scenarios
-                        let response = Android.listFiles('scenarios');
-                            response = Android.listFiles('scenarios');
+                        // Получаем список файлов в папке scenarios.
+                        // Список отдаётся из кэша на стороне Android, сразу отфильтрованный по *.json;
+                        // AndroidScenarios добавляет к нему название и счётчики, не читая сами файлы.
+                        // Папку создаём только если её ещё нет, иначе запись сбрасывала бы кэш
+                        const listScenarios = () => window.AndroidScenarios
+                            ? AndroidScenarios.list()
+                            : Android.listFiles('scenarios', 0, 0, '*.json', 'name');
+                        let response = listScenarios();
+                        if (!JSON.parse(response).ok) {
+                            Android.writeFile('scenarios/blank.txt', [], "text");
+                            Android.writeFile("test.txt", [], "text");
+                            response = listScenarios();
+                        }
                         //alert(JSON.stringify(response));
                         try {
                             const parsed = JSON.parse(response);
                             if (!parsed.ok) throw new Error(parsed.error || "Unknown error listing files");
-                            fileList = parsed.files || [];
+                            fileList = parsed.scenarios || parsed.files || [];
                             fileList = fileList.filter(file => file.name.endsWith('.json'));
                         } catch (e) {
                             throw new Error("Error in getting list of scenarios. Check folder Android/data/com.eenot.eeditor/files/scenarios: " + e.message);
@@ -927,11 +947,25 @@ document.addEventListener('DOMContentLoaded', function() {
                         const contentDiv = document.createElement('div');
                         contentDiv.classList.add('android_file_div');
 
+                        // Файл не из папки scenarios: системный выбор, проверка JSON идёт в фоне
+                        // и приходит в window.onPickedFile / window.onJsonValidation
+                        if (isAndroidApp && Android.openFilePicker) {
+                            const pickBtn = document.createElement('button');
+                            pickBtn.innerHTML = `<img src="img/ui/file/file.svg"><p>Открыть с устройства…</p>`;
+                            pickBtn.classList.add('android_file_btn');
+                            pickBtn.onclick = () => {
+                                const res = JSON.parse(Android.openFilePicker());
+                                if (!res.ok) showError('Ошибка', res.error);
+                            };
+                            contentDiv.appendChild(pickBtn);
+                        }
+
                         fileList.forEach(file => {
                             if (!file.isDirectory) {
                                 const btn = document.createElement('button');
-                                btn.innerHTML = `<img src="img/ui/file/file.svg"><p>${file.name}</p>`;
+                                btn.innerHTML = `<img src="img/ui/file/file.svg"><p>${file.name}${scenarioMetaHtml(file)}</p>`;
                                 btn.classList.add('android_file_btn');
+                                btn.dataset.path = file.relativePath || file.name;
                                 btn.onclick = () => {
                                     try {
                                         const content = JSON.parse(Android.readFile('scenarios/' + file.name, 'text')).content;
@@ -961,6 +995,15 @@ document.addEventListener('DOMContentLoaded', function() {
                             }
                         });
                         
+                        // Метаданные изменённых файлов досчитываются в фоне и приходят сюда
+                        window.onScenarioIndexUpdated = (result) => {
+                            for (const scenario of result.scenarios || []) {
+                                const btn = contentDiv.querySelector(`[data-path="${CSS.escape(scenario.relativePath)}"]`);
+                                const label = btn && btn.querySelector('p');
+                                if (label) label.innerHTML = scenario.name + scenarioMetaHtml(scenario);
+                            }
+                        };
+
                         modal.appendChild(contentDiv);
                         changePage('popenfiles');
 
@@ -1020,6 +1063,7 @@ document.addEventListener('DOMContentLoaded', function() {
 // Функция для обработки содержимого файла
 function handleFileContent(fileName, content) {
     document.querySelector('body').classList.add('opened');
+    NativeHistory.resetAll();
     
 
                     if (JSON.stringify(content).includes('{') && JSON.stringify(content).includes('}')) {
@@ -1094,6 +1138,20 @@ function handleFileContent(fileName, content) {
     }
 }
 
+    // Файл из системного выбора (Android.openFilePicker): текст приходит как есть
+    window.onPickedFile = (fileName, content) => {
+        handleFileContent(fileName, content);
+        changePage('main');
+    };
+
+    // Ошибки JSON из фоновой проверки: строка, колонка и путь в документе
+    window.onJsonValidation = (report) => {
+        const lines = report.errors.map(e =>
+            `${e.line}:${e.column}${e.path ? ' (' + e.path + ')' : ''} — ${e.message}`);
+        console.warn('JSON errors in ' + report.fileName, report.errors);
+        showWarning('Ошибка в JSON', lines.join('\n'));
+    };
+
     // Обработчик изменений в текстовом поле
     let saveTimeout;
     previewContent.addEventListener('input', () => {
@@ -1311,7 +1369,7 @@ function loadFileViaScheme() {
     console.log('Starting file load via scheme');
     setTimeout(() => {
         console.log('Making fetch request');
-        fetch('filedata://current')
+        fetch('/filedata/current')
             .then(response => {
                 console.log('Got response:', response);
                 return response.json();
@@ -1335,6 +1393,7 @@ function loadFileViaScheme() {
 }
 
 function handleFileContent(fileName, content, filePath) {
+    NativeHistory.resetAll();
     console.log('Received file:', {
         name: fileName,
         path: filePath,
@@ -1348,7 +1407,7 @@ function handleFileContent(fileName, content, filePath) {
 }
 
 function loadFileViaScheme() {
-    fetch('filedata://current')
+    fetch('/filedata/current')
         .then(response => response.json())
         .then(data => {
             if (data.error) {
@@ -0,0 +1,260 @@
+package com.eenot.eeditor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Запись файлов, которую нельзя оборвать на середине.
+ * <ul>
+ *   <li>полная перезапись — через временный файл, fsync и rename;</li>
+ *   <li>дозапись, запись по смещению и набор патчей — через маленький журнал
+ *       (.name.journal): сначала журнал с данными и CRC сбрасывается на диск,
+ *       потом изменения применяются к самому файлу, потом журнал удаляется.</li>
+ * </ul>
+ * Если процесс упал, {@link #recover(File)} доигрывает целый журнал и выбрасывает
+ * оборванный, так что файл всегда в состоянии «до» или «после» записи.
+ * Записи одного файла идут через один журнал, поэтому выполняются по очереди
+ * под блокировкой этого файла. Чтение журнал не трогает: после падения его
+ * доигрывает {@link #recoverAll(File)} при запуске или следующая запись.
+ */
+final class AtomicFileWriter {
+    private static final int JOURNAL_MAGIC = 0x45454a31; // "EEJ1"
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    // Канонический путь → объект блокировки записей этого файла
+    private static final ConcurrentHashMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    static final class Patch {
+        final long offset;
+        final byte[] data;
+
+        Patch(long offset, byte[] data) {
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+
+    private AtomicFileWriter() {
+    }
+
+    /** Служебные файлы, которые не нужно показывать в списках. */
+    static boolean isScratch(String name) {
+        return name.startsWith(".") && (name.endsWith(TMP_SUFFIX) || name.endsWith(JOURNAL_SUFFIX));
+    }
+
+    /**
+     * Полностью заменяет содержимое файла. Временный файл у каждой записи свой,
+     * так что параллельные замены одного файла не портят друг другу данные.
+     */
+    static void replace(File target, byte[] data) throws IOException {
+        File tmp = File.createTempFile("." + target.getName() + ".", TMP_SUFFIX, target.getParentFile());
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        synchronized (lockFor(target)) {
+            if (!tmp.renameTo(target)) {
+                tmp.delete();
+                throw new IOException("Cannot replace " + target.getName());
+            }
+            // Старый журнал относится к прежнему содержимому
+            journalFile(target).delete();
+        }
+    }
+
+    static void append(File target, byte[] data) throws IOException {
+        synchronized (lockFor(target)) {
+            recoverLocked(target);
+            long length = target.length();
+            apply(target, Collections.singletonList(new Patch(length, data)), -1);
+        }
+    }
+
+    static void writeAt(File target, long offset, byte[] data) throws IOException {
+        synchronized (lockFor(target)) {
+            recoverLocked(target);
+            apply(target, Collections.singletonList(new Patch(offset, data)), -1);
+        }
+    }
+
+    /**
+     * Применяет патчи атомарно.
+     *
+     * @param truncateTo итоговая длина файла или -1, чтобы не менять её
+     */
+    static void patch(File target, List<Patch> patches, long truncateTo) throws IOException {
+        synchronized (lockFor(target)) {
+            recoverLocked(target);
+            apply(target, patches, truncateTo);
+        }
+    }
+
+    /**
+     * Доигрывает незавершённую запись, если после неё остался целый журнал.
+     *
+     * @return true, если журнал был применён
+     */
+    static boolean recover(File target) throws IOException {
+        synchronized (lockFor(target)) {
+            return recoverLocked(target);
+        }
+    }
+
+    /**
+     * Доигрывает журналы, оставшиеся после падения, во всём дереве dir.
+     * Для вызова один раз при запуске, в фоне.
+     *
+     * @return сколько журналов применено
+     */
+    static int recoverAll(File dir) {
+        File[] children = dir.listFiles();
+        if (children == null) return 0;
+        int applied = 0;
+        for (File child : children) {
+            String name = child.getName();
+            if (child.isDirectory()) {
+                applied += recoverAll(child);
+            } else if (name.startsWith(".") && name.endsWith(JOURNAL_SUFFIX)) {
+                File target = new File(dir, name.substring(1, name.length() - JOURNAL_SUFFIX.length()));
+                try {
+                    if (recover(target)) applied++;
+                } catch (IOException ignored) {
+                    // Журнал остаётся, следующая запись файла попробует ещё раз
+                }
+            }
+        }
+        return applied;
+    }
+
+    private static Object lockFor(File target) {
+        String key;
+        try {
+            key = target.getCanonicalPath();
+        } catch (IOException e) {
+            key = target.getAbsolutePath();
+        }
+        return LOCKS.computeIfAbsent(key, k -> new Object());
+    }
+
+    private static boolean recoverLocked(File target) throws IOException {
+        File journal = journalFile(target);
+        if (!journal.exists()) return false;
+        boolean applied = false;
+        try {
+            Journal j = readJournal(journal);
+            if (j != null) {
+                applyToTarget(target, j.patches, j.truncateTo);
+                applied = true;
+            }
+        } finally {
+            journal.delete();
+        }
+        return applied;
+    }
+
+    private static void apply(File target, List<Patch> patches, long truncateTo) throws IOException {
+        for (Patch p : patches) {
+            if (p.offset < 0) throw new IOException("Negative offset");
+        }
+        File journal = journalFile(target);
+        writeJournal(journal, patches, truncateTo);
+        applyToTarget(target, patches, truncateTo);
+        journal.delete();
+    }
+
+    private static void applyToTarget(File target, List<Patch> patches, long truncateTo) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            for (Patch p : patches) {
+                raf.seek(p.offset);
+                raf.write(p.data);
+            }
+            if (truncateTo >= 0) raf.setLength(truncateTo);
+            raf.getFD().sync();
+        }
+    }
+
+    static File journalFile(File target) {
+        return new File(target.getParentFile(), "." + target.getName() + JOURNAL_SUFFIX);
+    }
+
+    static void writeJournal(File journal, List<Patch> patches, long truncateTo) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fos = new FileOutputStream(journal)) {
+            DataOutputStream out = new DataOutputStream(
+                    new CheckedOutputStream(new BufferedOutputStream(fos), crc));
+            out.writeInt(JOURNAL_MAGIC);
+            out.writeLong(truncateTo);
+            out.writeInt(patches.size());
+            for (Patch p : patches) {
+                out.writeLong(p.offset);
+                out.writeInt(p.data.length);
+                out.write(p.data);
+            }
+            out.flush();
+            // CRC пишем мимо CheckedOutputStream — он считается по всему, что выше
+            DataOutputStream tail = new DataOutputStream(fos);
+            tail.writeLong(crc.getValue());
+            tail.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    private static final class Journal {
+        final List<Patch> patches;
+        final long truncateTo;
+
+        Journal(List<Patch> patches, long truncateTo) {
+            this.patches = patches;
+            this.truncateTo = truncateTo;
+        }
+    }
+
+    /** null — журнал оборван или повреждён, значит файл ещё не трогали. */
+    private static Journal readJournal(File journal) throws IOException {
+        long length = journal.length();
+        if (length < 4 + 8 + 4 + 8) return null;
+        CRC32 crc = new CRC32();
+        try (FileInputStream fis = new FileInputStream(journal)) {
+            DataInputStream in = new DataInputStream(
+                    new CheckedInputStream(new BufferedInputStream(fis), crc));
+            if (in.readInt() != JOURNAL_MAGIC) return null;
+            long truncateTo = in.readLong();
+            int count = in.readInt();
+            // Заголовок ещё не проверен CRC: count не может быть больше, чем патчей помещается в файл
+            if (count < 0 || truncateTo < -1 || count > (length - 24) / 12) return null;
+            long consumed = 16;
+            java.util.ArrayList<Patch> patches = new java.util.ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long offset = in.readLong();
+                int size = in.readInt();
+                consumed += 12 + (long) size;
+                if (size < 0 || consumed + 8 > length) return null;
+                byte[] data = new byte[size];
+                in.readFully(data);
+                patches.add(new Patch(offset, data));
+            }
+            long expected = crc.getValue();
+            // Контрольная сумма лежит после данных и в CRC не входит
+            long stored = new DataInputStream(in).readLong();
+            if (stored != expected) return null;
+            return new Journal(patches, truncateTo);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.eenot.eeditor;
+
+import android.content.Context;
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Резервные копии сценариев на диске вместо localStorage (JS-объект AndroidBackup).
+ * submit() только запоминает снимок; частые вызовы склеиваются, и на диск
+ * сжатым через Deflater уходит лишь последний снимок после паузы.
+ * Хранится кольцо из последних N копий в getExternalFilesDir("backups").
+ * Содержимое копии читается потоком: fetch(ORIGIN + "/backup/" + id).
+ */
+class BackupStore {
+    private static final String TAG = "BackupStore";
+    static final String PREFIX = LocalAssetServer.ORIGIN + "/backup/";
+
+    private static final String SUFFIX = ".json.z";
+    private static final long DEBOUNCE_MS = 2000;
+    private static final int DEFAULT_LIMIT = 20;
+    private static final long MAX_TOTAL_BYTES = 64L * 1024 * 1024;
+
+    private final File dir;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "backup-writer");
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    // Ожидающие записи снимки по имени файла сценария; новый снимок заменяет старый
+    private final Map<String, String> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduled;
+    private volatile int limit = DEFAULT_LIMIT;
+
+    BackupStore(Context context) {
+        File base = context.getExternalFilesDir("backups");
+        if (base == null) base = new File(context.getFilesDir(), "backups");
+        this.dir = base;
+    }
+
+    /**
+     * Принимает снимок и сразу возвращается. Запись произойдёт в фоне,
+     * когда снимки перестанут приходить на DEBOUNCE_MS.
+     */
+    @JavascriptInterface
+    public String submit(String fileName, String content) {
+        if (content == null) return JsonCodec.error("Empty content");
+        synchronized (pending) {
+            pending.put(fileName == null || fileName.isEmpty() ? "untitled.json" : fileName, content);
+            if (scheduled != null) scheduled.cancel(false);
+            scheduled = writer.schedule(this::flush, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+        }
+        return JsonCodec.ok();
+    }
+
+    /**
+     * Переносит копию из старого localStorage с её исходным временем.
+     * Пишется в фоне сразу, без склейки: у старых копий одного сценария одно имя.
+     */
+    @JavascriptInterface
+    public String importBackup(String fileName, long timestamp, String content) {
+        if (content == null) return JsonCodec.error("Empty content");
+        if (timestamp <= 0) timestamp = System.currentTimeMillis();
+        final long time = timestamp;
+        final String name = fileName == null || fileName.isEmpty() ? "untitled.json" : fileName;
+        writer.execute(() -> {
+            if (!dir.exists() && !dir.mkdirs()) {
+                Log.e(TAG, "Cannot create " + dir);
+                return;
+            }
+            try {
+                write(time, name, content);
+            } catch (IOException e) {
+                Log.e(TAG, "Import of " + name + " failed", e);
+            }
+            trim();
+        });
+        return JsonCodec.ok();
+    }
+
+    /** Записывает накопленные снимки, не дожидаясь паузы (например, при уходе в фон). */
+    @JavascriptInterface
+    public String flushNow() {
+        synchronized (pending) {
+            if (scheduled != null) scheduled.cancel(false);
+            scheduled = writer.schedule(this::flush, 0, TimeUnit.MILLISECONDS);
+        }
+        return JsonCodec.ok();
+    }
+
+    @JavascriptInterface
+    public String setLimit(int limit) {
+        this.limit = Math.max(1, limit);
+        writer.execute(this::trim);
+        return JsonCodec.ok();
+    }
+
+    /** {ok, backups:[{id, name, timestamp, size}]}, новые первыми. */
+    @JavascriptInterface
+    public String list() {
+        File[] files = sortedBackups();
+        JsonCodec.Writer w = JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("backups").beginArray();
+        for (File f : files) {
+            String id = f.getName().substring(0, f.getName().length() - SUFFIX.length());
+            int sep = id.indexOf('_');
+            long timestamp = 0;
+            try {
+                timestamp = Long.parseLong(id.substring(0, sep));
+            } catch (Exception ignored) {
+            }
+            w.beginObject()
+                    .name("id").value(id)
+                    .name("name").value(sep >= 0 ? id.substring(sep + 1) : id)
+                    .name("timestamp").value(timestamp)
+                    .name("size").value(f.length())
+                    .endObject();
+        }
+        return w.endArray().endObject().toString();
+    }
+
+    @JavascriptInterface
+    public String remove(String id) {
+        File f = backupFile(id);
+        if (f == null || !f.exists()) return JsonCodec.error("Backup not found");
+        if (!f.delete()) return JsonCodec.error("Cannot delete backup");
+        return JsonCodec.ok();
+    }
+
+    /** Поток с распакованным содержимым копии для {@code /backup/<id>}. */
+    @Nullable
+    WebResourceResponse handle(String url) {
+        if (url == null || !url.startsWith(PREFIX)) return null;
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", "no-store");
+        headers.put("Access-Control-Allow-Origin", "*");
+        String id = url.substring(PREFIX.length());
+        try {
+            id = java.net.URLDecoder.decode(id, "UTF-8");
+        } catch (Exception ignored) {
+        }
+        File f = backupFile(id);
+        if (f == null || !f.exists()) {
+            return new WebResourceResponse("text/plain", "UTF-8", 404, "Not Found", headers,
+                    new ByteArrayInputStream(new byte[0]));
+        }
+        try {
+            return new WebResourceResponse("application/json", "UTF-8", 200, "OK", headers,
+                    new InflaterInputStream(new BufferedInputStream(new FileInputStream(f), 64 * 1024)));
+        } catch (IOException e) {
+            return new WebResourceResponse("text/plain", "UTF-8", 500, "Internal Error", headers,
+                    new ByteArrayInputStream(new byte[0]));
+        }
+    }
+
+    void shutdown() {
+        // Отложенные задачи всё равно выполнятся после shutdown()
+        writer.execute(this::flush);
+        writer.shutdown();
+    }
+
+    private void flush() {
+        Map<String, String> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) return;
+            batch = new LinkedHashMap<>(pending);
+            pending.clear();
+            scheduled = null;
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Cannot create " + dir);
+            return;
+        }
+        for (Map.Entry<String, String> e : batch.entrySet()) {
+            try {
+                write(System.currentTimeMillis(), e.getKey(), e.getValue());
+            } catch (IOException ex) {
+                Log.e(TAG, "Backup of " + e.getKey() + " failed", ex);
+            }
+        }
+        trim();
+    }
+
+    private void write(long timestamp, String fileName, String content) throws IOException {
+        String id = timestamp + "_" + safeName(fileName);
+        File target = new File(dir, id + SUFFIX);
+        File tmp = new File(dir, "." + id + ".tmp");
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            Writer out = new OutputStreamWriter(
+                    new DeflaterOutputStream(fos, deflater, 64 * 1024), StandardCharsets.UTF_8);
+            out.write(content);
+            out.flush();
+            out.close();
+        } finally {
+            deflater.end();
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Cannot store backup " + id);
+        }
+    }
+
+    /** Удаляет самые старые копии сверх лимита по количеству и объёму. */
+    private void trim() {
+        File[] files = sortedBackups();
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            total += files[i].length();
+            if (i >= limit || (i > 0 && total > MAX_TOTAL_BYTES)) {
+                files[i].delete();
+            }
+        }
+    }
+
+    private File[] sortedBackups() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) return new File[0];
+        // Имя начинается с отметки времени, поэтому сортировка по имени — по времени
+        Arrays.sort(files, (a, b) -> b.getName().compareTo(a.getName()));
+        return files;
+    }
+
+    @Nullable
+    private File backupFile(String id) {
+        if (id == null || id.isEmpty() || id.contains("/") || id.contains("..")) return null;
+        return new File(dir, id + SUFFIX);
+    }
+
+    private static String safeName(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length() && sb.length() < 80; i++) {
+            char c = name.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) || c == '-' || c == '.' ? c : '-');
+        }
+        return sb.toString();
+    }
+}
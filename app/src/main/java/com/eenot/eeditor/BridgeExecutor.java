@@ -0,0 +1,144 @@
+package com.eenot.eeditor;
+
+import android.util.Log;
+import android.webkit.WebView;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул потоков для асинхронных вызовов моста.
+ * Каждый вызов получает id сразу, а результат приходит в JS через
+ * window.onAndroidComplete(id, result), где result — тот же JSON, что вернул бы
+ * синхронный метод. Записи выполняются строго по очереди и имеют приоритет над чтением.
+ */
+class BridgeExecutor {
+    private static final String TAG = "BridgeExecutor";
+    static final String JS_CALLBACK = "onAndroidComplete";
+
+    static final int PRIORITY_WRITE = 0;
+    static final int PRIORITY_READ = 1;
+
+    private static final int MAX_PENDING = 256;
+
+    interface Call {
+        String run() throws Exception;
+    }
+
+    private final WebView webView;
+    private final ThreadPoolExecutor pool;
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // Очередь записей: в пуле одновременно находится не больше одной задачи записи
+    private final ArrayDeque<Task> writeQueue = new ArrayDeque<>();
+    private boolean writeActive = false;
+
+    BridgeExecutor(WebView webView) {
+        this.webView = webView;
+        int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        this.pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "bridge-worker-" + count.incrementAndGet());
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            }
+        });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Ставит вызов в очередь и сразу возвращает его id.
+     */
+    int submit(int priority, Call call) {
+        int id = nextId.getAndIncrement();
+        if (pending.incrementAndGet() > MAX_PENDING) {
+            pending.decrementAndGet();
+            deliver(id, JsonCodec.error("Too many pending requests"));
+            return id;
+        }
+        Task task = new Task(id, priority, sequence.getAndIncrement(), call);
+        if (priority == PRIORITY_WRITE) {
+            synchronized (writeQueue) {
+                writeQueue.add(task);
+                if (writeActive) return id;
+                writeActive = true;
+            }
+            pool.execute(task);
+        } else {
+            pool.execute(task);
+        }
+        return id;
+    }
+
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private void deliver(int id, String result) {
+        // Ответ моста — валидный JSON, поэтому его можно вставить в скрипт как литерал
+        final String script = "window." + JS_CALLBACK + " && window." + JS_CALLBACK
+                + "(" + id + "," + (result == null ? "null" : result) + ");";
+        webView.post(() -> webView.evaluateJavascript(script, null));
+    }
+
+    private void onWriteFinished() {
+        Task next;
+        synchronized (writeQueue) {
+            writeQueue.poll();
+            next = writeQueue.peek();
+            if (next == null) {
+                writeActive = false;
+                return;
+            }
+        }
+        pool.execute(next);
+    }
+
+    private final class Task implements Runnable, Comparable<Task> {
+        final int id;
+        final int priority;
+        final long seq;
+        final Call call;
+
+        Task(int id, int priority, long seq, Call call) {
+            this.id = id;
+            this.priority = priority;
+            this.seq = seq;
+            this.call = call;
+        }
+
+        @Override
+        public void run() {
+            try {
+                String result;
+                try {
+                    result = call.run();
+                } catch (Exception e) {
+                    Log.e(TAG, "Async call " + id + " failed", e);
+                    result = JsonCodec.error(e.getMessage());
+                }
+                deliver(id, result);
+            } finally {
+                pending.decrementAndGet();
+                if (priority == PRIORITY_WRITE) onWriteFinished();
+            }
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            if (priority != o.priority) return priority < o.priority ? -1 : 1;
+            return Long.compare(seq, o.seq);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.eenot.eeditor;
+
+import android.util.Log;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Счётчики вызовов моста {@link FileInterfaceNew}: число вызовов, ошибки,
+ * байты туда и обратно и гистограмма задержек по каждому методу.
+ *
+ * Запись — только атомарные операции над одним AtomicLongArray, без блокировок
+ * и выделения памяти. Корзины гистограммы степенные: корзина i — задержка
+ * меньше 2^i мкс. Байты считаются как длина строк × 2 (мост передаёт UTF-16).
+ */
+final class BridgeMetrics {
+    private static final String TAG = "BridgeMetrics";
+
+    static final int READ_FILE = 0;
+    static final int OPEN_READ = 1;
+    static final int READ_CHUNK = 2;
+    static final int CLOSE_READ = 3;
+    static final int WRITE_FILE = 4;
+    static final int APPEND_FILE = 5;
+    static final int WRITE_FILE_AT = 6;
+    static final int PATCH_FILE = 7;
+    static final int LIST_FILES = 8;
+    static final int DELETE_FILE = 9;
+
+    private static final String[] NAMES = {
+            "readFile", "openRead", "readChunk", "closeRead", "writeFile",
+            "appendFile", "writeFileAt", "patchFile", "listFiles", "deleteFile"
+    };
+
+    private static final int BUCKETS = 24; // последняя корзина — от 2^22 мкс (~4 с) и выше
+
+    // Поля метода в массиве
+    private static final int COUNT = 0;
+    private static final int ERRORS = 1;
+    private static final int BYTES_IN = 2;
+    private static final int BYTES_OUT = 3;
+    private static final int TOTAL_NANOS = 4;
+    private static final int MAX_NANOS = 5;
+    private static final int HISTOGRAM = 6;
+    private static final int STRIDE = HISTOGRAM + BUCKETS;
+
+    private static final String ERROR_PREFIX = "{\"ok\":false";
+    private static final long LOG_INTERVAL_SECONDS = 60;
+
+    private final AtomicLongArray data = new AtomicLongArray(NAMES.length * STRIDE);
+    private ScheduledExecutorService logger;
+    private long lastLoggedCalls;
+
+    /**
+     * @param startNanos значение System.nanoTime() в начале вызова
+     * @param charsIn    суммарная длина строковых аргументов
+     * @param result     ответ метода; {"ok":false...} считается ошибкой
+     */
+    void record(int method, long startNanos, long charsIn, String result) {
+        long nanos = System.nanoTime() - startNanos;
+        int base = method * STRIDE;
+        data.incrementAndGet(base + COUNT);
+        if (result == null || result.startsWith(ERROR_PREFIX)) data.incrementAndGet(base + ERRORS);
+        data.addAndGet(base + BYTES_IN, charsIn * 2);
+        if (result != null) data.addAndGet(base + BYTES_OUT, (long) result.length() * 2);
+        data.addAndGet(base + TOTAL_NANOS, nanos);
+        long max;
+        while (nanos > (max = data.get(base + MAX_NANOS))) {
+            if (data.compareAndSet(base + MAX_NANOS, max, nanos)) break;
+        }
+        data.incrementAndGet(base + HISTOGRAM + bucket(nanos));
+    }
+
+    static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int b = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(b, BUCKETS - 1);
+    }
+
+    static long length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    /**
+     * @return {ok, buckets:[верхние границы в мкс], methods:[{name, count, errors,
+     *         bytesIn, bytesOut, totalMs, maxMs, p50Ms, p90Ms, p99Ms, histogram}]};
+     *         у последней корзины границы нет (null); перцентили — верхние границы корзин
+     */
+    String snapshot() {
+        JsonCodec.Writer w = JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("buckets").beginArray();
+        for (int b = 0; b < BUCKETS - 1; b++) w.value(1L << b);
+        w.rawValue("null").endArray().name("methods").beginArray();
+        long[] histogram = new long[BUCKETS];
+        for (int m = 0; m < NAMES.length; m++) {
+            int base = m * STRIDE;
+            long count = data.get(base + COUNT);
+            for (int b = 0; b < BUCKETS; b++) histogram[b] = data.get(base + HISTOGRAM + b);
+            w.beginObject()
+                    .name("name").value(NAMES[m])
+                    .name("count").value(count)
+                    .name("errors").value(data.get(base + ERRORS))
+                    .name("bytesIn").value(data.get(base + BYTES_IN))
+                    .name("bytesOut").value(data.get(base + BYTES_OUT))
+                    .name("totalMs").value(data.get(base + TOTAL_NANOS) / 1e6)
+                    .name("maxMs").value(data.get(base + MAX_NANOS) / 1e6)
+                    .name("p50Ms").value(percentile(histogram, 0.50))
+                    .name("p90Ms").value(percentile(histogram, 0.90))
+                    .name("p99Ms").value(percentile(histogram, 0.99))
+                    .name("histogram").beginArray();
+            for (long c : histogram) w.value(c);
+            w.endArray().endObject();
+        }
+        return w.endArray().endObject().toString();
+    }
+
+    /** Верхняя граница корзины, в которую попадает доля q вызовов, в мс; -1 — вызовов не было. */
+    static double percentile(long[] histogram, double q) {
+        long total = 0;
+        for (long c : histogram) total += c;
+        if (total == 0) return -1;
+        long rank = (long) Math.ceil(total * q);
+        long seen = 0;
+        for (int b = 0; b < histogram.length; b++) {
+            seen += histogram[b];
+            if (seen >= rank) return (1L << b) / 1000.0;
+        }
+        return (1L << (histogram.length - 1)) / 1000.0;
+    }
+
+    /** Раз в минуту пишет в лог сводку, если с прошлого раза были вызовы. */
+    synchronized void startLogging() {
+        if (logger != null) return;
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bridge-metrics");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        logger.scheduleWithFixedDelay(this::logSummary,
+                LOG_INTERVAL_SECONDS, LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    synchronized void stopLogging() {
+        if (logger != null) {
+            logger.shutdownNow();
+            logger = null;
+        }
+    }
+
+    private void logSummary() {
+        long calls = 0;
+        for (int m = 0; m < NAMES.length; m++) calls += data.get(m * STRIDE + COUNT);
+        if (calls == lastLoggedCalls) return;
+        lastLoggedCalls = calls;
+        StringBuilder sb = new StringBuilder("bridge:");
+        long[] histogram = new long[BUCKETS];
+        for (int m = 0; m < NAMES.length; m++) {
+            int base = m * STRIDE;
+            long count = data.get(base + COUNT);
+            if (count == 0) continue;
+            for (int b = 0; b < BUCKETS; b++) histogram[b] = data.get(base + HISTOGRAM + b);
+            sb.append(' ').append(NAMES[m])
+                    .append(" n=").append(count)
+                    .append(" err=").append(data.get(base + ERRORS))
+                    .append(" p50<").append(percentile(histogram, 0.50)).append("ms")
+                    .append(" p99<").append(percentile(histogram, 0.99)).append("ms")
+                    .append(" max=").append(data.get(base + MAX_NANOS) / 1_000_000).append("ms")
+                    .append(" out=").append(data.get(base + BYTES_OUT) / 1024).append("K;");
+        }
+        Log.i(TAG, sb.toString());
+    }
+}
@@ -0,0 +1,137 @@
+package com.eenot.eeditor;
+
+import android.util.Base64;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Открытый на чтение файл, который отдаётся кусками фиксированного размера.
+ * Текстовые куски никогда не режут многобайтовый UTF-8 символ, base64 куски
+ * выровнены по 3 байта, поэтому их можно просто склеить на стороне JS.
+ * В памяти держится только один буфер размером с кусок.
+ */
+class ChunkedFileReader implements Closeable {
+    static final int MIN_CHUNK_SIZE = 4 * 1024;
+    static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final boolean base64;
+    private final long size;
+    private final ByteBuffer buffer;
+    private final CharBuffer chars;
+    private final CharsetDecoder decoder;
+    private long offset = 0;
+    private boolean eof = false;
+
+    ChunkedFileReader(File file, boolean base64, int chunkSize) throws IOException {
+        this.base64 = base64;
+        int size = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+        if (base64) {
+            size -= size % 3;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+        this.size = channel.size();
+        this.buffer = ByteBuffer.allocate(size);
+        if (base64) {
+            this.chars = null;
+            this.decoder = null;
+        } else {
+            this.chars = CharBuffer.allocate(size);
+            this.decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /** Смещение в файле, с которого начнётся следующий кусок. */
+    long offset() {
+        return offset;
+    }
+
+    boolean isEof() {
+        return eof;
+    }
+
+    int chunkSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Возвращает следующий кусок (текст или base64) или null, если файл прочитан.
+     */
+    synchronized String nextChunk() throws IOException {
+        if (eof) return null;
+
+        // В буфере могут остаться хвостовые байты незавершённого символа с прошлого раза
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0 || channel.position() >= size) {
+                eof = true;
+                break;
+            }
+        }
+        buffer.flip();
+
+        String result;
+        int start = buffer.position();
+        if (base64) {
+            int len = buffer.remaining();
+            result = Base64.encodeToString(buffer.array(), 0, len, Base64.NO_WRAP);
+            offset += len;
+            buffer.clear();
+        } else {
+            int filled = buffer.limit();
+            buffer.limit(eof ? filled : utf8Boundary(buffer));
+            chars.clear();
+            decoder.decode(buffer, chars, eof);
+            if (eof) decoder.flush(chars);
+            chars.flip();
+            result = chars.toString();
+            offset += buffer.position() - start;
+            // Переносим недочитанный хвост символа в начало буфера
+            buffer.limit(filled);
+            buffer.compact();
+        }
+        return result;
+    }
+
+    /**
+     * Позиция после последнего целого UTF-8 символа в буфере.
+     */
+    private int utf8Boundary(ByteBuffer buf) {
+        int limit = buf.limit();
+        int start = buf.position();
+        // Ищем начало последней последовательности (не более 3 байт назад)
+        for (int i = limit - 1; i >= Math.max(start, limit - 4); i--) {
+            int b = buf.get(i) & 0xFF;
+            if ((b & 0xC0) == 0x80) continue; // байт продолжения
+            int need;
+            if (b < 0x80) need = 1;
+            else if ((b & 0xE0) == 0xC0) need = 2;
+            else if ((b & 0xF0) == 0xE0) need = 3;
+            else if ((b & 0xF8) == 0xF0) need = 4;
+            else need = 1; // битый байт, пусть декодер заменит его
+            return (limit - i >= need) ? limit : i;
+        }
+        return limit;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        eof = true;
+        channel.close();
+    }
+}
@@ -0,0 +1,261 @@
+package com.eenot.eeditor;
+
+import android.os.FileObserver;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Кэш содержимого папок для listFiles.
+ * Папка читается один раз (один stat на элемент), дальше список отдаётся
+ * из памяти, пока FileObserver не сообщит об изменении в ней.
+ * Отсортированные варианты строятся по требованию и тоже кэшируются.
+ * {@link #version()} растёт при каждом сбросе, по нему зависимые индексы
+ * понимают, что пора перечитать папки.
+ */
+class DirectoryIndex {
+    private static final int MAX_DIRECTORIES = 32;
+
+    private static final int WATCH_MASK = FileObserver.CREATE | FileObserver.DELETE
+            | FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE
+            | FileObserver.ATTRIB | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    static final String SORT_NAME = "name";
+    static final String SORT_MODIFIED = "modified";
+    static final String SORT_SIZE = "size";
+
+    static final class Entry {
+        final String name;
+        final String relativePath;
+        final boolean isDirectory;
+        final long size;
+        final long modified;
+
+        Entry(String name, String relativePath, boolean isDirectory, long size, long modified) {
+            this.name = name;
+            this.relativePath = relativePath;
+            this.isDirectory = isDirectory;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /** Страница списка: total — сколько элементов прошло фильтр всего. */
+    static final class Page {
+        final List<Entry> entries;
+        final int total;
+
+        Page(List<Entry> entries, int total) {
+            this.entries = entries;
+            this.total = total;
+        }
+    }
+
+    private final class Listing {
+        final String key;
+        final FileObserver observer;
+        Entry[] entries;
+        final Map<String, Entry[]> sorted = new HashMap<>();
+        volatile boolean stale;
+
+        Listing(String key, File dir) {
+            this.key = key;
+            this.observer = new FileObserver(dir.getPath(), WATCH_MASK) {
+                @Override
+                public void onEvent(int event, String path) {
+                    invalidate(Listing.this);
+                }
+            };
+        }
+
+        synchronized Entry[] sortedBy(String sortKey) {
+            Entry[] result = sorted.get(sortKey);
+            if (result == null) {
+                result = entries.clone();
+                Arrays.sort(result, comparator(sortKey));
+                sorted.put(sortKey, result);
+            }
+            return result;
+        }
+    }
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final LinkedHashMap<String, Listing> listings =
+            new LinkedHashMap<String, Listing>(MAX_DIRECTORIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+                    if (size() > MAX_DIRECTORIES) {
+                        // За вытесненной папкой больше никто не следит
+                        version.incrementAndGet();
+                        eldest.getValue().observer.stopWatching();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    /**
+     * @param dir          папка, уже проверенная resolveSafe
+     * @param relativeDir  её путь относительно baseDir ("" для корня)
+     * @param glob         фильтр по имени (*, ?), null — без фильтра
+     * @param sortKey      name, modified или size; "-" в начале — по убыванию
+     * @param limit        размер страницы, 0 — до конца
+     */
+    Page list(File dir, String relativeDir, int offset, int limit, String glob, String sortKey) {
+        Listing listing = listing(dir, relativeDir);
+        Entry[] sorted = listing.sortedBy(normalizeSort(sortKey));
+
+        Pattern filter = glob == null || glob.isEmpty() || glob.equals("*") ? null : globPattern(glob);
+        int from = Math.max(0, offset);
+        int to = limit > 0 ? from + limit : Integer.MAX_VALUE;
+        List<Entry> page = new ArrayList<>(Math.min(sorted.length, limit > 0 ? limit : sorted.length));
+        int matched = 0;
+        for (Entry e : sorted) {
+            if (filter != null && !filter.matcher(e.name).matches()) continue;
+            if (matched >= from && matched < to) page.add(e);
+            matched++;
+        }
+        return new Page(page, matched);
+    }
+
+    /** Номер состояния кэша; меняется, когда любая папка сброшена или вытеснена. */
+    long version() {
+        return version.get();
+    }
+
+    /** Сбрасывает папку сразу, не дожидаясь FileObserver (после собственных записей). */
+    void invalidate(File dir) {
+        if (dir == null) return;
+        version.incrementAndGet();
+        Listing listing;
+        synchronized (listings) {
+            listing = listings.remove(dir.getAbsolutePath());
+        }
+        if (listing != null) {
+            listing.stale = true;
+            listing.observer.stopWatching();
+        }
+    }
+
+    void clear() {
+        version.incrementAndGet();
+        synchronized (listings) {
+            for (Listing l : listings.values()) l.observer.stopWatching();
+            listings.clear();
+        }
+    }
+
+    private void invalidate(Listing listing) {
+        version.incrementAndGet();
+        listing.stale = true;
+        synchronized (listings) {
+            if (listings.get(listing.key) == listing) listings.remove(listing.key);
+        }
+        listing.observer.stopWatching();
+    }
+
+    private Listing listing(File dir, String relativeDir) {
+        String key = dir.getAbsolutePath();
+        synchronized (listings) {
+            Listing cached = listings.get(key);
+            if (cached != null && !cached.stale) return cached;
+        }
+        Listing listing = scan(key, dir, relativeDir);
+        synchronized (listings) {
+            if (!listing.stale) {
+                Listing previous = listings.put(key, listing);
+                if (previous != null && previous != listing) previous.observer.stopWatching();
+            } else {
+                listing.observer.stopWatching();
+            }
+        }
+        return listing;
+    }
+
+    private Listing scan(String key, File dir, String relativeDir) {
+        Listing listing = new Listing(key, dir);
+        // Наблюдатель запускается до чтения: событие во время него пометит список устаревшим
+        listing.observer.startWatching();
+
+        String[] names = dir.list();
+        if (names == null) names = new String[0];
+        String prefix = relativeDir.isEmpty() ? "" : relativeDir + "/";
+        String dirPath = dir.getPath() + File.separator;
+        ArrayList<Entry> entries = new ArrayList<>(names.length);
+        for (String name : names) {
+            if (AtomicFileWriter.isScratch(name)) continue;
+            Entry e = stat(dirPath + name, name, prefix + name);
+            if (e != null) entries.add(e);
+        }
+        listing.entries = entries.toArray(new Entry[0]);
+        return listing;
+    }
+
+    /** Один stat вместо отдельных isDirectory/length/lastModified. */
+    private static Entry stat(String path, String name, String relativePath) {
+        try {
+            StructStat st = Os.stat(path);
+            boolean isDirectory = OsConstants.S_ISDIR(st.st_mode);
+            long modified = st.st_mtim.tv_sec * 1000L + st.st_mtim.tv_nsec / 1000000L;
+            return new Entry(name, relativePath, isDirectory, isDirectory ? 0 : st.st_size, modified);
+        } catch (ErrnoException e) {
+            // Файл успели удалить между list() и stat()
+            return null;
+        }
+    }
+
+    private static String normalizeSort(String sortKey) {
+        if (sortKey == null || sortKey.isEmpty()) return SORT_NAME;
+        return sortKey.toLowerCase(Locale.ROOT);
+    }
+
+    private static Comparator<Entry> comparator(String sortKey) {
+        boolean descending = sortKey.startsWith("-");
+        String key = descending ? sortKey.substring(1) : sortKey;
+        Comparator<Entry> byName = (a, b) -> a.name.compareToIgnoreCase(b.name);
+        Comparator<Entry> order;
+        switch (key) {
+            case SORT_MODIFIED:
+                order = (a, b) -> Long.compare(a.modified, b.modified);
+                break;
+            case SORT_SIZE:
+                order = (a, b) -> Long.compare(a.size, b.size);
+                break;
+            default:
+                order = byName;
+                break;
+        }
+        if (descending) order = order.reversed();
+        Comparator<Entry> finalOrder = order.thenComparing(byName);
+        // Папки всегда идут первыми, как и раньше
+        return (a, b) -> {
+            if (a.isDirectory != b.isDirectory) return a.isDirectory ? -1 : 1;
+            return finalOrder.compare(a, b);
+        };
+    }
+
+    static Pattern globPattern(String glob) {
+        StringBuilder sb = new StringBuilder(glob.length() + 8);
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') sb.append(".*");
+            else if (c == '?') sb.append('.');
+            else sb.append(Pattern.quote(String.valueOf(c)));
+        }
+        return Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+}
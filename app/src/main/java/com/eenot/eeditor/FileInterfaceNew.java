@@ -1,32 +1,60 @@
 package com.eenot.eeditor;
 
+import android.app.Activity;
 import android.content.Context;
+import android.content.Intent;
 import android.net.Uri;
 import android.util.Base64;
 import android.webkit.JavascriptInterface;
 import android.webkit.WebView;
 import androidx.annotation.Nullable;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FileInterfaceNew {
     private final Context context;
     private final WebView webView;
     private final File baseDir; // getExternalFilesDir(null)
 
+    private static final int MAX_OPEN_HANDLES = 8;
+    private static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    static final int FILE_CHOOSER_RESULT_CODE = 1;
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    // Открытые потоковые чтения; самый давно не использованный handle закрывается при переполнении
+    private final LinkedHashMap<Integer, ChunkedFileReader> readHandles =
+            new LinkedHashMap<Integer, ChunkedFileReader>(MAX_OPEN_HANDLES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, ChunkedFileReader> eldest) {
+                    if (size() > MAX_OPEN_HANDLES) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    private int nextReadHandle = 1;
+
+    private final BridgeExecutor async;
+    private final DirectoryIndex directoryIndex = new DirectoryIndex();
+    private final BridgeMetrics metrics = new BridgeMetrics();
+    // Фоновые задачи по одной за раз: журналы при запуске, чтение и проверка выбранного файла
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+
     public FileInterfaceNew(Context ctx, WebView webView) {
+        int trace = StartupTrace.begin("FileInterfaceNew.<init>");
         this.context = ctx;
         this.webView = webView;
         File ext = ctx.getExternalFilesDir(null);
@@ -34,18 +62,120 @@ public class FileInterfaceNew {
             ext = ctx.getFilesDir();
         }
         this.baseDir = ext;
+        this.async = new BridgeExecutor(webView);
+        // Записи, оборванные падением, доигрываются один раз, а не при каждом чтении
+        loader.execute(() -> AtomicFileWriter.recoverAll(baseDir));
+        metrics.startLogging();
+        StartupTrace.end(trace);
+    }
+
+    DirectoryIndex directoryIndex() {
+        return directoryIndex;
+    }
+
+    BridgeExecutor bridgeExecutor() {
+        return async;
     }
 
     public void prepareFileContent(Runnable callback) {
         if (callback != null) callback.run();
     }
 
-    public void handleActivityResult(int requestCode, int resultCode, android.content.Intent data) {
-        // Заглушка — при необходимости реализуем
+    /** Открывает системный выбор JSON-файла; результат придёт в {@link #handleActivityResult}. */
+    @JavascriptInterface
+    public String openFilePicker() {
+        if (!(context instanceof Activity)) return makeError("No activity");
+        final Activity activity = (Activity) context;
+        activity.runOnUiThread(() -> {
+            Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("application/json");
+            activity.startActivityForResult(intent, FILE_CHOOSER_RESULT_CODE);
+        });
+        return JsonCodec.ok();
+    }
+
+    public void handleActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode != FILE_CHOOSER_RESULT_CODE || resultCode != Activity.RESULT_OK || data == null) return;
+        final Uri uri = data.getData();
+        if (uri == null) return;
+        // Чтение и проверка — в фоне, главный поток сразу свободен
+        loader.execute(() -> openPickedFile(uri));
+    }
+
+    /**
+     * Проверяет JSON потоком, без построения дерева, и отдаёт редактору исходный текст
+     * как есть (window.onPickedFile, иначе handleFileContent), даже если в нём ошибки.
+     * Ошибки (строка, колонка, путь) приходят отдельно в window.onJsonValidation;
+     * без обработчика показывается первая из них.
+     */
+    private void openPickedFile(Uri uri) {
+        final StringBuilder script = new StringBuilder();
+        try {
+            byte[] bytes;
+            try (java.io.InputStream is = context.getContentResolver().openInputStream(uri)) {
+                if (is == null) throw new IOException("Cannot open file stream");
+                bytes = readStreamToBytes(is);
+            }
+            String fileName = displayName(uri);
+            List<JsonScanner.SyntaxError> errors =
+                    new JsonScanner(new ByteArrayInputStream(bytes)).validate(MAX_REPORTED_ERRORS);
+
+            String content = new String(bytes, StandardCharsets.UTF_8);
+            currentFileUri = uri;
+            currentFileName = fileName;
+            currentFileContent = content;
+            script.ensureCapacity(content.length() + 256);
+            script.append("(window.onPickedFile || handleFileContent)(\"");
+            JsonCodec.escape(fileName, script);
+            script.append("\", \"");
+            JsonCodec.escape(content, script);
+            script.append("\");");
+
+            if (!errors.isEmpty()) {
+                JsonCodec.Writer w = JsonCodec.writer().beginObject()
+                        .name("fileName").value(fileName)
+                        .name("errors").beginArray();
+                for (JsonScanner.SyntaxError e : errors) {
+                    w.beginObject()
+                            .name("message").value(e.getMessage())
+                            .name("line").value(e.line)
+                            .name("column").value(e.column)
+                            .name("path").value(e.path)
+                            .name("offset").value(e.offset)
+                            .endObject();
+                }
+                script.append("if (window.onJsonValidation) window.onJsonValidation(")
+                        .append(w.endArray().endObject().toString())
+                        .append("); else showWarning(\"Ошибка в JSON\", \"");
+                JsonCodec.escape(errors.get(0).getMessage(), script);
+                script.append("\");");
+            }
+        } catch (Exception e) {
+            android.util.Log.e("FileInterfaceNew", "Cannot open picked file", e);
+            script.setLength(0);
+            script.append("showError(\"Ошибка чтения файла\", \"");
+            JsonCodec.escape(String.valueOf(e.getMessage()), script);
+            script.append("\");");
+        }
+        final String js = script.toString();
+        webView.post(() -> webView.evaluateJavascript(js, null));
+    }
+
+    private String displayName(Uri uri) {
+        if ("content".equals(uri.getScheme())) {
+            try (android.database.Cursor cursor = context.getContentResolver().query(uri,
+                    new String[]{android.provider.OpenableColumns.DISPLAY_NAME}, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) return cursor.getString(0);
+            } catch (RuntimeException ignored) {
+            }
+        }
+        String path = uri.getPath();
+        return path != null ? new File(path).getName() : "";
     }
 
     @Nullable
-    private File resolveSafe(String relativePath) {
+    File resolveSafe(String relativePath) {
         try {
             if (relativePath == null) relativePath = "";
             relativePath = relativePath.replace('\\', '/');
@@ -55,7 +185,9 @@ public class FileInterfaceNew {
             String canonicalBase = baseDir.getCanonicalPath();
             String canonicalResult = result.getCanonicalPath();
 
-            if (!canonicalResult.startsWith(canonicalBase)) {
+            // Без разделителя "../files_evil" прошёл бы проверку как соседний каталог
+            if (!canonicalResult.equals(canonicalBase)
+                    && !canonicalResult.startsWith(canonicalBase + File.separator)) {
                 return null;
             }
             return result;
@@ -66,6 +198,13 @@ public class FileInterfaceNew {
 
     @JavascriptInterface
     public String readFile(String relativePath, String mode) {
+        long start = System.nanoTime();
+        String result = doReadFile(relativePath, mode);
+        metrics.record(BridgeMetrics.READ_FILE, start, BridgeMetrics.length(relativePath), result);
+        return result;
+    }
+
+    private String doReadFile(String relativePath, String mode) {
         try {
             File f = resolveSafe(relativePath);
             if (f == null) return makeError("Invalid path or access denied");
@@ -74,28 +213,143 @@ public class FileInterfaceNew {
 
             byte[] bytes = readAllBytes(f);
 
-            if ("base64".equalsIgnoreCase(mode)) {
-                String b64 = Base64.encodeToString(bytes, Base64.NO_WRAP);
-                JSONObject ok = new JSONObject();
-                ok.put("ok", true);
-                ok.put("content", b64);
-                ok.put("encoding", "base64");
-                return ok.toString();
-            } else {
-                String text = new String(bytes, StandardCharsets.UTF_8);
-                JSONObject ok = new JSONObject();
-                ok.put("ok", true);
-                ok.put("content", text);
-                ok.put("encoding", "utf-8");
-                return ok.toString();
+            boolean base64 = "base64".equalsIgnoreCase(mode);
+            String content = base64
+                    ? Base64.encodeToString(bytes, Base64.NO_WRAP)
+                    : new String(bytes, StandardCharsets.UTF_8);
+            return JsonCodec.writer().beginObject()
+                    .name("ok").value(true)
+                    .name("content").value(content)
+                    .name("encoding").value(base64 ? "base64" : "utf-8")
+                    .endObject().toString();
+        } catch (Exception e) {
+            return makeError(e.getMessage());
+        }
+    }
+
+    /**
+     * Открывает файл для чтения по кускам.
+     * mode: "base64" или текст (utf-8); chunkSize <= 0 — размер по умолчанию.
+     * Возвращает {ok, handle, size, chunkSize, encoding}.
+     */
+    @JavascriptInterface
+    public String openRead(String relativePath, String mode, int chunkSize) {
+        long start = System.nanoTime();
+        String result = doOpenRead(relativePath, mode, chunkSize);
+        metrics.record(BridgeMetrics.OPEN_READ, start, BridgeMetrics.length(relativePath), result);
+        return result;
+    }
+
+    private String doOpenRead(String relativePath, String mode, int chunkSize) {
+        try {
+            File f = resolveSafe(relativePath);
+            if (f == null) return makeError("Invalid path or access denied");
+            if (!f.exists()) return makeError("File not found");
+            if (f.isDirectory()) return makeError("Path is a directory");
+
+            boolean base64 = "base64".equalsIgnoreCase(mode);
+            ChunkedFileReader reader = new ChunkedFileReader(f,
+                    base64, chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE);
+            int handle;
+            synchronized (readHandles) {
+                handle = nextReadHandle++;
+                readHandles.put(handle, reader);
             }
+
+            return JsonCodec.writer().beginObject()
+                    .name("ok").value(true)
+                    .name("handle").value(handle)
+                    .name("size").value(reader.size())
+                    .name("chunkSize").value(reader.chunkSize())
+                    .name("encoding").value(base64 ? "base64" : "utf-8")
+                    .endObject().toString();
         } catch (Exception e) {
             return makeError(e.getMessage());
         }
     }
 
+    /**
+     * Следующий кусок открытого файла: {ok, content, offset, eof}.
+     * Когда eof == true, handle закрывается автоматически.
+     */
+    @JavascriptInterface
+    public String readChunk(int handle) {
+        long start = System.nanoTime();
+        String result = doReadChunk(handle);
+        metrics.record(BridgeMetrics.READ_CHUNK, start, 0, result);
+        return result;
+    }
+
+    private String doReadChunk(int handle) {
+        ChunkedFileReader reader;
+        synchronized (readHandles) {
+            reader = readHandles.get(handle);
+        }
+        if (reader == null) return makeError("Invalid handle");
+        try {
+            long offset = reader.offset();
+            String chunk = reader.nextChunk();
+            boolean eof = reader.isEof();
+            if (eof) {
+                doCloseRead(handle);
+            }
+
+            return JsonCodec.writer().beginObject()
+                    .name("ok").value(true)
+                    .name("content").value(chunk == null ? "" : chunk)
+                    .name("offset").value(offset)
+                    .name("eof").value(eof)
+                    .endObject().toString();
+        } catch (Exception e) {
+            doCloseRead(handle);
+            return makeError(e.getMessage());
+        }
+    }
+
+    /** Повторное закрытие не ошибка: readChunk сам закрывает хэндл на eof. */
+    @JavascriptInterface
+    public String closeRead(int handle) {
+        long start = System.nanoTime();
+        String result = doCloseRead(handle);
+        metrics.record(BridgeMetrics.CLOSE_READ, start, 0, result);
+        return result;
+    }
+
+    private String doCloseRead(int handle) {
+        ChunkedFileReader reader;
+        synchronized (readHandles) {
+            reader = readHandles.remove(handle);
+        }
+        if (reader != null) closeQuietly(reader);
+        return JsonCodec.ok();
+    }
+
+    public void closeAllReads() {
+        synchronized (readHandles) {
+            Iterator<ChunkedFileReader> it = readHandles.values().iterator();
+            while (it.hasNext()) {
+                closeQuietly(it.next());
+                it.remove();
+            }
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable c) {
+        try {
+            if (c != null) c.close();
+        } catch (IOException ignored) {
+        }
+    }
+
     @JavascriptInterface
     public String writeFile(String relativePath, String content, String mode) {
+        long start = System.nanoTime();
+        String result = doWriteFile(relativePath, content, mode);
+        metrics.record(BridgeMetrics.WRITE_FILE, start, BridgeMetrics.length(relativePath) + BridgeMetrics.length(content), result);
+        return result;
+    }
+
+    private String doWriteFile(String relativePath, String content, String mode) {
         try {
             if (relativePath == null) return makeError("Empty path");
             File f = resolveSafe(relativePath);
@@ -109,28 +363,139 @@ public class FileInterfaceNew {
                 }
             }
 
-            byte[] data;
-            if ("base64".equalsIgnoreCase(mode)) {
-                data = Base64.decode(content, Base64.DEFAULT);
-            } else {
-                data = content.getBytes(StandardCharsets.UTF_8);
-            }
+            // Через временный файл: оборванная запись не оставит обрезанный сценарий
+            AtomicFileWriter.replace(f, decodeContent(content, mode));
+            directoryIndex.invalidate(parent);
+            return JsonCodec.ok();
+        } catch (Exception e) {
+            return makeError(e.getMessage());
+        }
+    }
 
-            try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(f))) {
-                out.write(data);
-                out.flush();
-            }
+    /** Дописывает content в конец файла (файл создаётся при необходимости). */
+    @JavascriptInterface
+    public String appendFile(String relativePath, String content, String mode) {
+        long start = System.nanoTime();
+        String result = doAppendFile(relativePath, content, mode);
+        metrics.record(BridgeMetrics.APPEND_FILE, start, BridgeMetrics.length(relativePath) + BridgeMetrics.length(content), result);
+        return result;
+    }
 
-            JSONObject ok = new JSONObject();
-            ok.put("ok", true);
-            return ok.toString();
+    private String doAppendFile(String relativePath, String content, String mode) {
+        try {
+            File f = resolveWritable(relativePath);
+            if (f == null) return makeError("Invalid path or access denied");
+            AtomicFileWriter.append(f, decodeContent(content, mode));
+            directoryIndex.invalidate(f.getParentFile());
+            return JsonCodec.writer().beginObject()
+                    .name("ok").value(true)
+                    .name("size").value(f.length())
+                    .endObject().toString();
         } catch (Exception e) {
             return makeError(e.getMessage());
         }
     }
 
+    /** Перезаписывает байты начиная с offset, не трогая остальной файл. */
+    @JavascriptInterface
+    public String writeFileAt(String relativePath, long offset, String content, String mode) {
+        long start = System.nanoTime();
+        String result = doWriteFileAt(relativePath, offset, content, mode);
+        metrics.record(BridgeMetrics.WRITE_FILE_AT, start, BridgeMetrics.length(relativePath) + BridgeMetrics.length(content), result);
+        return result;
+    }
+
+    private String doWriteFileAt(String relativePath, long offset, String content, String mode) {
+        try {
+            File f = resolveWritable(relativePath);
+            if (f == null) return makeError("Invalid path or access denied");
+            AtomicFileWriter.writeAt(f, offset, decodeContent(content, mode));
+            directoryIndex.invalidate(f.getParentFile());
+            return JsonCodec.writer().beginObject()
+                    .name("ok").value(true)
+                    .name("size").value(f.length())
+                    .endObject().toString();
+        } catch (Exception e) {
+            return makeError(e.getMessage());
+        }
+    }
+
+    /**
+     * Применяет набор диапазонов одной атомарной операцией.
+     * patchesJson: {"patches":[{"offset":N,"content":"..."}], "truncate": N} — truncate необязателен.
+     */
+    @JavascriptInterface
+    public String patchFile(String relativePath, String patchesJson, String mode) {
+        long start = System.nanoTime();
+        String result = doPatchFile(relativePath, patchesJson, mode);
+        metrics.record(BridgeMetrics.PATCH_FILE, start, BridgeMetrics.length(relativePath) + BridgeMetrics.length(patchesJson), result);
+        return result;
+    }
+
+    private String doPatchFile(String relativePath, String patchesJson, String mode) {
+        try {
+            File f = resolveWritable(relativePath);
+            if (f == null) return makeError("Invalid path or access denied");
+
+            org.json.JSONObject spec = new org.json.JSONObject(patchesJson);
+            org.json.JSONArray arr = spec.optJSONArray("patches");
+            if (arr == null) return makeError("No patches");
+            java.util.ArrayList<AtomicFileWriter.Patch> patches = new java.util.ArrayList<>(arr.length());
+            for (int i = 0; i < arr.length(); i++) {
+                org.json.JSONObject p = arr.getJSONObject(i);
+                patches.add(new AtomicFileWriter.Patch(p.optLong("offset", -1),
+                        decodeContent(p.optString("content", ""), mode)));
+            }
+            AtomicFileWriter.patch(f, patches, spec.optLong("truncate", -1));
+            directoryIndex.invalidate(f.getParentFile());
+            return JsonCodec.writer().beginObject()
+                    .name("ok").value(true)
+                    .name("size").value(f.length())
+                    .endObject().toString();
+        } catch (Exception e) {
+            return makeError(e.getMessage());
+        }
+    }
+
+    @Nullable
+    private File resolveWritable(String relativePath) {
+        if (relativePath == null) return null;
+        File f = resolveSafe(relativePath);
+        if (f == null) return null;
+        File parent = f.getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        return f;
+    }
+
+    private static byte[] decodeContent(String content, String mode) {
+        if (content == null) content = "";
+        if ("base64".equalsIgnoreCase(mode)) {
+            return Base64.decode(content, Base64.DEFAULT);
+        }
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
     @JavascriptInterface
     public String listFiles(String relativePath) {
+        return listFiles(relativePath, 0, 0, null, null);
+    }
+
+    /**
+     * Постраничный список папки из кэша {@link DirectoryIndex}.
+     *
+     * @param glob    фильтр по имени, например "*.json"; пусто — все файлы
+     * @param sortKey name, modified или size ("-" в начале — по убыванию); папки всегда первыми
+     * @param limit   размер страницы, 0 — до конца
+     */
+    @JavascriptInterface
+    public String listFiles(String relativePath, int offset, int limit, String glob, String sortKey) {
+        long start = System.nanoTime();
+        String result = doListFiles(relativePath, offset, limit, glob, sortKey);
+        metrics.record(BridgeMetrics.LIST_FILES, start, BridgeMetrics.length(relativePath), result);
+        return result;
+    }
+
+    private String doListFiles(String relativePath, int offset, int limit, String glob, String sortKey) {
         try {
             File target;
             if (relativePath == null || relativePath.length() == 0) {
@@ -143,47 +508,29 @@ public class FileInterfaceNew {
             if (!target.exists()) return makeError("Directory not found");
             if (!target.isDirectory()) return makeError("Path is not a directory");
 
-            File[] files = target.listFiles();
-            if (files == null) files = new File[0];
-
-            Arrays.sort(files, new Comparator<File>() {
-                @Override
-                public int compare(File a, File b) {
-                    if (a.isDirectory() && !b.isDirectory()) return -1;
-                    if (!a.isDirectory() && b.isDirectory()) return 1;
-                    return a.getName().compareToIgnoreCase(b.getName());
-                }
-            });
-
-            JSONArray arr = new JSONArray();
+            // Относительный путь считается один раз для папки, а не для каждого файла
             String baseCanonical = baseDir.getCanonicalPath();
-
-            for (File f : files) {
-                JSONObject o = new JSONObject();
-                o.put("name", f.getName());
-                String rel;
-                try {
-                    String canonical = f.getCanonicalPath();
-                    if (canonical.startsWith(baseCanonical)) {
-                        rel = canonical.substring(baseCanonical.length());
-                        if (rel.startsWith(File.separator)) rel = rel.substring(1);
-                    } else {
-                        rel = f.getName();
-                    }
-                } catch (IOException e) {
-                    rel = f.getName();
-                }
-                o.put("relativePath", rel.replace(File.separatorChar, '/'));
-                o.put("isDirectory", f.isDirectory());
-                o.put("size", f.isDirectory() ? 0 : f.length());
-                o.put("modified", f.lastModified());
-                arr.put(o);
+            String rel = target.getCanonicalPath();
+            rel = rel.startsWith(baseCanonical) ? rel.substring(baseCanonical.length()) : "";
+            if (rel.startsWith(File.separator)) rel = rel.substring(1);
+            rel = rel.replace(File.separatorChar, '/');
+
+            DirectoryIndex.Page page = directoryIndex.list(target, rel, offset, limit, glob, sortKey);
+            JsonCodec.Writer w = JsonCodec.writer().beginObject()
+                    .name("ok").value(true)
+                    .name("total").value(page.total)
+                    .name("offset").value(Math.max(0, offset))
+                    .name("files").beginArray();
+            for (DirectoryIndex.Entry e : page.entries) {
+                w.beginObject()
+                        .name("name").value(e.name)
+                        .name("relativePath").value(e.relativePath)
+                        .name("isDirectory").value(e.isDirectory)
+                        .name("size").value(e.size)
+                        .name("modified").value(e.modified)
+                        .endObject();
             }
-
-            JSONObject ok = new JSONObject();
-            ok.put("ok", true);
-            ok.put("files", arr);
-            return ok.toString();
+            return w.endArray().endObject().toString();
         } catch (Exception e) {
             return makeError(e.getMessage());
         }
@@ -191,29 +538,80 @@ public class FileInterfaceNew {
 
     @JavascriptInterface
     public String deleteFile(String relativePath) {
+        long start = System.nanoTime();
+        String result = doDeleteFile(relativePath);
+        metrics.record(BridgeMetrics.DELETE_FILE, start, BridgeMetrics.length(relativePath), result);
+        return result;
+    }
+
+    private String doDeleteFile(String relativePath) {
         try {
             File f = resolveSafe(relativePath);
             if (f == null) return makeError("Invalid path or access denied");
             if (!f.exists()) return makeError("File not found");
             boolean deleted = f.delete();
             if (!deleted) return makeError("Cannot delete file");
-            JSONObject ok = new JSONObject();
-            ok.put("ok", true);
-            return ok.toString();
+            directoryIndex.invalidate(f.getParentFile());
+            return JsonCodec.ok();
         } catch (Exception e) {
             return makeError(e.getMessage());
         }
     }
 
+    // Асинхронные варианты: возвращают id запроса, результат приходит в window.onAndroidComplete(id, result)
+
+    @JavascriptInterface
+    public int readFileAsync(final String relativePath, final String mode) {
+        return async.submit(BridgeExecutor.PRIORITY_READ, () -> readFile(relativePath, mode));
+    }
+
+    @JavascriptInterface
+    public int readChunkAsync(final int handle) {
+        return async.submit(BridgeExecutor.PRIORITY_READ, () -> readChunk(handle));
+    }
+
+    @JavascriptInterface
+    public int writeFileAsync(final String relativePath, final String content, final String mode) {
+        return async.submit(BridgeExecutor.PRIORITY_WRITE, () -> writeFile(relativePath, content, mode));
+    }
+
+    @JavascriptInterface
+    public int appendFileAsync(final String relativePath, final String content, final String mode) {
+        return async.submit(BridgeExecutor.PRIORITY_WRITE, () -> appendFile(relativePath, content, mode));
+    }
+
+    @JavascriptInterface
+    public int patchFileAsync(final String relativePath, final String patchesJson, final String mode) {
+        return async.submit(BridgeExecutor.PRIORITY_WRITE, () -> patchFile(relativePath, patchesJson, mode));
+    }
+
+    @JavascriptInterface
+    public int listFilesAsync(final String relativePath) {
+        return async.submit(BridgeExecutor.PRIORITY_READ, () -> listFiles(relativePath));
+    }
+
+    @JavascriptInterface
+    public int listFilesAsync(final String relativePath, final int offset, final int limit,
+                              final String glob, final String sortKey) {
+        return async.submit(BridgeExecutor.PRIORITY_READ,
+                () -> listFiles(relativePath, offset, limit, glob, sortKey));
+    }
+
+    @JavascriptInterface
+    public int deleteFileAsync(final String relativePath) {
+        return async.submit(BridgeExecutor.PRIORITY_WRITE, () -> deleteFile(relativePath));
+    }
+
+    public void release() {
+        loader.shutdownNow();
+        closeAllReads();
+        directoryIndex.clear();
+        metrics.stopLogging();
+        async.shutdown();
+    }
+
     private static String makeError(String msg) {
-        try {
-            JSONObject o = new JSONObject();
-            o.put("ok", false);
-            o.put("error", msg == null ? "null" : msg);
-            return o.toString();
-        } catch (Exception ex) {
-            return "{\"ok\":false,\"error\":\"unknown\"}";
-        }
+        return JsonCodec.error(msg);
     }
 
     private static byte[] readAllBytes(File f) throws IOException {
@@ -228,27 +626,39 @@ public class FileInterfaceNew {
         }
     }
 
+    private Uri currentFileUri = null;
     private String currentFileContent = null;
     private String currentFileName = null;
 
     public void setCurrentFileUri(Uri uri) {
-        try {
-            String path = uri.getPath();
-            currentFileName = path != null ? new File(path).getName() : "";
-            try (java.io.InputStream is = context.getContentResolver().openInputStream(uri)) {
+        // Содержимое не читаем заранее: filedata://current отдаёт его потоком
+        currentFileUri = uri;
+        currentFileContent = null;
+        String path = uri != null ? uri.getPath() : null;
+        currentFileName = path != null ? new File(path).getName() : "";
+    }
+
+    /**
+     * Открывает поток на текущий файл или возвращает null, если файл не выбран.
+     */
+    @Nullable
+    public java.io.InputStream openCurrentFile() throws IOException {
+        if (currentFileUri == null) return null;
+        java.io.InputStream is = context.getContentResolver().openInputStream(currentFileUri);
+        if (is == null) throw new IOException("Cannot open file stream");
+        return is;
+    }
+
+    public String getCurrentFileContent() {
+        if (currentFileContent == null && currentFileUri != null) {
+            try (java.io.InputStream is = openCurrentFile()) {
                 if (is != null) {
-                    byte[] bytes = readStreamToBytes(is);
-                    currentFileContent = new String(bytes, StandardCharsets.UTF_8);
-                } else {
-                    currentFileContent = null;
+                    currentFileContent = new String(readStreamToBytes(is), StandardCharsets.UTF_8);
                 }
+            } catch (Exception e) {
+                currentFileContent = null;
             }
-        } catch (Exception e) {
-            currentFileContent = null;
         }
-    }
-
-    public String getCurrentFileContent() {
         return currentFileContent == null ? "" : currentFileContent;
     }
 
@@ -270,13 +680,36 @@ public class FileInterfaceNew {
 
     @JavascriptInterface
     public String getBaseDir() {
-        try {
-            JSONObject o = new JSONObject();
-            o.put("ok", true);
-            o.put("baseDir", baseDir.getAbsolutePath());
-            return o.toString();
-        } catch (Exception e) {
-            return makeError(e.getMessage());
-        }
+        return JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("baseDir").value(baseDir.getAbsolutePath())
+                .endObject().toString();
+    }
+
+    /**
+     * Счётчики и гистограммы задержек методов моста с момента запуска,
+     * см. {@link BridgeMetrics#snapshot()}. Асинхронные варианты учитываются
+     * под именем синхронного метода, без времени ожидания в очереди.
+     */
+    @JavascriptInterface
+    public String getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /** Шкала холодного старта, см. {@link StartupTrace#toJson()}. */
+    @JavascriptInterface
+    public String getStartupTrace() {
+        return StartupTrace.toJson();
+    }
+
+    /** Сохраняет шкалу старта в baseDir/startup-trace.json. */
+    @JavascriptInterface
+    public String dumpStartupTrace() {
+        File target = new File(baseDir, StartupTrace.FILE_NAME);
+        if (!StartupTrace.dump(target)) return makeError("Cannot write " + target.getName());
+        return JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("path").value(target.getAbsolutePath())
+                .endObject().toString();
     }
 }
@@ -0,0 +1,378 @@
+package com.eenot.eeditor;
+
+import android.content.Context;
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * История undo/redo редакторов (JS-объект AndroidHistory).
+ * Вместо полного JSON.stringify на каждую правку хранит структурную разницу
+ * (см. {@link JsonDiff}) в журнале на диске, в памяти — только смещения и
+ * последний документ в сжатом виде. Глубина ограничена объёмом записей,
+ * а не количеством правок.
+ *
+ * Каналы независимы: "countries", "events" и т.д.
+ * <pre>
+ *   commit(channel, json)        — состояние перед правкой
+ *   undo(channel, currentJson)   — {ok, changes:[...]} для отката
+ *   redo(channel, currentJson)   — {ok, changes:[...]} для повтора
+ *   resetAll()                   — при открытии другого сценария и загрузке страницы
+ * </pre>
+ * currentJson может быть null, если документ не менялся с прошлого шага:
+ * тогда повторные undo не гоняют весь документ через мост.
+ */
+class HistoryStore {
+    private static final String TAG = "HistoryStore";
+
+    // Бюджет записей одного канала
+    private static final long MAX_BYTES = 8L * 1024 * 1024;
+    // Журнал переписывается, когда мёртвых записей в нём больше живых
+    private static final long COMPACT_THRESHOLD = 2 * MAX_BYTES;
+    // Предел сжатого документа; больше — история канала не ведётся
+    private static final int MAX_BASE_BYTES = 4 * 1024 * 1024;
+
+    private final File dir;
+    private final Map<String, Channel> channels = new HashMap<>();
+
+    /** Положение одной правки в журнале: изменения «вперёд» и следом «назад». */
+    private static final class Entry {
+        long offset;
+        final int forwardLength;
+        final int backwardLength;
+
+        Entry(long offset, int forwardLength, int backwardLength) {
+            this.offset = offset;
+            this.forwardLength = forwardLength;
+            this.backwardLength = backwardLength;
+        }
+
+        int size() {
+            return forwardLength + backwardLength;
+        }
+    }
+
+    private static final class Channel {
+        final File file;
+        RandomAccessFile log;
+        // Документ в том виде, в каком его последний раз видела история:
+        // сжатый текст вместо дерева org.json, дерево строится только для diff
+        byte[] base;
+        int baseLength;
+        int baseHash;
+        final ArrayDeque<Entry> undo = new ArrayDeque<>();
+        final ArrayDeque<Entry> redo = new ArrayDeque<>();
+        long liveBytes;
+
+        Channel(File file) throws IOException {
+            this.file = file;
+            this.log = new RandomAccessFile(file, "rw");
+            this.log.setLength(0);
+        }
+    }
+
+    HistoryStore(Context context) {
+        this.dir = new File(context.getCacheDir(), "history");
+    }
+
+    /** Запоминает состояние документа перед правкой. Очищает redo. */
+    @JavascriptInterface
+    public synchronized String commit(String channel, String json) {
+        try {
+            Channel c = channel(channel);
+            if (json == null) throw new JSONException("Empty document");
+            record(c, json);
+            clear(c.redo, c);
+            return state(c);
+        } catch (Exception e) {
+            Log.e(TAG, "commit failed", e);
+            return JsonCodec.error(e.getMessage());
+        }
+    }
+
+    @JavascriptInterface
+    public synchronized String undo(String channel, String currentJson) {
+        try {
+            Channel c = channel(channel);
+            // Правка после последнего commit() тоже должна откатываться
+            if (record(c, currentJson)) clear(c.redo, c);
+            Entry e = c.undo.pollLast();
+            if (e == null) return JsonCodec.error("Nothing to undo");
+            String changes = read(c, e.offset + e.forwardLength, e.backwardLength);
+            step(c, changes);
+            c.redo.addLast(e);
+            return result(c, changes);
+        } catch (Exception e) {
+            Log.e(TAG, "undo failed", e);
+            return JsonCodec.error(e.getMessage());
+        }
+    }
+
+    @JavascriptInterface
+    public synchronized String redo(String channel, String currentJson) {
+        try {
+            Channel c = channel(channel);
+            // Если документ изменили после undo, повторять уже нечего
+            if (record(c, currentJson)) clear(c.redo, c);
+            Entry e = c.redo.pollLast();
+            if (e == null) return JsonCodec.error("Nothing to redo");
+            String changes = read(c, e.offset, e.forwardLength);
+            step(c, changes);
+            c.undo.addLast(e);
+            return result(c, changes);
+        } catch (Exception e) {
+            Log.e(TAG, "redo failed", e);
+            return JsonCodec.error(e.getMessage());
+        }
+    }
+
+    /** Сбрасывает историю канала, например при открытии другого файла. */
+    @JavascriptInterface
+    public synchronized String reset(String channel) {
+        Channel c = channels.remove(channel);
+        if (c != null) close(c);
+        return JsonCodec.ok();
+    }
+
+    /** Сбрасывает историю всех каналов: открыт другой сценарий или страница загружена заново. */
+    @JavascriptInterface
+    public synchronized String resetAll() {
+        release();
+        return JsonCodec.ok();
+    }
+
+    /** {ok, undo, redo, bytes} — сколько шагов доступно и сколько они занимают. */
+    @JavascriptInterface
+    public synchronized String getState(String channel) {
+        Channel c = channels.get(channel);
+        if (c == null) {
+            return JsonCodec.writer().beginObject()
+                    .name("ok").value(true)
+                    .name("undo").value(0)
+                    .name("redo").value(0)
+                    .name("bytes").value(0)
+                    .endObject().toString();
+        }
+        return state(c);
+    }
+
+    synchronized void release() {
+        for (Channel c : channels.values()) close(c);
+        channels.clear();
+    }
+
+    /**
+     * Добавляет в undo разницу между базой и документом и делает документ базой.
+     *
+     * @param json документ или null, если он не менялся с прошлого шага
+     * @return true, если документ отличался от базы
+     */
+    private boolean record(Channel c, @Nullable String json) throws IOException, JSONException {
+        if (json == null) {
+            if (c.base == null) throw new JSONException("Empty document");
+            return false;
+        }
+        if (c.base == null) {
+            parse(json);
+            setBase(c, json);
+            return false;
+        }
+        // Тот же текст — без разбора и diff
+        if (json.length() == c.baseLength && json.hashCode() == c.baseHash && json.equals(inflate(c.base))) {
+            return false;
+        }
+        Object doc = parse(json);
+        Object base = parse(inflate(c.base));
+        String forward = JsonDiff.diff(base, doc);
+        if (forward.equals("[]")) {
+            setBase(c, json);
+            return false;
+        }
+        String backward = JsonDiff.diff(doc, base);
+        setBase(c, json);
+
+        byte[] fwd = forward.getBytes(StandardCharsets.UTF_8);
+        byte[] back = backward.getBytes(StandardCharsets.UTF_8);
+        long offset = c.log.length();
+        c.log.seek(offset);
+        c.log.write(fwd);
+        c.log.write(back);
+        Entry e = new Entry(offset, fwd.length, back.length);
+        c.undo.addLast(e);
+        c.liveBytes += e.size();
+
+        // Самые старые шаги вытесняются, последний остаётся в любом случае
+        while (c.liveBytes > MAX_BYTES && c.undo.size() > 1) {
+            c.liveBytes -= c.undo.pollFirst().size();
+        }
+        if (c.log.length() > COMPACT_THRESHOLD && c.log.length() > 2 * c.liveBytes) {
+            compact(c);
+        }
+        return true;
+    }
+
+    /** Применяет шаг истории к базе. */
+    private static void step(Channel c, String changes) throws IOException, JSONException {
+        Object doc = JsonDiff.apply(parse(inflate(c.base)), new JSONArray(changes));
+        JsonCodec.Writer w = JsonCodec.writer();
+        JsonDiff.writeValue(w, doc);
+        setBase(c, w.toString());
+    }
+
+    private static void setBase(Channel c, String json) throws IOException {
+        byte[] packed = deflate(json);
+        if (packed.length > MAX_BASE_BYTES) {
+            throw new IOException("Document is too large for history");
+        }
+        c.base = packed;
+        c.baseLength = json.length();
+        c.baseHash = json.hashCode();
+    }
+
+    private static byte[] deflate(String text) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(Math.max(64, text.length() / 8));
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (Writer out = new OutputStreamWriter(new DeflaterOutputStream(buf, deflater, 16 * 1024),
+                StandardCharsets.UTF_8)) {
+            out.write(text);
+        } finally {
+            deflater.end();
+        }
+        return buf.toByteArray();
+    }
+
+    private static String inflate(byte[] packed) throws IOException {
+        try (Reader in = new InputStreamReader(new InflaterInputStream(new ByteArrayInputStream(packed)),
+                StandardCharsets.UTF_8)) {
+            StringBuilder sb = new StringBuilder(packed.length * 4);
+            char[] chunk = new char[16 * 1024];
+            int n;
+            while ((n = in.read(chunk)) != -1) sb.append(chunk, 0, n);
+            return sb.toString();
+        }
+    }
+
+    private void clear(ArrayDeque<Entry> stack, Channel c) {
+        for (Entry e : stack) c.liveBytes -= e.size();
+        stack.clear();
+    }
+
+    /** Переписывает журнал, оставляя только живые записи. */
+    private void compact(Channel c) throws IOException {
+        File tmp = new File(dir, c.file.getName() + ".tmp");
+        long[] offsets = new long[c.undo.size() + c.redo.size()];
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            out.setLength(0);
+            byte[] buffer = new byte[64 * 1024];
+            int i = copyEntries(c, c.undo, out, buffer, offsets, 0);
+            copyEntries(c, c.redo, out, buffer, offsets, i);
+        }
+        c.log.close();
+        if (!tmp.renameTo(c.file)) {
+            // Старый журнал цел, продолжаем писать в него
+            tmp.delete();
+            c.log = new RandomAccessFile(c.file, "rw");
+            return;
+        }
+        c.log = new RandomAccessFile(c.file, "rw");
+        int i = 0;
+        for (Entry e : c.undo) e.offset = offsets[i++];
+        for (Entry e : c.redo) e.offset = offsets[i++];
+    }
+
+    private static int copyEntries(Channel c, ArrayDeque<Entry> stack, RandomAccessFile out,
+                                   byte[] buffer, long[] offsets, int index) throws IOException {
+        for (Entry e : stack) {
+            offsets[index++] = out.getFilePointer();
+            c.log.seek(e.offset);
+            int left = e.size();
+            while (left > 0) {
+                int n = Math.min(left, buffer.length);
+                c.log.readFully(buffer, 0, n);
+                out.write(buffer, 0, n);
+                left -= n;
+            }
+        }
+        return index;
+    }
+
+    private Channel channel(String name) throws IOException {
+        if (name == null || name.isEmpty()) throw new IOException("Channel is required");
+        Channel c = channels.get(name);
+        if (c == null) {
+            if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+            c = new Channel(new File(dir, safeName(name) + ".log"));
+            channels.put(name, c);
+        }
+        return c;
+    }
+
+    private static String read(Channel c, long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        c.log.seek(offset);
+        c.log.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private static Object parse(String json) throws JSONException {
+        if (json == null) throw new JSONException("Empty document");
+        return new JSONTokener(json).nextValue();
+    }
+
+    private static String result(Channel c, String changes) {
+        return JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("changes").rawValue(changes)
+                .name("undo").value(c.undo.size())
+                .name("redo").value(c.redo.size())
+                .endObject().toString();
+    }
+
+    private static String state(Channel c) {
+        return JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("undo").value(c.undo.size())
+                .name("redo").value(c.redo.size())
+                .name("bytes").value(c.liveBytes)
+                .endObject().toString();
+    }
+
+    private static void close(Channel c) {
+        try {
+            c.log.close();
+        } catch (IOException ignored) {
+        }
+        c.file.delete();
+    }
+
+    private static String safeName(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length() && sb.length() < 40; i++) {
+            char c = name.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) || c == '-' ? c : '_');
+        }
+        return sb.toString();
+    }
+}
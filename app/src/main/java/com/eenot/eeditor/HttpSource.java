@@ -0,0 +1,83 @@
+package com.eenot.eeditor;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Источник HTTP-ответов для обновлений. Отдельный интерфейс, чтобы в тестах
+ * подставлять ответы без сети.
+ */
+interface HttpSource {
+
+    /** GET с дополнительными заголовками запроса. */
+    Response get(String url, @Nullable Map<String, String> headers) throws IOException;
+
+    interface Response extends Closeable {
+        int code();
+
+        @Nullable
+        String header(String name);
+
+        /** -1, если длина неизвестна */
+        long contentLength();
+
+        InputStream body() throws IOException;
+    }
+
+    /** Обычный HttpURLConnection. */
+    final class UrlConnection implements HttpSource {
+        private static final int CONNECT_TIMEOUT = 15_000;
+        private static final int READ_TIMEOUT = 30_000;
+
+        @Override
+        public Response get(String url, @Nullable Map<String, String> headers) throws IOException {
+            final HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+            c.setConnectTimeout(CONNECT_TIMEOUT);
+            c.setReadTimeout(READ_TIMEOUT);
+            // Иначе HttpURLConnection сам распакует gzip и длины не сойдутся с Range
+            c.setRequestProperty("Accept-Encoding", "identity");
+            if (headers != null) {
+                for (Map.Entry<String, String> h : headers.entrySet()) c.setRequestProperty(h.getKey(), h.getValue());
+            }
+            final int code;
+            try {
+                code = c.getResponseCode();
+            } catch (IOException e) {
+                c.disconnect();
+                throw e;
+            }
+            return new Response() {
+                @Override
+                public int code() {
+                    return code;
+                }
+
+                @Override
+                public String header(String name) {
+                    return c.getHeaderField(name);
+                }
+
+                @Override
+                public long contentLength() {
+                    return c.getContentLengthLong();
+                }
+
+                @Override
+                public InputStream body() throws IOException {
+                    return c.getInputStream();
+                }
+
+                @Override
+                public void close() {
+                    c.disconnect();
+                }
+            };
+        }
+    }
+}
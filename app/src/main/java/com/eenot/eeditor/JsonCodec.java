@@ -0,0 +1,232 @@
+package com.eenot.eeditor;
+
+/**
+ * Общий писатель JSON для ответов моста и filedata://.
+ * Экранирование идёт по таблице, всё, что выше ASCII, пишется как есть (валидный UTF-8),
+ * буфер StringBuilder переиспользуется в пределах потока.
+ */
+final class JsonCodec {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // Замена для каждого ASCII символа; null — символ пишется как есть
+    private static final char[][] ESCAPES = new char[128][];
+    // Буфер больше этого размера не держим между вызовами, чтобы не удерживать память
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final int MAX_DEPTH = 64;
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = new char[]{'\\', 'u', '0', '0', HEX[c >> 4], HEX[c & 0xF]};
+        }
+        ESCAPES['"'] = new char[]{'\\', '"'};
+        ESCAPES['\\'] = new char[]{'\\', '\\'};
+        ESCAPES['\b'] = new char[]{'\\', 'b'};
+        ESCAPES['\f'] = new char[]{'\\', 'f'};
+        ESCAPES['\n'] = new char[]{'\\', 'n'};
+        ESCAPES['\r'] = new char[]{'\\', 'r'};
+        ESCAPES['\t'] = new char[]{'\\', 't'};
+    }
+
+    private static final ThreadLocal<Writer> WRITERS = new ThreadLocal<Writer>() {
+        @Override
+        protected Writer initialValue() {
+            return new Writer();
+        }
+    };
+
+    private JsonCodec() {
+    }
+
+    /**
+     * Писатель текущего потока, сброшенный в начальное состояние.
+     * Результат забирается через {@link Writer#toString()} до следующего вызова.
+     */
+    static Writer writer() {
+        Writer w = WRITERS.get();
+        w.reset();
+        return w;
+    }
+
+    /** Дописывает s в out с экранированием, без кавычек. */
+    static void escape(CharSequence s, StringBuilder out) {
+        int len = s.length();
+        int start = 0;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 128 && ESCAPES[c] != null) {
+                if (i > start) out.append(s, start, i);
+                out.append(ESCAPES[c]);
+                start = i + 1;
+            }
+        }
+        if (len > start) out.append(s, start, len);
+    }
+
+    /**
+     * Экранирует символы и сразу кодирует их в UTF-8.
+     * dst должен вмещать count * 6 байт. Незавершённую суррогатную пару в конце
+     * вызывающий переносит в следующий кусок сам; одиночный суррогат пишется как \\uXXXX.
+     *
+     * @return число записанных байт
+     */
+    static int escapeUtf8(char[] src, int off, int count, byte[] dst) {
+        int o = 0;
+        int end = off + count;
+        for (int i = off; i < end; i++) {
+            char c = src[i];
+            if (c < 128) {
+                char[] esc = ESCAPES[c];
+                if (esc == null) {
+                    dst[o++] = (byte) c;
+                } else {
+                    for (char e : esc) dst[o++] = (byte) e;
+                }
+            } else if (c < 0x800) {
+                dst[o++] = (byte) (0xC0 | (c >> 6));
+                dst[o++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(src[i + 1])) {
+                int cp = Character.toCodePoint(c, src[++i]);
+                dst[o++] = (byte) (0xF0 | (cp >> 18));
+                dst[o++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                dst[o++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                dst[o++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                dst[o++] = '\\';
+                dst[o++] = 'u';
+                dst[o++] = (byte) HEX[(c >> 12) & 0xF];
+                dst[o++] = (byte) HEX[(c >> 8) & 0xF];
+                dst[o++] = (byte) HEX[(c >> 4) & 0xF];
+                dst[o++] = (byte) HEX[c & 0xF];
+            } else {
+                dst[o++] = (byte) (0xE0 | (c >> 12));
+                dst[o++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dst[o++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return o;
+    }
+
+    /** Короткая форма для {"ok":false,"error":msg}. */
+    static String error(String msg) {
+        return writer().beginObject()
+                .name("ok").value(false)
+                .name("error").value(msg == null ? "null" : msg)
+                .endObject().toString();
+    }
+
+    /** Короткая форма для {"ok":true}. */
+    static String ok() {
+        return "{\"ok\":true}";
+    }
+
+    static final class Writer {
+        private StringBuilder sb = new StringBuilder(256);
+        // Для каждого уровня вложенности — был ли уже элемент (нужна ли запятая)
+        private final boolean[] hasElement = new boolean[MAX_DEPTH];
+        private int depth = 0;
+        private boolean afterName = false;
+
+        private void reset() {
+            if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+                sb = new StringBuilder(256);
+            } else {
+                sb.setLength(0);
+            }
+            depth = 0;
+            afterName = false;
+        }
+
+        private void beforeValue() {
+            if (afterName) {
+                afterName = false;
+                return;
+            }
+            if (depth > 0) {
+                if (hasElement[depth - 1]) sb.append(',');
+                hasElement[depth - 1] = true;
+            }
+        }
+
+        Writer beginObject() {
+            beforeValue();
+            sb.append('{');
+            hasElement[depth++] = false;
+            return this;
+        }
+
+        Writer endObject() {
+            depth--;
+            sb.append('}');
+            return this;
+        }
+
+        Writer beginArray() {
+            beforeValue();
+            sb.append('[');
+            hasElement[depth++] = false;
+            return this;
+        }
+
+        Writer endArray() {
+            depth--;
+            sb.append(']');
+            return this;
+        }
+
+        Writer name(String name) {
+            beforeValue();
+            sb.append('"');
+            escape(name, sb);
+            sb.append('"').append(':');
+            afterName = true;
+            return this;
+        }
+
+        Writer value(String s) {
+            beforeValue();
+            if (s == null) {
+                sb.append("null");
+            } else {
+                sb.append('"');
+                escape(s, sb);
+                sb.append('"');
+            }
+            return this;
+        }
+
+        Writer value(long v) {
+            beforeValue();
+            sb.append(v);
+            return this;
+        }
+
+        Writer value(double v) {
+            beforeValue();
+            if (Double.isNaN(v) || Double.isInfinite(v)) {
+                sb.append("null");
+            } else if (v == Math.rint(v) && Math.abs(v) < 1e15) {
+                sb.append((long) v);
+            } else {
+                sb.append(v);
+            }
+            return this;
+        }
+
+        Writer value(boolean v) {
+            beforeValue();
+            sb.append(v);
+            return this;
+        }
+
+        /** Уже готовый JSON-фрагмент, вставляется без изменений. */
+        Writer rawValue(String json) {
+            beforeValue();
+            sb.append(json);
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.eenot.eeditor;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Структурная разница двух JSON-деревьев (org.json) и её применение.
+ * Изменения — массив операций:
+ * <pre>
+ *   {"op":"set","path":["lands","RUS","name"],"value":"..."}
+ *   {"op":"del","path":["lands","OLD"]}
+ *   {"op":"len","path":["provinces"],"value":120}   // обрезать массив
+ * </pre>
+ * В изменение попадают только отличающиеся поддеревья.
+ */
+final class JsonDiff {
+    // Если в массиве поменялась большая часть элементов, проще заменить его целиком
+    private static final double ARRAY_REPLACE_RATIO = 0.5;
+
+    private JsonDiff() {
+    }
+
+    /** Изменения, которые переводят from в to, в виде JSON-массива. */
+    static String diff(Object from, Object to) {
+        JsonCodec.Writer w = JsonCodec.writer().beginArray();
+        int count = diffValue(from, to, new ArrayList<>(), w);
+        w.endArray();
+        return count == 0 ? "[]" : w.toString();
+    }
+
+    private static int diffValue(Object from, Object to, List<Object> path, JsonCodec.Writer w) {
+        if (from instanceof JSONObject && to instanceof JSONObject) {
+            return diffObject((JSONObject) from, (JSONObject) to, path, w);
+        }
+        if (from instanceof JSONArray && to instanceof JSONArray) {
+            JSONArray a = (JSONArray) from;
+            JSONArray b = (JSONArray) to;
+            if (countChangedElements(a, b) > Math.max(1, b.length() * ARRAY_REPLACE_RATIO)) {
+                writeSet(w, path, b);
+                return 1;
+            }
+            return diffArray(a, b, path, w);
+        }
+        if (!sameLeaf(from, to)) {
+            writeSet(w, path, to);
+            return 1;
+        }
+        return 0;
+    }
+
+    private static int diffObject(JSONObject a, JSONObject b, List<Object> path, JsonCodec.Writer w) {
+        int count = 0;
+        Iterator<String> keys = a.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!b.has(key)) {
+                path.add(key);
+                writeOp(w, "del", path);
+                w.endObject();
+                path.remove(path.size() - 1);
+                count++;
+            }
+        }
+        keys = b.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            path.add(key);
+            Object nv = b.opt(key);
+            if (!a.has(key)) {
+                writeSet(w, path, nv);
+                count++;
+            } else {
+                count += diffValue(a.opt(key), nv, path, w);
+            }
+            path.remove(path.size() - 1);
+        }
+        return count;
+    }
+
+    private static int diffArray(JSONArray a, JSONArray b, List<Object> path, JsonCodec.Writer w) {
+        int count = 0;
+        int common = Math.min(a.length(), b.length());
+        for (int i = 0; i < common; i++) {
+            path.add(i);
+            count += diffValue(a.opt(i), b.opt(i), path, w);
+            path.remove(path.size() - 1);
+        }
+        for (int i = common; i < b.length(); i++) {
+            path.add(i);
+            writeSet(w, path, b.opt(i));
+            path.remove(path.size() - 1);
+            count++;
+        }
+        if (b.length() < a.length()) {
+            writeOp(w, "len", path);
+            w.name("value").value(b.length()).endObject();
+            count++;
+        }
+        return count;
+    }
+
+    /** Грубая оценка: сколько элементов по тем же индексам отличаются. */
+    private static int countChangedElements(JSONArray a, JSONArray b) {
+        int changed = Math.abs(a.length() - b.length());
+        int common = Math.min(a.length(), b.length());
+        for (int i = 0; i < common; i++) {
+            Object x = a.opt(i);
+            Object y = b.opt(i);
+            if (x instanceof JSONObject || x instanceof JSONArray) {
+                if (x.getClass() != (y == null ? null : y.getClass())) changed++;
+            } else if (!sameLeaf(x, y)) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    static boolean sameLeaf(Object a, Object b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        if (a instanceof Number && b instanceof Number) {
+            return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+        }
+        return a.equals(b);
+    }
+
+    private static void writeOp(JsonCodec.Writer w, String op, List<Object> path) {
+        w.beginObject().name("op").value(op).name("path").beginArray();
+        for (Object p : path) {
+            if (p instanceof Integer) w.value((Integer) p);
+            else w.value((String) p);
+        }
+        w.endArray();
+    }
+
+    private static void writeSet(JsonCodec.Writer w, List<Object> path, Object value) {
+        writeOp(w, "set", path);
+        w.name("value");
+        writeValue(w, value);
+        w.endObject();
+    }
+
+    static void writeValue(JsonCodec.Writer w, Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            w.rawValue("null");
+        } else if (value instanceof String) {
+            w.value((String) value);
+        } else if (value instanceof Boolean) {
+            w.value((Boolean) value);
+        } else if (value instanceof Number) {
+            w.rawValue(value.toString());
+        } else {
+            // JSONObject / JSONArray сериализуются сами
+            w.rawValue(value.toString());
+        }
+    }
+
+    /**
+     * Применяет изменения к дереву на месте.
+     *
+     * @return новый корень (меняется, только если заменён весь документ)
+     */
+    static Object apply(Object root, JSONArray changes) throws JSONException {
+        for (int i = 0; i < changes.length(); i++) {
+            JSONObject change = changes.getJSONObject(i);
+            String op = change.optString("op");
+            JSONArray path = change.getJSONArray("path");
+            Object value = change.opt("value");
+            if (path.length() == 0) {
+                if ("set".equals(op)) root = value;
+                else if ("len".equals(op)) truncate((JSONArray) root, change.optInt("value", 0));
+                continue;
+            }
+            Object parent = root;
+            int last = path.length() - 1;
+            for (int p = 0; p < last; p++) {
+                parent = child(parent, path.get(p));
+            }
+            Object key = path.get(last);
+            switch (op) {
+                case "set":
+                    if (parent instanceof JSONArray) {
+                        ((JSONArray) parent).put(((Number) key).intValue(), value);
+                    } else {
+                        ((JSONObject) parent).put(key.toString(), value);
+                    }
+                    break;
+                case "del":
+                    if (parent instanceof JSONObject) ((JSONObject) parent).remove(key.toString());
+                    break;
+                case "len":
+                    truncate((JSONArray) child(parent, key), change.optInt("value", 0));
+                    break;
+                default:
+                    throw new JSONException("Unknown op " + op);
+            }
+        }
+        return root;
+    }
+
+    private static Object child(Object parent, Object key) throws JSONException {
+        if (parent instanceof JSONArray) return ((JSONArray) parent).get(((Number) key).intValue());
+        return ((JSONObject) parent).get(key.toString());
+    }
+
+    private static void truncate(JSONArray arr, int length) {
+        while (arr.length() > length) arr.remove(arr.length() - 1);
+    }
+}
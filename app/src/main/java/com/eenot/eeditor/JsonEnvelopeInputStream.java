@@ -0,0 +1,100 @@
+package com.eenot.eeditor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Поток вида {"fileName":"...","content":"..."}, где content экранируется
+ * на лету при чтении из исходного потока. Файл целиком в памяти не собирается.
+ */
+class JsonEnvelopeInputStream extends InputStream {
+    private static final int CHAR_CHUNK = 8192;
+
+    private final byte[] prefix;
+    private final byte[] suffix;
+    private final Reader content;
+    private final char[] chars = new char[CHAR_CHUNK];
+    // В худшем случае один символ превращается в \\uXXXX — 6 байт
+    private final byte[] escaped = new byte[CHAR_CHUNK * 6];
+    // Старшая половина суррогатной пары, пришедшая последней в куске
+    private int carried = 0;
+
+    private byte[] pending;
+    private int pos;
+    private int len;
+    private int phase = 0; // 0 — префикс, 1 — содержимое, 2 — суффикс, 3 — конец
+
+    /**
+     * @param source поток с содержимым файла в UTF-8 или null для пустого content
+     */
+    JsonEnvelopeInputStream(String fileName, InputStream source) {
+        this.prefix = (JsonCodec.writer().beginObject()
+                .name("fileName").value(fileName == null ? "" : fileName)
+                .toString() + ",\"content\":\"").getBytes(StandardCharsets.UTF_8);
+        this.suffix = "\"}".getBytes(StandardCharsets.UTF_8);
+        this.content = source == null ? null : new InputStreamReader(source, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        return pending[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int n) throws IOException {
+        if (n == 0) return 0;
+        if (!fill()) return -1;
+        int count = Math.min(n, len - pos);
+        System.arraycopy(pending, pos, b, off, count);
+        pos += count;
+        return count;
+    }
+
+    private boolean fill() throws IOException {
+        while (pending == null || pos >= len) {
+            switch (phase) {
+                case 0:
+                    set(prefix, prefix.length);
+                    phase = 1;
+                    break;
+                case 1:
+                    int r = content == null ? -1 : content.read(chars, carried, CHAR_CHUNK - carried);
+                    if (r < 0) {
+                        set(escaped, JsonCodec.escapeUtf8(chars, 0, carried, escaped));
+                        carried = 0;
+                        phase = 2;
+                    } else {
+                        int count = carried + r;
+                        int complete = Character.isHighSurrogate(chars[count - 1]) ? count - 1 : count;
+                        set(escaped, JsonCodec.escapeUtf8(chars, 0, complete, escaped));
+                        carried = count - complete;
+                        if (carried > 0) chars[0] = chars[count - 1];
+                    }
+                    break;
+                case 2:
+                    set(suffix, suffix.length);
+                    phase = 3;
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private void set(byte[] buf, int length) {
+        pending = buf;
+        pos = 0;
+        len = length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        phase = 3;
+        if (content != null) content.close();
+    }
+}
@@ -0,0 +1,467 @@
+package com.eenot.eeditor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковый проход по JSON в UTF-8 без построения дерева.
+ * Следит за смещением в байтах, строкой/колонкой и путём до текущего значения,
+ * ключи и строковые значения отдаёт {@link Visitor}. Ошибка синтаксиса —
+ * {@link SyntaxError} с позицией и путём. {@link #validate(int)} после ошибки
+ * пропускает значение до ближайшей ',' или скобки и продолжает, собирая несколько ошибок.
+ */
+final class JsonScanner {
+    private static final int MAX_DEPTH = 512;
+
+    interface Visitor {
+        /**
+         * @param key    true для имени поля, false для строкового значения
+         * @param offset смещение открывающей кавычки в байтах
+         * @return false, чтобы остановить проход
+         */
+        boolean onString(JsonScanner scanner, boolean key, String value, long offset);
+    }
+
+    static final class SyntaxError extends IOException {
+        final long offset;
+        final int line;
+        final int column;
+        final String path;
+
+        SyntaxError(String message, long offset, int line, int column, String path) {
+            super(message + " at line " + line + ", column " + column + (path.isEmpty() ? "" : " (" + path + ")"));
+            this.offset = offset;
+            this.line = line;
+            this.column = column;
+            this.path = path;
+        }
+    }
+
+    // Остановка по желанию Visitor
+    private static final class Stop extends RuntimeException {
+        Stop() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buf = new byte[64 * 1024];
+    private int pos;
+    private int limit;
+    private long bufferStart;
+    private int line = 1;
+    private int column = 1;
+
+    // Элементы пути: String для поля объекта, int[1] для индекса массива
+    private final ArrayList<Object> path = new ArrayList<>();
+    private Visitor visitor;
+    private boolean decodeStrings;
+    private byte[] stringBytes = new byte[256];
+    // null — первая ошибка прерывает разбор
+    private List<SyntaxError> errors;
+    private int maxErrors;
+
+    JsonScanner(InputStream in) {
+        this.in = in;
+    }
+
+    /** Проверяет синтаксис, не декодируя строки. */
+    void validate() throws IOException {
+        run(null);
+    }
+
+    /**
+     * Проверяет синтаксис и собирает до maxErrors ошибок.
+     *
+     * @return пустой список, если документ корректен
+     */
+    List<SyntaxError> validate(int maxErrors) throws IOException {
+        this.errors = new ArrayList<>();
+        this.maxErrors = Math.max(1, maxErrors);
+        try {
+            run(null);
+        } catch (SyntaxError e) {
+            // Ошибка на верхнем уровне, где восстанавливаться некуда
+            errors.add(e);
+        }
+        return errors;
+    }
+
+    /** @return true, если документ пройден до конца */
+    boolean scan(Visitor visitor) throws IOException {
+        return run(visitor);
+    }
+
+    private boolean run(Visitor visitor) throws IOException {
+        this.visitor = visitor;
+        this.decodeStrings = visitor != null;
+        try {
+            skipBom();
+            skipWhitespace();
+            value(0);
+            skipWhitespace();
+            if (peek() != -1) throw error("Unexpected data after the root value");
+            return true;
+        } catch (Stop stop) {
+            return false;
+        }
+    }
+
+    long offset() {
+        return bufferStart + pos;
+    }
+
+    int line() {
+        return line;
+    }
+
+    int column() {
+        return column;
+    }
+
+    /** Путь до текущего значения: lands.RUS.name, provinces[3].owner. */
+    String path() {
+        StringBuilder sb = new StringBuilder();
+        for (Object p : path) {
+            if (p instanceof int[]) {
+                sb.append('[').append(((int[]) p)[0]).append(']');
+            } else {
+                if (sb.length() > 0) sb.append('.');
+                sb.append((String) p);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void value(int depth) throws IOException {
+        if (depth > MAX_DEPTH) throw error("Nesting is too deep");
+        int c = peek();
+        switch (c) {
+            case '{':
+                object(depth);
+                break;
+            case '[':
+                array(depth);
+                break;
+            case '"':
+                string(false);
+                break;
+            case 't':
+                literal("true");
+                break;
+            case 'f':
+                literal("false");
+                break;
+            case 'n':
+                literal("null");
+                break;
+            case -1:
+                throw error("Unexpected end of input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) number();
+                else throw error("Unexpected character '" + printable(c) + "'");
+        }
+    }
+
+    private void object(int depth) throws IOException {
+        next(); // {
+        skipWhitespace();
+        if (peek() == '}') {
+            next();
+            return;
+        }
+        int pathSize = path.size();
+        while (true) {
+            try {
+                if (peek() != '"') throw error("Expected property name");
+                String key = string(true);
+                path.add(key == null ? "?" : key);
+                skipWhitespace();
+                if (peek() != ':') throw error("Expected ':'");
+                next();
+                skipWhitespace();
+                value(depth + 1);
+                path.remove(path.size() - 1);
+                skipWhitespace();
+                int c = peek();
+                if (c == ',') {
+                    next();
+                    skipWhitespace();
+                } else if (c == '}') {
+                    next();
+                    return;
+                } else {
+                    throw error("Expected ',' or '}'");
+                }
+            } catch (SyntaxError e) {
+                if (recover(e, pathSize) != ',') {
+                    // '}' или чужая ']' — объект на этом заканчивается
+                    next();
+                    return;
+                }
+                next();
+                skipWhitespace();
+            }
+        }
+    }
+
+    private void array(int depth) throws IOException {
+        next(); // [
+        skipWhitespace();
+        if (peek() == ']') {
+            next();
+            return;
+        }
+        int[] index = {0};
+        path.add(index);
+        int pathSize = path.size();
+        while (true) {
+            try {
+                value(depth + 1);
+                skipWhitespace();
+                int c = peek();
+                if (c == ',') {
+                    next();
+                    skipWhitespace();
+                    index[0]++;
+                } else if (c == ']') {
+                    next();
+                    path.remove(path.size() - 1);
+                    return;
+                } else {
+                    throw error("Expected ',' or ']'");
+                }
+            } catch (SyntaxError e) {
+                int c = recover(e, pathSize);
+                next();
+                if (c != ',') {
+                    path.remove(path.size() - 1);
+                    return;
+                }
+                skipWhitespace();
+                index[0]++;
+            }
+        }
+    }
+
+    /**
+     * Запоминает ошибку и пропускает текст до ',' или закрывающей скобки
+     * на текущем уровне вложенности.
+     *
+     * @return найденный символ; он ещё не прочитан
+     */
+    private int recover(SyntaxError e, int pathSize) throws IOException {
+        if (errors == null) throw e;
+        errors.add(e);
+        if (errors.size() >= maxErrors) throw new Stop();
+        while (path.size() > pathSize) path.remove(path.size() - 1);
+        int nesting = 0;
+        while (true) {
+            int c = peek();
+            if (c == -1) throw new Stop();
+            if (c == '"') {
+                skipStringLenient();
+                continue;
+            }
+            if (nesting == 0 && (c == ',' || c == '}' || c == ']')) return c;
+            if (c == '{' || c == '[') nesting++;
+            else if (c == '}' || c == ']') nesting--;
+            next();
+        }
+    }
+
+    /** Пропускает строку, считая её оборванной на конце строки файла. */
+    private void skipStringLenient() throws IOException {
+        next(); // "
+        while (true) {
+            int c = next();
+            if (c == -1 || c == '"' || c == '\n') return;
+            if (c == '\\') next();
+        }
+    }
+
+    /** @return значение (только если нужен Visitor или это ключ), иначе null */
+    private String string(boolean key) throws IOException {
+        long start = offset();
+        next(); // "
+        int length = 0;
+        boolean decode = decodeStrings || key;
+        // Старшая половина суррогатной пары ждёт младшую из следующего escape
+        int pendingHigh = -1;
+        while (true) {
+            int c = next();
+            if (c == -1) throw error("Unterminated string");
+            if (c == '"') break;
+            if (c < 0x20) throw error("Control character in string");
+            if (c != '\\') {
+                if (!decode) continue;
+                if (pendingHigh >= 0) {
+                    length = appendCodePoint(length, 0xFFFD);
+                    pendingHigh = -1;
+                }
+                length = appendByte(length, c);
+                continue;
+            }
+            int e = next();
+            int ch;
+            switch (e) {
+                case '"': ch = '"'; break;
+                case '\\': ch = '\\'; break;
+                case '/': ch = '/'; break;
+                case 'b': ch = '\b'; break;
+                case 'f': ch = '\f'; break;
+                case 'n': ch = '\n'; break;
+                case 'r': ch = '\r'; break;
+                case 't': ch = '\t'; break;
+                case 'u': ch = hex4(); break;
+                default: throw error("Invalid escape sequence");
+            }
+            if (!decode) continue;
+            if (pendingHigh >= 0) {
+                if (Character.isLowSurrogate((char) ch)) {
+                    length = appendCodePoint(length, Character.toCodePoint((char) pendingHigh, (char) ch));
+                    pendingHigh = -1;
+                    continue;
+                }
+                length = appendCodePoint(length, 0xFFFD);
+                pendingHigh = -1;
+            }
+            if (Character.isHighSurrogate((char) ch)) {
+                pendingHigh = ch;
+                continue;
+            }
+            length = appendCodePoint(length, ch);
+        }
+        if (pendingHigh >= 0) length = appendCodePoint(length, 0xFFFD);
+        String value = decode ? new String(stringBytes, 0, length, StandardCharsets.UTF_8) : null;
+        if (visitor != null && !visitor.onString(this, key, value, start)) throw new Stop();
+        return value;
+    }
+
+    private int hex4() throws IOException {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = next();
+            int d = Character.digit(c < 0 ? 0 : c, 16);
+            if (d < 0) throw error("Invalid \\u escape");
+            v = (v << 4) | d;
+        }
+        return v;
+    }
+
+    private void number() throws IOException {
+        if (peek() == '-') next();
+        if (peek() == '0') {
+            next();
+        } else if (!digits()) {
+            throw error("Invalid number");
+        }
+        if (peek() == '.') {
+            next();
+            if (!digits()) throw error("Invalid number");
+        }
+        if (peek() == 'e' || peek() == 'E') {
+            next();
+            if (peek() == '+' || peek() == '-') next();
+            if (!digits()) throw error("Invalid number");
+        }
+    }
+
+    private boolean digits() throws IOException {
+        boolean any = false;
+        while (peek() >= '0' && peek() <= '9') {
+            next();
+            any = true;
+        }
+        return any;
+    }
+
+    private void literal(String word) throws IOException {
+        for (int i = 0; i < word.length(); i++) {
+            // Неподходящий символ не съедаем: он может быть скобкой, нужной при восстановлении
+            if (peek() != word.charAt(i)) throw error("Invalid literal, expected " + word);
+            next();
+        }
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') next();
+            else return;
+        }
+    }
+
+    private void skipBom() throws IOException {
+        if (peek() == 0xEF) {
+            next();
+            next();
+            next();
+            column = 1;
+        }
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos] & 0xFF;
+    }
+
+    private int next() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        int c = buf[pos++] & 0xFF;
+        if (c == '\n') {
+            line++;
+            column = 1;
+        } else if ((c & 0xC0) != 0x80) {
+            // Продолжения UTF-8 не двигают колонку: она считается в символах
+            column++;
+        }
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        bufferStart += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buf);
+        if (n <= 0) return false;
+        limit = n;
+        return true;
+    }
+
+    private int appendByte(int length, int b) {
+        if (length == stringBytes.length) {
+            stringBytes = java.util.Arrays.copyOf(stringBytes, length * 2);
+        }
+        stringBytes[length] = (byte) b;
+        return length + 1;
+    }
+
+    private int appendCodePoint(int length, int cp) {
+        if (cp < 0x80) return appendByte(length, cp);
+        if (cp < 0x800) {
+            length = appendByte(length, 0xC0 | (cp >> 6));
+        } else {
+            if (cp >= 0xD800 && cp <= 0xDFFF) cp = 0xFFFD; // одиночный суррогат
+            if (cp < 0x10000) {
+                length = appendByte(length, 0xE0 | (cp >> 12));
+            } else {
+                length = appendByte(length, 0xF0 | (cp >> 18));
+                length = appendByte(length, 0x80 | ((cp >> 12) & 0x3F));
+            }
+            length = appendByte(length, 0x80 | ((cp >> 6) & 0x3F));
+        }
+        return appendByte(length, 0x80 | (cp & 0x3F));
+    }
+
+    private SyntaxError error(String message) {
+        return new SyntaxError(message, offset(), line, column, path());
+    }
+
+    private static String printable(int c) {
+        return c >= 0x20 && c < 0x7F ? String.valueOf((char) c) : String.format("\\x%02X", c);
+    }
+}
@@ -0,0 +1,477 @@
+package com.eenot.eeditor;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+/**
+ * Дисковый HTTP-кэш для запросов библиотеки сценариев (eeditor-ws-data).
+ *
+ * Стоит перед shouldInterceptRequest: свежая копия (по max-age) отдаётся с
+ * диска без сети, устаревшая — тоже с диска, а в фоне идёт проверка с
+ * If-None-Match (stale-while-revalidate). no-cache проверяется до ответа,
+ * no-store не кэшируется. Если сети нет, отдаётся любая сохранённая копия.
+ * Общий объём ограничен, вытесняются давно не читанные записи.
+ *
+ * На диске: &lt;sha1(url)&gt;.body и &lt;sha1(url)&gt;.meta (Properties).
+ */
+class LibraryCache {
+    private static final String TAG = "LibraryCache";
+    static final String BASE_URL = "https://raw.githubusercontent.com/eenot-eenot/eeditor-ws-data/refs/heads/main/";
+
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    // Без Cache-Control считаем ответ свежим 5 минут (как отдаёт raw.githubusercontent.com)
+    private static final long DEFAULT_MAX_AGE_MS = 5 * 60 * 1000L;
+    private static final int MAX_ENTRY_BYTES = 16 * 1024 * 1024;
+
+    /** Ответ кэша; body нужно закрыть. */
+    static final class Response {
+        final int status;
+        final String mimeType;
+        final Map<String, String> headers;
+        final InputStream body;
+        /** fresh, stale, revalidated, network, offline */
+        final String source;
+
+        Response(int status, String mimeType, Map<String, String> headers, InputStream body, String source) {
+            this.status = status;
+            this.mimeType = mimeType;
+            this.headers = headers;
+            this.body = body;
+            this.source = source;
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final String url;
+        final String etag;
+        final String lastModified;
+        final String mimeType;
+        final long storedAt;
+        final long maxAgeMs;
+        final boolean mustRevalidate;
+        final long size;
+
+        Entry(String key, String url, String etag, String lastModified, String mimeType,
+              long storedAt, long maxAgeMs, boolean mustRevalidate, long size) {
+            this.key = key;
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.mimeType = mimeType;
+            this.storedAt = storedAt;
+            this.maxAgeMs = maxAgeMs;
+            this.mustRevalidate = mustRevalidate;
+            this.size = size;
+        }
+    }
+
+    private final File dir;
+    private final HttpSource http;
+    private final LongSupplier clock;
+    private final long maxBytes;
+    private final ExecutorService revalidator;
+    // url, который сейчас проверяется в фоне — чтобы не слать одинаковые запросы
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    // Под synchronized (this); порядок доступа — для вытеснения
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+    private boolean loaded;
+
+    LibraryCache(File dir, HttpSource http) {
+        this(dir, http, System::currentTimeMillis, DEFAULT_MAX_BYTES);
+    }
+
+    LibraryCache(File dir, HttpSource http, LongSupplier clock, long maxBytes) {
+        this.dir = dir;
+        this.http = http;
+        this.clock = clock;
+        this.maxBytes = maxBytes;
+        this.revalidator = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "library-revalidate");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /** Относится ли url к библиотеке. */
+    static boolean handles(@Nullable String url) {
+        return url != null && url.startsWith(BASE_URL);
+    }
+
+    /**
+     * @return ответ или null, если запрос не для кэша (не GET, Range и т.п.)
+     */
+    @Nullable
+    Response get(String url, @Nullable String method, @Nullable Map<String, String> requestHeaders) {
+        if (!handles(url)) return null;
+        if (method != null && !"GET".equalsIgnoreCase(method)) return null;
+        if (LocalAssetServer.header(requestHeaders, "Range") != null) return null;
+
+        Entry entry;
+        synchronized (this) {
+            ensureLoaded();
+            entry = entries.get(url);
+        }
+        long now = clock.getAsLong();
+        if (entry != null) {
+            boolean fresh = !entry.mustRevalidate && now - entry.storedAt < entry.maxAgeMs;
+            if (fresh) {
+                Response r = serve(entry, "fresh");
+                if (r != null) return r;
+            } else if (!entry.mustRevalidate) {
+                Response r = serve(entry, "stale");
+                if (r != null) {
+                    revalidateAsync(url);
+                    return r;
+                }
+            }
+        }
+        return fetch(url, entry);
+    }
+
+    /**
+     * Скачивает url в кэш, если его там нет или копия устарела.
+     * Для фоновой подкачки; ошибки сети просто возвращают false.
+     */
+    boolean warm(String url) {
+        Entry entry;
+        synchronized (this) {
+            ensureLoaded();
+            entry = entries.get(url);
+        }
+        if (isFresh(entry)) return true;
+        Response r = fetch(url, entry);
+        if (r == null) return false;
+        closeQuietly(r.body);
+        return r.status == 200 && !"offline".equals(r.source);
+    }
+
+    /** Есть ли в кэше свежая по max-age копия url — тогда подкачивать её не нужно. */
+    boolean isFresh(String url) {
+        Entry entry;
+        synchronized (this) {
+            ensureLoaded();
+            entry = entries.get(url);
+        }
+        return isFresh(entry);
+    }
+
+    private boolean isFresh(@Nullable Entry entry) {
+        return entry != null && clock.getAsLong() - entry.storedAt < entry.maxAgeMs
+                && new File(dir, entry.key + ".body").exists();
+    }
+
+    /** Есть ли в кэше копия url (свежая или нет). */
+    synchronized boolean contains(String url) {
+        ensureLoaded();
+        return entries.containsKey(url);
+    }
+
+    void shutdown() {
+        revalidator.shutdownNow();
+    }
+
+    private void revalidateAsync(final String url) {
+        if (!revalidating.add(url)) return;
+        try {
+            revalidator.execute(() -> {
+                try {
+                    Entry current;
+                    synchronized (this) {
+                        current = entries.get(url);
+                    }
+                    Response r = fetch(url, current);
+                    if (r != null) closeQuietly(r.body);
+                } finally {
+                    revalidating.remove(url);
+                }
+            });
+        } catch (RuntimeException e) {
+            revalidating.remove(url);
+        }
+    }
+
+    /** Запрос в сеть (условный, если есть копия); без сети — сохранённая копия или 504. */
+    @Nullable
+    private Response fetch(String url, @Nullable Entry cached) {
+        Map<String, String> headers = new HashMap<>();
+        if (cached != null && cached.etag != null) headers.put("If-None-Match", cached.etag);
+        if (cached != null && cached.lastModified != null) headers.put("If-Modified-Since", cached.lastModified);
+        try (HttpSource.Response r = http.get(url, headers)) {
+            int code = r.code();
+            long now = clock.getAsLong();
+            if (code == 304 && cached != null) {
+                Entry refreshed = new Entry(cached.key, url,
+                        firstNonNull(r.header("ETag"), cached.etag),
+                        firstNonNull(r.header("Last-Modified"), cached.lastModified),
+                        cached.mimeType, now, maxAge(r.header("Cache-Control")),
+                        mustRevalidate(r.header("Cache-Control")), cached.size);
+                try {
+                    writeMeta(refreshed);
+                } catch (IOException e) {
+                    // Копия на диске цела, после перезапуска её просто проверят ещё раз
+                    Log.w(TAG, "Cannot update meta for " + url + ": " + e.getMessage());
+                }
+                synchronized (this) {
+                    entries.put(url, refreshed);
+                }
+                return serve(refreshed, "revalidated");
+            }
+            if (code >= 300 && code < 400) {
+                // WebResourceResponse не принимает 3xx, а следовать за ними здесь некуда
+                return new Response(502, "text/plain", corsHeaders(),
+                        new ByteArrayInputStream(new byte[0]), "network");
+            }
+            if (code != 200) {
+                // 404 и т.п. отдаём как есть и не кэшируем
+                return new Response(code, mimeOf(r.header("Content-Type"), url), corsHeaders(),
+                        new ByteArrayInputStream(readBody(r, MAX_ENTRY_BYTES)), "network");
+            }
+
+            byte[] body = readBody(r, MAX_ENTRY_BYTES);
+            String mime = mimeOf(r.header("Content-Type"), url);
+            String cacheControl = r.header("Cache-Control");
+            if (!hasDirective(cacheControl, "no-store")) {
+                Entry fresh = new Entry(keyOf(url), url, r.header("ETag"), r.header("Last-Modified"),
+                        mime, now, maxAge(cacheControl), mustRevalidate(cacheControl), body.length);
+                try {
+                    store(fresh, body);
+                } catch (IOException e) {
+                    // Ответ уже получен — отдаём его и без кэша
+                    Log.w(TAG, "Cannot cache " + url + ": " + e.getMessage());
+                }
+            }
+            return new Response(200, mime, corsHeaders(), new ByteArrayInputStream(body), "network");
+        } catch (IOException e) {
+            if (cached != null) {
+                Response r = serve(cached, "offline");
+                if (r != null) return r;
+            }
+            return new Response(504, "text/plain", corsHeaders(),
+                    new ByteArrayInputStream(new byte[0]), "offline");
+        }
+    }
+
+    @Nullable
+    private Response serve(Entry entry, String source) {
+        File body = new File(dir, entry.key + ".body");
+        try {
+            InputStream in = new FileInputStream(body);
+            // Время файла — время последнего чтения, по нему восстанавливается порядок LRU
+            body.setLastModified(clock.getAsLong());
+            Map<String, String> headers = corsHeaders();
+            headers.put("X-Library-Cache", source);
+            return new Response(200, entry.mimeType, headers, in, source);
+        } catch (FileNotFoundException e) {
+            remove(entry);
+            return null;
+        }
+    }
+
+    private void store(Entry entry, byte[] body) throws IOException {
+        // У каждой записи свой временный файл: один url могут качать prefetch,
+        // фоновая проверка и WebView одновременно
+        AtomicFileWriter.replace(new File(dir, entry.key + ".body"), body);
+        new File(dir, entry.key + ".body").setLastModified(clock.getAsLong());
+        writeMeta(entry);
+        synchronized (this) {
+            Entry old = entries.put(entry.url, entry);
+            if (old != null) totalBytes -= old.size;
+            totalBytes += entry.size;
+            trim();
+        }
+    }
+
+    /** Вытесняет давно не читанные записи, пока объём больше лимита. */
+    private void trim() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Entry e = it.next();
+            it.remove();
+            totalBytes -= e.size;
+            new File(dir, e.key + ".body").delete();
+            new File(dir, e.key + ".meta").delete();
+        }
+    }
+
+    private synchronized void remove(Entry entry) {
+        if (entries.remove(entry.url) != null) totalBytes -= entry.size;
+        new File(dir, entry.key + ".meta").delete();
+    }
+
+    private void writeMeta(Entry e) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("url", e.url);
+        if (e.etag != null) p.setProperty("etag", e.etag);
+        if (e.lastModified != null) p.setProperty("lastModified", e.lastModified);
+        p.setProperty("mime", e.mimeType);
+        p.setProperty("storedAt", Long.toString(e.storedAt));
+        p.setProperty("maxAge", Long.toString(e.maxAgeMs));
+        p.setProperty("mustRevalidate", Boolean.toString(e.mustRevalidate));
+        p.setProperty("size", Long.toString(e.size));
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        p.store(buf, null);
+        AtomicFileWriter.replace(new File(dir, e.key + ".meta"), buf.toByteArray());
+    }
+
+    /**
+     * Индекс читается с диска при первом обращении — уже на потоке
+     * shouldInterceptRequest, а не при создании активности.
+     */
+    private synchronized void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        dir.mkdirs();
+        load();
+    }
+
+    /** Восстанавливает индекс с диска; порядок LRU — по времени последнего чтения. */
+    private void load() {
+        File[] metas = dir.listFiles((d, name) -> name.endsWith(".meta"));
+        if (metas == null) return;
+        ArrayList<Entry> loaded = new ArrayList<>();
+        final Map<String, Long> touched = new HashMap<>();
+        for (File meta : metas) {
+            String key = meta.getName().substring(0, meta.getName().length() - ".meta".length());
+            File body = new File(dir, key + ".body");
+            Properties p = new Properties();
+            try (InputStream in = new FileInputStream(meta)) {
+                p.load(in);
+                Entry e = new Entry(key, p.getProperty("url"), p.getProperty("etag"), p.getProperty("lastModified"),
+                        p.getProperty("mime", "application/octet-stream"),
+                        Long.parseLong(p.getProperty("storedAt", "0")),
+                        Long.parseLong(p.getProperty("maxAge", "0")),
+                        Boolean.parseBoolean(p.getProperty("mustRevalidate")),
+                        body.length());
+                if (e.url == null || !body.isFile()) throw new IOException("Incomplete entry");
+                loaded.add(e);
+                touched.put(key, body.lastModified());
+            } catch (IOException | RuntimeException e) {
+                meta.delete();
+                body.delete();
+            }
+        }
+        loaded.sort((a, b) -> Long.compare(touched.get(a.key), touched.get(b.key)));
+        synchronized (this) {
+            for (Entry e : loaded) {
+                entries.put(e.url, e);
+                totalBytes += e.size;
+            }
+            trim();
+        }
+        // Недописанные тела от прерванных загрузок
+        File[] tmps = dir.listFiles((d, name) -> name.endsWith(".tmp"));
+        if (tmps != null) for (File t : tmps) t.delete();
+    }
+
+    private static byte[] readBody(HttpSource.Response r, int limit) throws IOException {
+        try (InputStream in = r.body()) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(
+                    (int) Math.max(0, Math.min(r.contentLength(), limit)));
+            byte[] tmp = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(tmp)) != -1) {
+                buf.write(tmp, 0, n);
+                if (buf.size() > limit) throw new IOException("Response too large");
+            }
+            return buf.toByteArray();
+        } catch (IOException e) {
+            // У 4xx/5xx тела может не быть вовсе
+            if (r.code() != 200) return new byte[0];
+            throw e;
+        }
+    }
+
+    private long maxAge(@Nullable String cacheControl) {
+        if (cacheControl == null) return DEFAULT_MAX_AGE_MS;
+        for (String part : cacheControl.split(",")) {
+            String p = part.trim().toLowerCase(Locale.ROOT);
+            if (p.startsWith("max-age=")) {
+                try {
+                    return Long.parseLong(p.substring("max-age=".length()).trim()) * 1000L;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return DEFAULT_MAX_AGE_MS;
+    }
+
+    private static boolean mustRevalidate(@Nullable String cacheControl) {
+        return hasDirective(cacheControl, "no-cache");
+    }
+
+    private static boolean hasDirective(@Nullable String cacheControl, String directive) {
+        if (cacheControl == null) return false;
+        for (String part : cacheControl.split(",")) {
+            if (part.trim().equalsIgnoreCase(directive)) return true;
+        }
+        return false;
+    }
+
+    private static String mimeOf(@Nullable String contentType, String url) {
+        // raw.githubusercontent.com отдаёт всё как text/plain — определяем по расширению
+        String byExt = LocalAssetServer.mimeType(url);
+        if (!byExt.equals("application/octet-stream")) return byExt;
+        if (contentType != null) {
+            int semi = contentType.indexOf(';');
+            return (semi >= 0 ? contentType.substring(0, semi) : contentType).trim();
+        }
+        return byExt;
+    }
+
+    private static Map<String, String> corsHeaders() {
+        Map<String, String> h = new HashMap<>();
+        h.put("Access-Control-Allow-Origin", "*");
+        return h;
+    }
+
+    private static String keyOf(String url) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(40);
+            for (byte b : d) sb.append(String.format(Locale.ROOT, "%02x", b & 0xFF));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(url.hashCode()) + Integer.toHexString(Arrays.hashCode(url.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    private static String firstNonNull(@Nullable String a, @Nullable String b) {
+        return a != null ? a : b;
+    }
+
+    private static void closeQuietly(@Nullable InputStream in) {
+        try {
+            if (in != null) in.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.eenot.eeditor;
+
+import android.webkit.JavascriptInterface;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Заранее скачивает JSON и картинки сценариев, карточки которых видны в
+ * библиотеке (JS-объект AndroidLibrary). Файлы ложатся в {@link LibraryCache},
+ * поэтому detalis.html потом читает их через перехват без сети.
+ *
+ * Страница присылает список видимых карточек сверху вниз; каждый новый список
+ * заменяет очередь: порядок задаёт приоритет, ушедшие с экрана карточки
+ * из очереди выбрасываются. Уже начатые загрузки доводятся до конца — они
+ * небольшие, а результат всё равно пригодится. Файлы со свежей копией в кэше
+ * в очередь не ставятся; вытесненные или устаревшие скачиваются снова.
+ */
+class LibraryPrefetcher {
+    private static final int MAX_CONCURRENT = 3;
+    private static final int MAX_CARDS = 64;
+    private static final String[] EXTENSIONS = {".json", ".png"};
+
+    private final LibraryCache cache;
+    private final int maxConcurrent;
+    private final ExecutorService pool;
+
+    // Всё ниже — под synchronized (this)
+    private final List<String> queue = new ArrayList<>();
+    private final Set<String> running = new HashSet<>();
+    private int workers;
+    private int fetched;
+    private int failed;
+
+    LibraryPrefetcher(LibraryCache cache) {
+        this(cache, MAX_CONCURRENT);
+    }
+
+    LibraryPrefetcher(LibraryCache cache, int maxConcurrent) {
+        this.cache = cache;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.pool = Executors.newFixedThreadPool(this.maxConcurrent, r -> {
+            Thread t = new Thread(r, "library-prefetch");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /**
+     * @param pathsJson массив путей карточек без расширения относительно
+     *                  корня библиотеки, в порядке важности:
+     *                  ["lib/eenot/world/eenot_world_v1_modern-world", ...]
+     * @return {ok, queued}
+     */
+    @JavascriptInterface
+    public String prefetch(String pathsJson) {
+        List<String> paths = new ArrayList<>();
+        try {
+            JSONArray arr = new JSONArray(pathsJson);
+            for (int i = 0; i < arr.length(); i++) paths.add(arr.getString(i));
+        } catch (JSONException e) {
+            return JsonCodec.error("Bad paths: " + e.getMessage());
+        }
+        int queued = update(paths);
+        return JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("queued").value(queued)
+                .endObject().toString();
+    }
+
+    /** Убирает из очереди всё, что ещё не начато. */
+    @JavascriptInterface
+    public String cancelPrefetch() {
+        synchronized (this) {
+            queue.clear();
+        }
+        return JsonCodec.ok();
+    }
+
+    /** @return {ok, queued, running, fetched, failed} */
+    @JavascriptInterface
+    public synchronized String getPrefetchState() {
+        return JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("queued").value(queue.size())
+                .name("running").value(running.size())
+                .name("fetched").value(fetched)
+                .name("failed").value(failed)
+                .endObject().toString();
+    }
+
+    /**
+     * Заменяет очередь новым списком карточек.
+     *
+     * @return сколько файлов стоит в очереди
+     */
+    int update(List<String> paths) {
+        LinkedHashSet<String> wanted = new LinkedHashSet<>();
+        for (String path : paths) {
+            if (wanted.size() >= MAX_CARDS * EXTENSIONS.length) break;
+            if (!isValid(path)) continue;
+            for (String ext : EXTENSIONS) wanted.add(LibraryCache.BASE_URL + path + ext);
+        }
+        // Кэш проверяется вне блокировки: индекс может читаться с диска
+        List<String> missing = new ArrayList<>(wanted.size());
+        for (String url : wanted) {
+            if (!cache.isFresh(url)) missing.add(url);
+        }
+        synchronized (this) {
+            queue.clear();
+            for (String url : missing) {
+                if (!running.contains(url)) queue.add(url);
+            }
+            while (workers < maxConcurrent && workers < queue.size()) {
+                workers++;
+                pool.execute(this::drain);
+            }
+            return queue.size();
+        }
+    }
+
+    void shutdown() {
+        synchronized (this) {
+            queue.clear();
+        }
+        pool.shutdownNow();
+    }
+
+    private void drain() {
+        while (true) {
+            String url;
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    workers--;
+                    return;
+                }
+                url = queue.remove(0);
+                running.add(url);
+            }
+            boolean ok = false;
+            try {
+                ok = cache.warm(url);
+            } catch (RuntimeException ignored) {
+            }
+            synchronized (this) {
+                running.remove(url);
+                if (ok) {
+                    fetched++;
+                } else {
+                    failed++;
+                }
+            }
+        }
+    }
+
+    private static boolean isValid(String path) {
+        return path != null && path.startsWith("lib/") && !path.contains("..")
+                && !path.contains("?") && !path.contains("#") && !path.contains("//");
+    }
+}
@@ -0,0 +1,324 @@
+package com.eenot.eeditor;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.util.Log;
+import android.util.LruCache;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Отдаёт assets/ со стабильного https-источника вместо file:///android_asset/,
+ * чтобы у страницы был обычный origin для fetch и localStorage.
+ *
+ * URL имеет вид {@code https://appassets.androidplatform.net/assets/<build>/<путь>},
+ * build меняется с каждой установкой APK. Ответы shouldInterceptRequest
+ * WebView в свой HTTP-кэш не кладёт, каждый запрос снова приходит сюда —
+ * поэтому для текстовых файлов при сборке кладутся .gz варианты
+ * (задача gzipAssets), а в памяти держится LRU из сжатых байт.
+ */
+class LocalAssetServer {
+    private static final String TAG = "LocalAssetServer";
+
+    static final String ORIGIN = "https://appassets.androidplatform.net";
+    private static final String ASSETS_PREFIX = "/assets/";
+    static final String FILE_ASSET_PREFIX = "file:///android_asset/";
+
+    private static final int CACHE_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_CACHED_ENTRY = 1024 * 1024;
+
+    private static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String CACHE_REVALIDATE = "no-cache";
+
+    private static final Map<String, String> MIME_TYPES = new HashMap<>();
+
+    // src="..." и href="..." в html, для прогрева кэша
+    private static final Pattern LOCAL_REF = Pattern.compile("(?:src|href)\\s*=\\s*[\"']([^\"'#?][^\"']*)[\"']");
+
+    static {
+        MIME_TYPES.put("html", "text/html");
+        MIME_TYPES.put("htm", "text/html");
+        MIME_TYPES.put("js", "text/javascript");
+        MIME_TYPES.put("mjs", "text/javascript");
+        MIME_TYPES.put("css", "text/css");
+        MIME_TYPES.put("json", "application/json");
+        MIME_TYPES.put("svg", "image/svg+xml");
+        MIME_TYPES.put("png", "image/png");
+        MIME_TYPES.put("jpg", "image/jpeg");
+        MIME_TYPES.put("jpeg", "image/jpeg");
+        MIME_TYPES.put("gif", "image/gif");
+        MIME_TYPES.put("webp", "image/webp");
+        MIME_TYPES.put("ico", "image/x-icon");
+        MIME_TYPES.put("ttf", "font/ttf");
+        MIME_TYPES.put("otf", "font/otf");
+        MIME_TYPES.put("woff", "font/woff");
+        MIME_TYPES.put("woff2", "font/woff2");
+        MIME_TYPES.put("csv", "text/csv");
+        MIME_TYPES.put("md", "text/markdown");
+        MIME_TYPES.put("txt", "text/plain");
+        MIME_TYPES.put("mp4", "video/mp4");
+    }
+
+    private final AssetManager assets;
+    private final String build;
+
+    // Ключ — путь ассета; значение — сжатые (если есть .gz) или исходные байты
+    private final LruCache<String, CachedAsset> cache = new LruCache<String, CachedAsset>(CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, CachedAsset value) {
+            return value.bytes.length;
+        }
+    };
+
+    private static final class CachedAsset {
+        final byte[] bytes;
+        final boolean gzipped;
+
+        CachedAsset(byte[] bytes, boolean gzipped) {
+            this.bytes = bytes;
+            this.gzipped = gzipped;
+        }
+    }
+
+    LocalAssetServer(Context context) {
+        this.assets = context.getAssets();
+        long stamp = 0;
+        try {
+            stamp = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (Exception e) {
+            Log.w(TAG, "Cannot read package info", e);
+        }
+        this.build = Long.toString(stamp, 36);
+    }
+
+    /** Адрес ассета на стабильном источнике, например url("index.html"). */
+    String url(String assetPath) {
+        return ORIGIN + ASSETS_PREFIX + build + "/" + assetPath;
+    }
+
+    /** Номер сборки в адресах ассетов; меняется с каждой установкой APK. */
+    String build() {
+        return build;
+    }
+
+    /** Переводит file:///android_asset/... в адрес на стабильном источнике, остальное не трогает. */
+    String rewrite(String url) {
+        if (url != null && url.startsWith(FILE_ASSET_PREFIX)) {
+            return url(url.substring(FILE_ASSET_PREFIX.length()));
+        }
+        return url;
+    }
+
+    /**
+     * @return ответ или null, если url не относится к ассетам
+     */
+    @Nullable
+    WebResourceResponse handle(String url) {
+        if (url == null || !url.startsWith(ORIGIN + ASSETS_PREFIX)) return null;
+
+        String rest = url.substring(ORIGIN.length() + ASSETS_PREFIX.length());
+        int cut = indexOfAny(rest, '?', '#');
+        if (cut >= 0) rest = rest.substring(0, cut);
+        // Первый сегмент — номер сборки, его значение для чтения не важно
+        int slash = rest.indexOf('/');
+        if (slash < 0) return notFound();
+        // Сегменты ".." не должны выводить за корень ассетов; имена вида a..b.js допустимы
+        String path = normalize(decodePath(rest.substring(slash + 1)));
+        if (path == null) return notFound();
+
+        String etag = "\"" + build + "\"";
+        String mime = mimeType(path);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("ETag", etag);
+        headers.put("Cache-Control", mime.equals("text/html") ? CACHE_REVALIDATE : CACHE_IMMUTABLE);
+        headers.put("Access-Control-Allow-Origin", "*");
+
+        // Всегда 200: WebResourceResponse не принимает 3xx (IllegalArgumentException),
+        // а ETag и Cache-Control WebView для перехваченных ответов не использует
+        try {
+            InputStream body = open(path);
+            return new WebResourceResponse(mime, charset(mime), 200, "OK", headers, body);
+        } catch (FileNotFoundException e) {
+            return notFound();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot serve " + path, e);
+            return new WebResourceResponse("text/plain", "UTF-8", 500, "Internal Error", null,
+                    new ByteArrayInputStream(new byte[0]));
+        }
+    }
+
+    /**
+     * Заранее читает в кэш страницу и подключённые ею локальные скрипты и стили.
+     * Вызывается в фоне, пока создаётся WebView.
+     */
+    void prefetch(String pageUrl) {
+        String prefix = ORIGIN + ASSETS_PREFIX + build + "/";
+        if (pageUrl == null || !pageUrl.startsWith(prefix)) return;
+        String page = pageUrl.substring(prefix.length());
+        int cut = indexOfAny(page, '?', '#');
+        if (cut >= 0) page = page.substring(0, cut);
+        try {
+            CachedAsset html = cached(page);
+            if (html == null) return;
+            String text = readAll(html.gzipped
+                    ? new GZIPInputStream(new ByteArrayInputStream(html.bytes))
+                    : new ByteArrayInputStream(html.bytes));
+            int slash = page.lastIndexOf('/');
+            String dir = slash >= 0 ? page.substring(0, slash + 1) : "";
+            Matcher m = LOCAL_REF.matcher(text);
+            while (m.find()) {
+                String ref = m.group(1);
+                if (ref.contains("://") || ref.startsWith("/") || ref.startsWith("data:")) continue;
+                int q = indexOfAny(ref, '?', '#');
+                if (q >= 0) ref = ref.substring(0, q);
+                String path = normalize(dir + decodePath(ref));
+                if (path == null) continue;
+                try {
+                    cached(path);
+                } catch (FileNotFoundException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Prefetch failed for " + page + ": " + e.getMessage());
+        }
+    }
+
+    /** Содержимое ассета (распакованное, если лежит .gz). */
+    InputStream openAsset(String path) throws IOException {
+        return open(path);
+    }
+
+    @Nullable
+    private CachedAsset cached(String path) throws IOException {
+        CachedAsset cached = cache.get(path);
+        if (cached == null) {
+            cached = load(path);
+            if (cached != null) cache.put(path, cached);
+        }
+        return cached;
+    }
+
+    private InputStream open(String path) throws IOException {
+        CachedAsset cached = cached(path);
+        if (cached != null) {
+            InputStream in = new ByteArrayInputStream(cached.bytes);
+            return cached.gzipped ? new GZIPInputStream(in, 16 * 1024) : in;
+        }
+        // Крупные файлы не кэшируем, отдаём потоком
+        try {
+            return new GZIPInputStream(assets.open(path + ".gz", AssetManager.ACCESS_STREAMING), 16 * 1024);
+        } catch (FileNotFoundException e) {
+            return assets.open(path, AssetManager.ACCESS_STREAMING);
+        }
+    }
+
+    @Nullable
+    private CachedAsset load(String path) throws IOException {
+        boolean gzipped = true;
+        InputStream in;
+        try {
+            in = assets.open(path + ".gz");
+        } catch (FileNotFoundException e) {
+            gzipped = false;
+            in = assets.open(path);
+        }
+        try (InputStream is = in) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            byte[] tmp = new byte[16 * 1024];
+            int r;
+            while ((r = is.read(tmp)) != -1) {
+                buf.write(tmp, 0, r);
+                if (buf.size() > MAX_CACHED_ENTRY) return null;
+            }
+            return new CachedAsset(buf.toByteArray(), gzipped);
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        try (InputStream is = in) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            byte[] tmp = new byte[16 * 1024];
+            int r;
+            while ((r = is.read(tmp)) != -1) buf.write(tmp, 0, r);
+            return buf.toString("UTF-8");
+        }
+    }
+
+    /** Убирает "." и ".." из пути; null, если путь выходит за корень ассетов. */
+    @Nullable
+    private static String normalize(String path) {
+        java.util.ArrayDeque<String> parts = new java.util.ArrayDeque<>();
+        for (String part : path.split("/")) {
+            if (part.isEmpty() || part.equals(".")) continue;
+            if (part.equals("..")) {
+                if (parts.isEmpty()) return null;
+                parts.removeLast();
+            } else {
+                parts.addLast(part);
+            }
+        }
+        if (parts.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts) {
+            if (sb.length() > 0) sb.append('/');
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+    private static WebResourceResponse notFound() {
+        return new WebResourceResponse("text/plain", "UTF-8", 404, "Not Found", null,
+                new ByteArrayInputStream(new byte[0]));
+    }
+
+    static String mimeType(String path) {
+        int dot = path.lastIndexOf('.');
+        String ext = dot >= 0 ? path.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        String mime = MIME_TYPES.get(ext);
+        return mime != null ? mime : "application/octet-stream";
+    }
+
+    @Nullable
+    static String charset(String mime) {
+        return mime.startsWith("text/") || mime.equals("application/json") || mime.equals("image/svg+xml")
+                ? "UTF-8" : null;
+    }
+
+    @Nullable
+    static String header(@Nullable Map<String, String> headers, String name) {
+        if (headers == null) return null;
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            if (name.equalsIgnoreCase(e.getKey())) return e.getValue();
+        }
+        return null;
+    }
+
+    private static int indexOfAny(String s, char a, char b) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == a || c == b) return i;
+        }
+        return -1;
+    }
+
+    private static String decodePath(String path) {
+        try {
+            return java.net.URLDecoder.decode(path.replace("+", "%2B"), "UTF-8");
+        } catch (Exception e) {
+            return path;
+        }
+    }
+}
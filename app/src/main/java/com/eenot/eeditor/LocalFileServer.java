@@ -0,0 +1,177 @@
+package com.eenot.eeditor;
+
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Отдаёт файлы из baseDir как сырые байты:
+ * {@code fetch("https://appassets.androidplatform.net/files/scenarios/a.png")} → ArrayBuffer.
+ * Без base64 и JSON-обёртки, с поддержкой Range (один диапазон).
+ * Путь проверяется тем же resolveSafe, что и в мосте.
+ */
+class LocalFileServer {
+    static final String PREFIX = LocalAssetServer.ORIGIN + "/files/";
+
+    private final FileInterfaceNew files;
+
+    LocalFileServer(FileInterfaceNew files) {
+        this.files = files;
+    }
+
+    static String url(String relativePath) {
+        return PREFIX + relativePath;
+    }
+
+    @Nullable
+    WebResourceResponse handle(String url, @Nullable String method, @Nullable Map<String, String> requestHeaders) {
+        if (url == null || !url.startsWith(PREFIX)) return null;
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Access-Control-Allow-Origin", "*");
+        headers.put("Access-Control-Allow-Headers", "Range");
+        headers.put("Access-Control-Expose-Headers", "Content-Range, Content-Length, ETag");
+        headers.put("Accept-Ranges", "bytes");
+
+        if ("OPTIONS".equalsIgnoreCase(method)) {
+            headers.put("Access-Control-Allow-Methods", "GET, HEAD, OPTIONS");
+            return empty(204, "No Content", headers);
+        }
+
+        String path = url.substring(PREFIX.length());
+        int cut = path.indexOf('?');
+        if (cut >= 0) path = path.substring(0, cut);
+        try {
+            path = java.net.URLDecoder.decode(path.replace("+", "%2B"), "UTF-8");
+        } catch (Exception ignored) {
+        }
+
+        File f = files.resolveSafe(path);
+        if (f == null) return empty(403, "Forbidden", headers);
+        if (!f.isFile()) return empty(404, "Not Found", headers);
+
+        long size = f.length();
+        String etag = "\"" + Long.toString(f.lastModified(), 36) + "-" + Long.toString(size, 36) + "\"";
+        headers.put("ETag", etag);
+        // Перехваченные ответы WebView не кэширует, ETag нужен только скриптам —
+        // по нему видно, что файл изменился; 304 WebResourceResponse всё равно не примет
+        headers.put("Cache-Control", "no-cache");
+
+        long start = 0;
+        long end = size - 1;
+        int status = 200;
+        String reason = "OK";
+        String range = LocalAssetServer.header(requestHeaders, "Range");
+        if (range != null && range.startsWith("bytes=") && range.indexOf(',') < 0) {
+            long[] r = parseRange(range.substring(6).trim(), size);
+            if (r == null) {
+                headers.put("Content-Range", "bytes */" + size);
+                return empty(416, "Range Not Satisfiable", headers);
+            }
+            start = r[0];
+            end = r[1];
+            status = 206;
+            reason = "Partial Content";
+            headers.put("Content-Range", "bytes " + start + "-" + end + "/" + size);
+        }
+        long length = Math.max(0, end - start + 1);
+        headers.put("Content-Length", Long.toString(length));
+
+        String mime = LocalAssetServer.mimeType(f.getName());
+        if ("HEAD".equalsIgnoreCase(method)) {
+            return new WebResourceResponse(mime, null, status, reason, headers, new ByteArrayInputStream(new byte[0]));
+        }
+        try {
+            return new WebResourceResponse(mime, null, status, reason, headers,
+                    new ChannelRangeInputStream(f, start, length));
+        } catch (IOException e) {
+            return empty(500, "Internal Error", headers);
+        }
+    }
+
+    /**
+     * "a-b", "a-" или "-n" → {start, end} включительно, null если диапазон вне файла.
+     */
+    @Nullable
+    static long[] parseRange(String spec, long size) {
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String a = spec.substring(0, dash).trim();
+            String b = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (a.isEmpty()) {
+                long suffix = Long.parseLong(b);
+                if (suffix <= 0) return null;
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(a);
+                end = b.isEmpty() ? size - 1 : Math.min(Long.parseLong(b), size - 1);
+            }
+            if (start < 0 || start >= size || end < start) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static WebResourceResponse empty(int status, String reason, Map<String, String> headers) {
+        return new WebResourceResponse("text/plain", "UTF-8", status, reason, headers,
+                new ByteArrayInputStream(new byte[0]));
+    }
+
+    /**
+     * Читает [start, start + length) напрямую из FileChannel в буфер вызывающего,
+     * без промежуточных копий.
+     */
+    static final class ChannelRangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        ChannelRangeInputStream(File f, long start, long length) throws IOException {
+            this.channel = new RandomAccessFile(f, "r").getChannel();
+            this.position = start;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == 1 ? one[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            if (len == 0) return 0;
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (n <= 0) return -1;
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
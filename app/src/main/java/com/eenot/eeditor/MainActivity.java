@@ -20,31 +20,58 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
-import org.json.JSONObject;
-
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.nio.charset.StandardCharsets;
 
 public class MainActivity extends AppCompatActivity {
     private WebView webView;
     private FileInterfaceNew fileInterface;
+    private LocalAssetServer assetServer;
+    private LocalFileServer fileServer;
+    private BackupStore backupStore;
+    private HistoryStore historyStore;
+    private ScenarioIndex scenarioIndex;
+    private ScenarioSearch scenarioSearch;
+    private StartupPipeline startup;
+    private StorageMigration storageMigration;
+    private LibraryCache libraryCache;
+    private LibraryPrefetcher libraryPrefetcher;
+    private ThumbnailServer thumbnailServer;
+    private MapServer mapServer;
     private static final int PERMISSION_REQUEST_CODE = 123;
 
     @SuppressLint("SetJavaScriptEnabled")
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        int trace = StartupTrace.begin("onCreate");
         super.onCreate(savedInstanceState);
 
         if (getSupportActionBar() != null) {
             getSupportActionBar().hide();
         }
 
+        // Настройки и ассеты стартовой страницы читаются в фоне, пока создаётся WebView
+        assetServer = new LocalAssetServer(this);
+        storageMigration = new StorageMigration(this, assetServer);
+        startup = new StartupPipeline(this, assetServer, storageMigration);
+        startup.prewarm();
+
         setContentView(R.layout.activity_main);
 
         webView = findViewById(R.id.webView);
 
         // Создаём интерфейс до настройки WebView чтобы можно было использовать его в shouldInterceptRequest
         fileInterface = new FileInterfaceNew(this, webView);
+        fileServer = new LocalFileServer(fileInterface);
+        backupStore = new BackupStore(this);
+        historyStore = new HistoryStore(this);
+        scenarioIndex = new ScenarioIndex(this, webView, fileInterface);
+        scenarioSearch = new ScenarioSearch(fileInterface);
+        libraryCache = new LibraryCache(new File(getCacheDir(), "library-http"), new HttpSource.UrlConnection());
+        libraryPrefetcher = new LibraryPrefetcher(libraryCache);
+        mapServer = new MapServer(fileInterface);
+        thumbnailServer = new ThumbnailServer(assetServer, libraryCache, new File(getCacheDir(), "thumbs"));
         setupWebView();
 
         checkAndRequestPermissions();
@@ -71,6 +98,7 @@ public class MainActivity extends AppCompatActivity {
         } else {
             loadLocalHtml();
         }
+        StartupTrace.end(trace);
     }
 
     @Override
@@ -88,7 +116,45 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (backupStore != null) {
+            backupStore.flushNow();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (startup != null) {
+            startup.stop();
+        }
+        if (fileInterface != null) {
+            fileInterface.release();
+        }
+        if (backupStore != null) {
+            backupStore.shutdown();
+        }
+        if (historyStore != null) {
+            historyStore.release();
+        }
+        if (scenarioIndex != null) {
+            scenarioIndex.shutdown();
+        }
+        if (libraryPrefetcher != null) {
+            libraryPrefetcher.shutdown();
+        }
+        if (thumbnailServer != null) {
+            thumbnailServer.shutdown();
+        }
+        if (libraryCache != null) {
+            libraryCache.shutdown();
+        }
+        super.onDestroy();
+    }
+
     private void setupWebView() {
+        int trace = StartupTrace.begin("setupWebView");
         WebSettings webSettings = webView.getSettings();
         webSettings.setJavaScriptEnabled(true);
         webSettings.setDomStorageEnabled(true);
@@ -109,6 +175,13 @@ public class MainActivity extends AppCompatActivity {
         });
 
         webView.addJavascriptInterface(fileInterface, "Android");
+        webView.addJavascriptInterface(backupStore, "AndroidBackup");
+        webView.addJavascriptInterface(historyStore, "AndroidHistory");
+        webView.addJavascriptInterface(scenarioIndex, "AndroidScenarios");
+        webView.addJavascriptInterface(scenarioSearch, "AndroidSearch");
+        webView.addJavascriptInterface(libraryPrefetcher, "AndroidLibrary");
+        webView.addJavascriptInterface(mapServer, "AndroidMap");
+        webView.addJavascriptInterface(storageMigration, "AndroidMigration");
 
         webView.setDownloadListener(new DownloadListener() {
             @Override
@@ -125,42 +198,78 @@ public class MainActivity extends AppCompatActivity {
             public void onPageStarted(WebView view, String url, android.graphics.Bitmap favicon) {
                 super.onPageStarted(view, url, favicon);
                 Log.d("WebViewLoad", "onPageStarted url=" + url);
+                startup.onPageStarted(url);
+            }
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                super.onPageFinished(view, url);
+                startup.onPageFinished(url);
+            }
+
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, android.webkit.WebResourceRequest request) {
+                // Старые ссылки на file:///android_asset/ (например, из settings.json) ведём на стабильный источник
+                String url = request.getUrl() != null ? request.getUrl().toString() : null;
+                if (url != null && url.startsWith(LocalAssetServer.FILE_ASSET_PREFIX)) {
+                    view.loadUrl(assetServer.rewrite(url));
+                    return true;
+                }
+                return false;
             }
 
             @Override
             public WebResourceResponse shouldInterceptRequest(WebView view, android.webkit.WebResourceRequest request) {
                 String url = request != null && request.getUrl() != null ? request.getUrl().toString() : null;
-                return handleIntercept(url);
+                return handleIntercept(url,
+                        request != null ? request.getMethod() : null,
+                        request != null ? request.getRequestHeaders() : null);
             }
 
             @Override
             public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
-                return handleIntercept(url);
+                return handleIntercept(url, "GET", null);
             }
 
-            private WebResourceResponse handleIntercept(String url) {
-                if (url != null && url.startsWith("filedata://")) {
+            private WebResourceResponse handleIntercept(String url, String method, java.util.Map<String, String> headers) {
+                if (url == null) return null;
+                if (url.startsWith(LocalAssetServer.ORIGIN + "/filedata/")) {
+                    // Тот же filedata://current, но с https-страниц, где fetch не знает своих схем
+                    url = "filedata://" + url.substring((LocalAssetServer.ORIGIN + "/filedata/").length());
+                }
+                WebResourceResponse asset = assetServer.handle(url);
+                if (asset != null) return asset;
+                WebResourceResponse thumb = thumbnailServer.handle(url);
+                if (thumb != null) return thumb;
+                WebResourceResponse map = mapServer.handle(url);
+                if (map != null) return map;
+                WebResourceResponse file = fileServer.handle(url, method, headers);
+                if (file != null) return file;
+                if (LibraryCache.handles(url)) {
+                    // Библиотека сценариев: с диска, с фоновой проверкой и без сети — из кэша
+                    LibraryCache.Response lib = libraryCache.get(url, method, headers);
+                    if (lib != null) {
+                        return new WebResourceResponse(lib.mimeType, LocalAssetServer.charset(lib.mimeType),
+                                lib.status, reasonPhrase(lib.status), lib.headers, lib.body);
+                    }
+                }
+                WebResourceResponse backup = backupStore.handle(url);
+                if (backup != null) return backup;
+                if (url.startsWith("filedata://")) {
                     try {
-                        String fileContent = fileInterface.getCurrentFileContent();
-                        String fileName = fileInterface.getCurrentFileName();
-
-                        String jsonResponse = String.format(
-                                "{\"fileName\":\"%s\",\"content\":%s}",
-                                fileName.replace("\"", "\\\""),
-                                JSONObjectEscape(fileContent)
-                        );
-
+                        // Конверт JSON пишется на лету, содержимое читается прямо из исходного URI
                         return new WebResourceResponse(
                                 "application/json",
                                 "UTF-8",
-                                new ByteArrayInputStream(jsonResponse.getBytes(StandardCharsets.UTF_8))
+                                new JsonEnvelopeInputStream(
+                                        fileInterface.getCurrentFileName(),
+                                        fileInterface.openCurrentFile())
                         );
                     } catch (Exception e) {
                         e.printStackTrace();
-                        String errorJson = String.format(
-                                "{\"error\":\"%s\"}",
-                                (e.getMessage() == null ? "null" : e.getMessage().replace("\"", "\\\""))
-                        );
+                        String errorJson = JsonCodec.writer().beginObject()
+                                .name("error").value(e.getMessage() == null ? "null" : e.getMessage())
+                                .endObject().toString();
                         return new WebResourceResponse(
                                 "application/json",
                                 "UTF-8",
@@ -170,33 +279,19 @@ public class MainActivity extends AppCompatActivity {
                 }
                 return null;
             }
-
-            private String JSONObjectEscape(String s) {
-                if (s == null) return "null";
-                StringBuilder sb = new StringBuilder();
-                sb.append("\"");
-                for (int i = 0; i < s.length(); i++) {
-                    char c = s.charAt(i);
-                    switch (c) {
-                        case '\\': sb.append("\\\\"); break;
-                        case '"': sb.append("\\\""); break;
-                        case '\b': sb.append("\\b"); break;
-                        case '\f': sb.append("\\f"); break;
-                        case '\n': sb.append("\\n"); break;
-                        case '\r': sb.append("\\r"); break;
-                        case '\t': sb.append("\\t"); break;
-                        default:
-                            if (c < 0x20 || c > 0x7E) {
-                                sb.append(String.format("\\u%04x", (int)c));
-                            } else {
-                                sb.append(c);
-                            }
-                    }
-                }
-                sb.append("\"");
-                return sb.toString();
-            }
         });
+        StartupTrace.end(trace);
+    }
+
+    // WebResourceResponse не принимает пустую reason phrase
+    private static String reasonPhrase(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 404: return "Not Found";
+            case 502: return "Bad Gateway";
+            case 504: return "Gateway Timeout";
+            default: return "Status " + status;
+        }
     }
 
     private void checkAndRequestPermissions() {
@@ -256,100 +351,9 @@ public class MainActivity extends AppCompatActivity {
         fileInterface.handleActivityResult(requestCode, resultCode, data);
     }
 
-    /**
-     * loadLocalHtml:
-     * - если нет интернета -> assets/index.html
-     * - если интернет есть:
-     *     - пытаемся прочитать settings.json из getExternalFilesDir(null)
-     *     - readFile() может вернуть "wrapper" {"ok":true,"content":"..."} или сам контент файла.
-     *     - если в реальном содержимом файла есть поле "link" -> открываем его
-     *     - иначе -> assets/page/hello.html
-     */
+    /** Стартовая страница выбирается без ожидания сети, см. {@link StartupPipeline}. */
     private void loadLocalHtml() {
-        new Thread(() -> {
-            boolean online = isOnlineAvailable();
-            Log.d("MainActivity", "loadLocalHtml - online = " + online);
-
-            String urlToLoad;
-
-            if (!online) {
-                urlToLoad = "file:///android_asset/index.html";
-                Log.d("MainActivity", "No internet -> loading asset index.html");
-            } else {
-                String rawRead = null;
-                String fileBody = null;
-                String linkFromSettings = null;
-
-                try {
-                    Log.d("MainActivity", "Trying to read settings.json from app files (via fileInterface.readFile)");
-                    rawRead = fileInterface.readFile("settings.json", "text");
-                    Log.d("MainActivity", "raw readFile response: " + (rawRead == null ? "null" : rawRead.length() + " bytes"));
-                } catch (Exception e) {
-                    Log.e("MainActivity", "Exception while calling readFile", e);
-                }
-
-                // Если rawRead содержит JSON-обёртку {ok:true, content: "..."} — извлечём content
-                if (rawRead != null) {
-                    try {
-                        rawRead = rawRead.trim();
-                        // Detect wrapper with "ok" and "content"
-                        if (rawRead.startsWith("{")) {
-                            JSONObject wrapper = new JSONObject(rawRead);
-                            if (wrapper.optBoolean("ok", false) && wrapper.has("content")) {
-                                fileBody = wrapper.optString("content", null);
-                                Log.d("MainActivity", "readFile returned wrapper with content length: " + (fileBody == null ? "null" : fileBody.length()));
-                            } else {
-                                // Возможно это уже сам settings.json
-                                fileBody = rawRead;
-                                Log.d("MainActivity", "readFile returned raw JSON (not wrapper)");
-                            }
-                        } else {
-                            // Не JSON — используем как есть
-                            fileBody = rawRead;
-                            Log.d("MainActivity", "readFile returned non-JSON raw data");
-                        }
-                    } catch (Exception e) {
-                        Log.e("MainActivity", "Error parsing readFile response wrapper, using rawRead as file body", e);
-                        fileBody = rawRead;
-                    }
-                } else {
-                    Log.d("MainActivity", "rawRead is null (settings.json not found or read error)");
-                }
-
-                // Если у нас есть тело файла — убираем BOM и пробелы, и пробуем распарсить реальный JSON
-                if (fileBody != null) {
-                    String trimmed = fileBody.trim();
-                    if (trimmed.startsWith("\uFEFF")) {
-                        trimmed = trimmed.substring(1).trim();
-                        Log.d("MainActivity", "Detected and removed BOM from settings content");
-                    }
-                    try {
-                        if (trimmed.startsWith("{")) {
-                            JSONObject settingsJson = new JSONObject(trimmed);
-                            linkFromSettings = settingsJson.optString("link", null);
-                            Log.d("MainActivity", "Parsed settings.json content, link=" + linkFromSettings);
-                        } else {
-                            Log.d("MainActivity", "File body does not start with '{' after trim -> not JSON");
-                        }
-                    } catch (Exception e) {
-                        Log.e("MainActivity", "Error parsing settings.json content as JSON", e);
-                    }
-                } else {
-                    Log.d("MainActivity", "No file body available from readFile");
-                }
-
-                if (linkFromSettings != null && !linkFromSettings.isEmpty()) {
-                    urlToLoad = linkFromSettings;
-                    Log.d("MainActivity", "Using link from settings.json: " + urlToLoad);
-                } else {
-                    urlToLoad = "file:///android_asset/page/hello.html";
-                    Log.d("MainActivity", "settings.json missing/invalid or no link -> loading asset hello.html");
-                }
-            }
-
-            final String finalUrlToLoad = urlToLoad;
-            runOnUiThread(() -> webView.loadUrl(finalUrlToLoad));
-        }).start();
+        startup.start(webView);
     }
 
     private void loadLocalHtmlWithFile() {
@@ -357,18 +361,4 @@ public class MainActivity extends AppCompatActivity {
             runOnUiThread(this::loadLocalHtml);
         });
     }
-
-    private boolean isOnlineAvailable() {
-        try {
-            java.net.HttpURLConnection connection = (java.net.HttpURLConnection)
-                    new java.net.URL("http://clients3.google.com/generate_204").openConnection();
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-            connection.setRequestMethod("HEAD");
-            int responseCode = connection.getResponseCode();
-            return (200 <= responseCode && responseCode <= 399);
-        } catch (Exception exception) {
-            return false;
-        }
-    }
 }
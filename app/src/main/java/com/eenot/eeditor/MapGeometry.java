@@ -0,0 +1,490 @@
+package com.eenot.eeditor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Геометрия провинций из map.json в плоских массивах.
+ *
+ * vertices — x, y подряд; вершины пронумерованы плотно по возрастанию ключа
+ * из vertices_positions, так что разреженные ключи не раздувают массив.
+ * Ссылка на несуществующий ключ ведёт на нулевую вершину в конце (0, 0, как в
+ * map-edit.js). indices — номера вершин всех провинций подряд, offsets[i]..offsets[i + 1] — контур i-й провинции в
+ * порядке массива provinces. Для каждой провинции — рамка и центр (NaN, если нет).
+ *
+ * {@link #toBlob()} пишет всё одним little-endian блоком из 4-байтовых
+ * значений, который JS раскладывает на Int32Array/Float32Array без копирования:
+ * <pre>
+ * int32   magic 'MGEO', version, provinceCount P, vertexCount V, indexCount N, 0, 0, 0
+ * float32 minX, minY, maxX, maxY
+ * int32   ids[P]
+ * int32   offsets[P + 1]
+ * float32 boxes[P * 4]      minX, minY, maxX, maxY
+ * float32 centers[P * 2]
+ * float32 vertices[V * 2]
+ * int32   indices[N]
+ * </pre>
+ */
+final class MapGeometry {
+    static final int MAGIC = 0x4F45474D; // "MGEO"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 48;
+    private static final int MAX_VERTEX = 1 << 24;
+
+    final int[] ids;
+    final int[] offsets;
+    final float[] boxes;
+    final float[] centers;
+    final float[] vertices;
+    final int[] indices;
+    final float minX, minY, maxX, maxY;
+
+    private MapGeometry(int[] ids, int[] offsets, float[] boxes, float[] centers, float[] vertices, int[] indices) {
+        this.ids = ids;
+        this.offsets = offsets;
+        this.boxes = boxes;
+        this.centers = centers;
+        this.vertices = vertices;
+        this.indices = indices;
+        float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+        float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+        for (int p = 0; p < ids.length; p++) {
+            if (offsets[p + 1] == offsets[p]) continue;
+            x0 = Math.min(x0, boxes[p * 4]);
+            y0 = Math.min(y0, boxes[p * 4 + 1]);
+            x1 = Math.max(x1, boxes[p * 4 + 2]);
+            y1 = Math.max(y1, boxes[p * 4 + 3]);
+        }
+        boolean empty = x0 > x1;
+        this.minX = empty ? 0 : x0;
+        this.minY = empty ? 0 : y0;
+        this.maxX = empty ? 0 : x1;
+        this.maxY = empty ? 0 : y1;
+    }
+
+    int provinceCount() {
+        return ids.length;
+    }
+
+    int vertexCount() {
+        return vertices.length / 2;
+    }
+
+    /** Размер карты в единицах, как считает map-edit.js: ceil(max) + 1 по всем вершинам. */
+    int width() {
+        float max = 0;
+        for (int i = 0; i < vertices.length; i += 2) max = Math.max(max, vertices[i]);
+        return (int) Math.ceil(max) + 1;
+    }
+
+    int height() {
+        float max = 0;
+        for (int i = 1; i < vertices.length; i += 2) max = Math.max(max, vertices[i]);
+        return (int) Math.ceil(max) + 1;
+    }
+
+    byte[] toBlob() {
+        int p = ids.length;
+        int words = HEADER_BYTES / 4 + p + (p + 1) + p * 4 + p * 2 + vertices.length + indices.length;
+        ByteBuffer buf = ByteBuffer.allocate(words * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(p).putInt(vertices.length / 2).putInt(indices.length)
+                .putInt(0).putInt(0).putInt(0);
+        buf.putFloat(minX).putFloat(minY).putFloat(maxX).putFloat(maxY);
+        buf.asIntBuffer().put(ids);
+        buf.position(buf.position() + p * 4);
+        buf.asIntBuffer().put(offsets);
+        buf.position(buf.position() + (p + 1) * 4);
+        buf.asFloatBuffer().put(boxes);
+        buf.position(buf.position() + boxes.length * 4);
+        buf.asFloatBuffer().put(centers);
+        buf.position(buf.position() + centers.length * 4);
+        buf.asFloatBuffer().put(vertices);
+        buf.position(buf.position() + vertices.length * 4);
+        buf.asIntBuffer().put(indices);
+        return buf.array();
+    }
+
+    /**
+     * Разбирает map.json. Читаются только vertices_positions и provinces
+     * (id, vertex_indices, center), остальное пропускается без построения дерева.
+     */
+    static MapGeometry parse(CharSequence json) throws IOException {
+        return new Parser(json).parse();
+    }
+
+    private static final class Parser {
+        private final CharSequence s;
+        private int pos;
+
+        // vertices_positions: ключи и x, y в порядке появления в файле
+        private int[] vertKeys = new int[512];
+        private float[] verts = new float[1024];
+        private int vertCount;
+
+        // provinces
+        private int[] ids = new int[256];
+        private int[] offsets = new int[257];
+        private float[] centers = new float[512];
+        private int provinceCount;
+        // Номера вершин; проверяются после разбора, т.к. vertices_positions может идти позже
+        private int[] indices = new int[4096];
+        private int indexCount;
+
+        Parser(CharSequence s) {
+            this.s = s;
+        }
+
+        MapGeometry parse() throws IOException {
+            skipWhitespace();
+            expect('{');
+            if (!tryConsume('}')) {
+                do {
+                    String key = string();
+                    expect(':');
+                    if (key.equals("vertices_positions")) {
+                        vertices();
+                    } else if (key.equals("provinces")) {
+                        provinces();
+                    } else {
+                        skipValue();
+                    }
+                } while (tryConsume(','));
+                expect('}');
+            }
+            skipWhitespace();
+            if (pos < s.length()) throw error("Unexpected data after the root value");
+
+            // Нумеруем вершины подряд по возрастанию ключа; повторный ключ — последнее
+            // значение, как у JSON.parse
+            long[] order = new long[vertCount];
+            for (int i = 0; i < vertCount; i++) order[i] = ((long) vertKeys[i] << 32) | i;
+            Arrays.sort(order);
+            int[] keys = new int[vertCount];
+            float[] vertices = new float[vertCount * 2];
+            int n = 0;
+            for (long o : order) {
+                int key = (int) (o >>> 32);
+                int from = (int) o;
+                if (n > 0 && keys[n - 1] == key) n--;
+                keys[n] = key;
+                vertices[n * 2] = verts[from * 2];
+                vertices[n * 2 + 1] = verts[from * 2 + 1];
+                n++;
+            }
+            if (n < vertCount) vertices = Arrays.copyOf(vertices, n * 2);
+            // Ключи 0..n-1 без пропусков — номер совпадает с ключом, искать не нужно
+            boolean dense = n == 0 || keys[n - 1] == n - 1;
+            int[] idx = Arrays.copyOf(indices, indexCount);
+            for (int i = 0; i < idx.length; i++) {
+                int v = dense ? (idx[i] < n ? idx[i] : -1) : Arrays.binarySearch(keys, 0, n, idx[i]);
+                idx[i] = v >= 0 ? v : -1;
+            }
+            float[] boxes = new float[provinceCount * 4];
+            for (int p = 0; p < provinceCount; p++) {
+                float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+                float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+                for (int i = offsets[p]; i < offsets[p + 1]; i++) {
+                    int v = idx[i];
+                    // Ссылка на несуществующую вершину — точка 0, 0, как в map-edit.js
+                    float x = v >= 0 ? vertices[v * 2] : 0;
+                    float y = v >= 0 ? vertices[v * 2 + 1] : 0;
+                    if (x < x0) x0 = x;
+                    if (y < y0) y0 = y;
+                    if (x > x1) x1 = x;
+                    if (y > y1) y1 = y;
+                }
+                if (x0 > x1) x0 = y0 = x1 = y1 = 0;
+                boxes[p * 4] = x0;
+                boxes[p * 4 + 1] = y0;
+                boxes[p * 4 + 2] = x1;
+                boxes[p * 4 + 3] = y1;
+            }
+            // -1 заменяется на отдельную нулевую вершину в конце массива
+            boolean missing = false;
+            for (int v : idx) if (v < 0) { missing = true; break; }
+            if (missing) {
+                int zero = vertices.length / 2;
+                vertices = Arrays.copyOf(vertices, vertices.length + 2);
+                for (int i = 0; i < idx.length; i++) if (idx[i] < 0) idx[i] = zero;
+            }
+            return new MapGeometry(Arrays.copyOf(ids, provinceCount), Arrays.copyOf(offsets, provinceCount + 1),
+                    boxes, Arrays.copyOf(centers, provinceCount * 2), vertices, idx);
+        }
+
+        /** {"0": [x, y], ...} */
+        private void vertices() throws IOException {
+            expect('{');
+            if (tryConsume('}')) return;
+            do {
+                String key = string();
+                expect(':');
+                int v;
+                try {
+                    v = Integer.parseInt(key.trim());
+                } catch (NumberFormatException e) {
+                    // Нечисловой ключ по индексу не найти
+                    skipValue();
+                    continue;
+                }
+                if (v < 0 || v >= MAX_VERTEX) throw error("Vertex key out of range: " + key);
+                float[] xy = point();
+                if (xy == null) continue;
+                if (vertCount == vertKeys.length) {
+                    vertKeys = Arrays.copyOf(vertKeys, vertCount * 2);
+                    verts = Arrays.copyOf(verts, vertCount * 4);
+                }
+                vertKeys[vertCount] = v;
+                verts[vertCount * 2] = xy[0];
+                verts[vertCount * 2 + 1] = xy[1];
+                vertCount++;
+            } while (tryConsume(','));
+            expect('}');
+        }
+
+        private void provinces() throws IOException {
+            expect('[');
+            if (tryConsume(']')) return;
+            do {
+                province();
+            } while (tryConsume(','));
+            expect(']');
+        }
+
+        private void province() throws IOException {
+            int p = provinceCount;
+            if (p == ids.length) {
+                ids = Arrays.copyOf(ids, p * 2);
+                offsets = Arrays.copyOf(offsets, p * 2 + 1);
+                centers = Arrays.copyOf(centers, p * 4);
+            }
+            ids[p] = p;
+            centers[p * 2] = Float.NaN;
+            centers[p * 2 + 1] = Float.NaN;
+            offsets[p] = indexCount;
+            skipWhitespace();
+            if (peek() != '{') {
+                skipValue();
+            } else {
+                expect('{');
+                if (!tryConsume('}')) {
+                    do {
+                        String key = string();
+                        expect(':');
+                        if (key.equals("id")) {
+                            double id = numberOrNaN();
+                            if (!Double.isNaN(id)) ids[p] = (int) id;
+                        } else if (key.equals("vertex_indices")) {
+                            vertexIndices();
+                        } else if (key.equals("center")) {
+                            float[] c = point();
+                            if (c != null) {
+                                centers[p * 2] = c[0];
+                                centers[p * 2 + 1] = c[1];
+                            }
+                        } else {
+                            skipValue();
+                        }
+                    } while (tryConsume(','));
+                    expect('}');
+                }
+            }
+            provinceCount = p + 1;
+            offsets[p + 1] = indexCount;
+        }
+
+        private void vertexIndices() throws IOException {
+            skipWhitespace();
+            if (peek() != '[') {
+                skipValue();
+                return;
+            }
+            expect('[');
+            if (tryConsume(']')) return;
+            do {
+                double v = numberOrNaN();
+                if (Double.isNaN(v) || v < 0 || v >= MAX_VERTEX) throw error("Bad vertex index");
+                if (indexCount == indices.length) indices = Arrays.copyOf(indices, indices.length * 2);
+                indices[indexCount++] = (int) v;
+            } while (tryConsume(','));
+            expect(']');
+        }
+
+        /** [x, y, ...] → {x, y}; null, если это не массив из двух чисел. */
+        private float[] point() throws IOException {
+            skipWhitespace();
+            if (peek() != '[') {
+                skipValue();
+                return null;
+            }
+            expect('[');
+            float[] xy = new float[2];
+            int n = 0;
+            if (!tryConsume(']')) {
+                do {
+                    double d = numberOrNaN();
+                    if (n < 2) xy[n] = (float) d;
+                    n++;
+                } while (tryConsume(','));
+                expect(']');
+            }
+            return n >= 2 && !Float.isNaN(xy[0]) && !Float.isNaN(xy[1]) ? xy : null;
+        }
+
+        /** Число, строка с числом (как Number() в JS) или NaN для прочего. */
+        private double numberOrNaN() throws IOException {
+            skipWhitespace();
+            char c = peek();
+            if (c == '"') {
+                try {
+                    return Double.parseDouble(string().trim());
+                } catch (NumberFormatException e) {
+                    return Double.NaN;
+                }
+            }
+            if (c == '-' || (c >= '0' && c <= '9')) return number();
+            skipValue();
+            return Double.NaN;
+        }
+
+        private double number() throws IOException {
+            int start = pos;
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') pos++;
+                else break;
+            }
+            try {
+                return Double.parseDouble(s.subSequence(start, pos).toString());
+            } catch (NumberFormatException e) {
+                pos = start;
+                throw error("Bad number");
+            }
+        }
+
+        private void skipValue() throws IOException {
+            skipWhitespace();
+            char c = peek();
+            if (c == '{') {
+                expect('{');
+                if (tryConsume('}')) return;
+                do {
+                    string();
+                    expect(':');
+                    skipValue();
+                } while (tryConsume(','));
+                expect('}');
+            } else if (c == '[') {
+                expect('[');
+                if (tryConsume(']')) return;
+                do {
+                    skipValue();
+                } while (tryConsume(','));
+                expect(']');
+            } else if (c == '"') {
+                skipString();
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                number();
+            } else if (matches("true")) {
+                pos += 4;
+            } else if (matches("false")) {
+                pos += 5;
+            } else if (matches("null")) {
+                pos += 4;
+            } else {
+                throw error("Unexpected character");
+            }
+        }
+
+        private String string() throws IOException {
+            skipWhitespace();
+            expect('"');
+            StringBuilder sb = null;
+            int start = pos;
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (c == '"') {
+                    String out = sb == null ? s.subSequence(start, pos).toString()
+                            : sb.append(s, start, pos).toString();
+                    pos++;
+                    return out;
+                }
+                if (c == '\\') {
+                    if (sb == null) sb = new StringBuilder();
+                    sb.append(s, start, pos);
+                    pos++;
+                    if (pos >= s.length()) break;
+                    char e = s.charAt(pos++);
+                    switch (e) {
+                        case 'n': sb.append('\n'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'r': sb.append('\r'); break;
+                        case 'b': sb.append('\b'); break;
+                        case 'f': sb.append('\f'); break;
+                        case 'u':
+                            if (pos + 4 > s.length()) throw error("Bad escape");
+                            try {
+                                sb.append((char) Integer.parseInt(s.subSequence(pos, pos + 4).toString(), 16));
+                            } catch (NumberFormatException ex) {
+                                throw error("Bad escape");
+                            }
+                            pos += 4;
+                            break;
+                        default: sb.append(e);
+                    }
+                    start = pos;
+                    continue;
+                }
+                pos++;
+            }
+            throw error("Unterminated string");
+        }
+
+        private void skipString() throws IOException {
+            expect('"');
+            while (pos < s.length()) {
+                char c = s.charAt(pos++);
+                if (c == '\\') pos++;
+                else if (c == '"') return;
+            }
+            throw error("Unterminated string");
+        }
+
+        private boolean matches(String word) {
+            int end = pos + word.length();
+            return end <= s.length() && s.subSequence(pos, end).toString().equals(word);
+        }
+
+        private void skipWhitespace() {
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\uFEFF') pos++;
+                else break;
+            }
+        }
+
+        private char peek() {
+            return pos < s.length() ? s.charAt(pos) : '\0';
+        }
+
+        private void expect(char c) throws IOException {
+            skipWhitespace();
+            if (peek() != c) throw error("Expected '" + c + "'");
+            pos++;
+        }
+
+        private boolean tryConsume(char c) {
+            skipWhitespace();
+            if (peek() == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private IOException error(String message) {
+            return new IOException(message + " at offset " + pos);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.eenot.eeditor;
+
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Геометрия карты редактора провинций (JS-объект AndroidMap).
+ *
+ * map-edit.js один раз передаёт текст map.json в {@link #loadAsync(String)}
+ * (разбор идёт в пуле моста, см. {@link #load(String)}), а затем
+ * забирает плоские буферы {@link MapGeometry} одним бинарным ответом по адресу
+ * {@code https://appassets.androidplatform.net/map/geometry/<версия>.bin}.
+ * Версия растёт с каждой загрузкой; старые версии отдают 404.
+ *
+ * Для касаний и отсечения невидимого строится {@link ProvinceGrid}:
+ * {@link #provinceAt(double, double)} и {@link #provincesInRect} отвечают
+ * номерами провинций в массиве provinces.
+ */
+class MapServer {
+    private static final String TAG = "MapServer";
+    static final String PREFIX = LocalAssetServer.ORIGIN + "/map/geometry/";
+
+    private final FileInterfaceNew files;
+
+    // Всё ниже — под synchronized (this)
+    private MapGeometry geometry;
+    private ProvinceGrid grid;
+    private byte[] blob;
+    // Буферы для provincesInRect, чтобы не выделять их на каждую перерисовку
+    private int[] rectSlots = new int[256];
+    private final int[] rectCount = new int[1];
+    private int version;
+
+    MapServer(FileInterfaceNew files) {
+        this.files = files;
+    }
+
+    /**
+     * Разбирает map.json и заменяет текущую карту.
+     *
+     * @return {ok, url, version, provinces, vertices, indices, width, height, bytes, parseMs, gridMs}
+     */
+    @JavascriptInterface
+    public String load(String json) {
+        if (json == null) return JsonCodec.error("No map data");
+        long start = System.nanoTime();
+        MapGeometry parsed;
+        try {
+            parsed = MapGeometry.parse(json);
+        } catch (IOException e) {
+            return JsonCodec.error("Bad map.json: " + e.getMessage());
+        }
+        byte[] bytes = parsed.toBlob();
+        long parseMs = (System.nanoTime() - start) / 1_000_000L;
+        start = System.nanoTime();
+        ProvinceGrid index = new ProvinceGrid(parsed);
+        long gridMs = (System.nanoTime() - start) / 1_000_000L;
+        int v;
+        synchronized (this) {
+            geometry = parsed;
+            grid = index;
+            blob = bytes;
+            v = ++version;
+        }
+        Log.i(TAG, "Map loaded: " + parsed.provinceCount() + " provinces, " + bytes.length + " bytes in " + parseMs + " ms");
+        return JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("url").value(PREFIX + v + ".bin")
+                .name("version").value(v)
+                .name("provinces").value(parsed.provinceCount())
+                .name("vertices").value(parsed.vertexCount())
+                .name("indices").value(parsed.indices.length)
+                .name("width").value(parsed.width())
+                .name("height").value(parsed.height())
+                .name("bytes").value(bytes.length)
+                .name("parseMs").value(parseMs)
+                .name("gridMs").value(gridMs)
+                .endObject().toString();
+    }
+
+    /**
+     * Провинция под точкой (в единицах карты).
+     *
+     * @return {ok, slot, id}; slot = -1, если мимо
+     */
+    @JavascriptInterface
+    public String provinceAt(double x, double y) {
+        MapGeometry g;
+        ProvinceGrid index;
+        synchronized (this) {
+            g = geometry;
+            index = grid;
+        }
+        if (index == null) return JsonCodec.error("Map is not loaded");
+        int slot = index.provinceAt((float) x, (float) y);
+        return JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("slot").value(slot)
+                .name("id").value(slot >= 0 ? g.ids[slot] : -1)
+                .endObject().toString();
+    }
+
+    /**
+     * Провинции, чья рамка пересекает прямоугольник, в порядке отрисовки.
+     *
+     * @return {ok, count, slots:[...]}
+     */
+    @JavascriptInterface
+    public synchronized String provincesInRect(double x0, double y0, double x1, double y1) {
+        if (grid == null) return JsonCodec.error("Map is not loaded");
+        rectSlots = grid.provincesInRect((float) x0, (float) y0, (float) x1, (float) y1, rectSlots, rectCount);
+        int n = rectCount[0];
+        JsonCodec.Writer w = JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("count").value(n)
+                .name("slots").beginArray();
+        for (int i = 0; i < n; i++) w.value(rectSlots[i]);
+        return w.endArray().endObject().toString();
+    }
+
+    @JavascriptInterface
+    public int loadAsync(final String json) {
+        return files.bridgeExecutor().submit(BridgeExecutor.PRIORITY_READ, () -> load(json));
+    }
+
+    /** Забывает карту и освобождает буферы. */
+    @JavascriptInterface
+    public synchronized String clear() {
+        geometry = null;
+        grid = null;
+        blob = null;
+        return JsonCodec.ok();
+    }
+
+    @Nullable
+    synchronized MapGeometry geometry() {
+        return geometry;
+    }
+
+    /**
+     * @return ответ или null, если url не относится к геометрии карты
+     */
+    @Nullable
+    WebResourceResponse handle(String url) {
+        if (url == null || !url.startsWith(PREFIX)) return null;
+        String name = url.substring(PREFIX.length());
+        int cut = name.indexOf('?');
+        if (cut >= 0) name = name.substring(0, cut);
+        byte[] bytes;
+        synchronized (this) {
+            bytes = blob != null && name.equals(version + ".bin") ? blob : null;
+        }
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Access-Control-Allow-Origin", "*");
+        if (bytes == null) {
+            return new WebResourceResponse("text/plain", "UTF-8", 404, "Not Found", headers,
+                    new ByteArrayInputStream(new byte[0]));
+        }
+        // Номера версий начинаются заново при каждом запуске — кэшировать нельзя
+        headers.put("Cache-Control", "no-store");
+        return new WebResourceResponse("application/octet-stream", null, 200, "OK", headers,
+                new ByteArrayInputStream(bytes));
+    }
+}
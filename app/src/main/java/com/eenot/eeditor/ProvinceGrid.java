@@ -0,0 +1,156 @@
+package com.eenot.eeditor;
+
+import java.util.Arrays;
+
+/**
+ * Равномерная сетка над провинциями {@link MapGeometry} для попадания по
+ * точке и отсечения по прямоугольнику.
+ *
+ * Каждая клетка хранит номера провинций (по порядку в provinces), чья рамка
+ * её задевает, в виде CSR: cellStart[c]..cellStart[c + 1] в items. Клеток
+ * примерно столько же, сколько провинций, так что в клетке их единицы.
+ * Номер провинции здесь — её позиция в массиве, а не id.
+ */
+final class ProvinceGrid {
+    private static final int MAX_CELLS_PER_AXIS = 1024;
+
+    private final MapGeometry g;
+    private final float originX, originY;
+    private final float cellW, cellH;
+    private final int cols, rows;
+    private final int[] cellStart;
+    private final int[] items;
+
+    // Метки «уже видели» для provincesInRect, без аллокации на запрос
+    private final int[] seen;
+    private int stamp;
+
+    ProvinceGrid(MapGeometry g) {
+        this.g = g;
+        int count = g.provinceCount();
+        float w = Math.max(g.maxX - g.minX, 1e-3f);
+        float h = Math.max(g.maxY - g.minY, 1e-3f);
+        // cols * rows ≈ count при клетках, близких к квадрату
+        double side = Math.sqrt(w * (double) h / Math.max(1, count));
+        this.cols = clamp((int) Math.ceil(w / side));
+        this.rows = clamp((int) Math.ceil(h / side));
+        this.originX = g.minX;
+        this.originY = g.minY;
+        this.cellW = w / cols;
+        this.cellH = h / rows;
+
+        int cells = cols * rows;
+        int[] counts = new int[cells + 1];
+        for (int p = 0; p < count; p++) {
+            if (isEmpty(p)) continue;
+            int c0 = col(g.boxes[p * 4]), c1 = col(g.boxes[p * 4 + 2]);
+            int r0 = row(g.boxes[p * 4 + 1]), r1 = row(g.boxes[p * 4 + 3]);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) counts[r * cols + c + 1]++;
+            }
+        }
+        for (int i = 0; i < cells; i++) counts[i + 1] += counts[i];
+        this.cellStart = counts;
+        this.items = new int[counts[cells]];
+        int[] fill = Arrays.copyOf(counts, cells);
+        for (int p = 0; p < count; p++) {
+            if (isEmpty(p)) continue;
+            int c0 = col(g.boxes[p * 4]), c1 = col(g.boxes[p * 4 + 2]);
+            int r0 = row(g.boxes[p * 4 + 1]), r1 = row(g.boxes[p * 4 + 3]);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) items[fill[r * cols + c]++] = p;
+            }
+        }
+        this.seen = new int[count];
+    }
+
+    /**
+     * Провинция под точкой; при наложении — нарисованная последней,
+     * как в map-edit.js.
+     *
+     * @return номер в provinces или -1
+     */
+    int provinceAt(float x, float y) {
+        if (!(x >= g.minX && x <= g.maxX && y >= g.minY && y <= g.maxY)) return -1;
+        int cell = row(y) * cols + col(x);
+        // В клетке номера идут по возрастанию — идём с конца
+        for (int i = cellStart[cell + 1] - 1; i >= cellStart[cell]; i--) {
+            int p = items[i];
+            int b = p * 4;
+            if (x < g.boxes[b] || x > g.boxes[b + 2] || y < g.boxes[b + 1] || y > g.boxes[b + 3]) continue;
+            if (contains(p, x, y)) return p;
+        }
+        return -1;
+    }
+
+    /**
+     * Провинции, чья рамка пересекает прямоугольник, в порядке отрисовки.
+     *
+     * @param out буфер для номеров; если мал, возвращается новый
+     * @return массив, в начале которого лежат {@code count[0]} номеров
+     */
+    synchronized int[] provincesInRect(float x0, float y0, float x1, float y1, int[] out, int[] count) {
+        float minX = Math.min(x0, x1), maxX = Math.max(x0, x1);
+        float minY = Math.min(y0, y1), maxY = Math.max(y0, y1);
+        count[0] = 0;
+        if (maxX < g.minX || minX > g.maxX || maxY < g.minY || minY > g.maxY) return out;
+        if (++stamp == 0) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        int n = 0;
+        int c0 = col(minX), c1 = col(maxX), r0 = row(minY), r1 = row(maxY);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int p = items[i];
+                    if (seen[p] == stamp) continue;
+                    seen[p] = stamp;
+                    int b = p * 4;
+                    if (g.boxes[b] > maxX || g.boxes[b + 2] < minX || g.boxes[b + 1] > maxY || g.boxes[b + 3] < minY) {
+                        continue;
+                    }
+                    if (n == out.length) out = Arrays.copyOf(out, Math.max(16, out.length * 2));
+                    out[n++] = p;
+                }
+            }
+        }
+        Arrays.sort(out, 0, n);
+        count[0] = n;
+        return out;
+    }
+
+    /** Чёт-нечет, тот же расчёт, что _pointInPolygon в map-edit.js. */
+    private boolean contains(int p, float x, float y) {
+        int start = g.offsets[p], end = g.offsets[p + 1];
+        if (end - start < 3) return false;
+        float[] v = g.vertices;
+        int[] idx = g.indices;
+        boolean inside = false;
+        for (int i = start, j = end - 1; i < end; j = i++) {
+            float xi = v[idx[i] * 2], yi = v[idx[i] * 2 + 1];
+            float xj = v[idx[j] * 2], yj = v[idx[j] * 2 + 1];
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) inside = !inside;
+        }
+        return inside;
+    }
+
+    private boolean isEmpty(int p) {
+        return g.offsets[p + 1] - g.offsets[p] < 3;
+    }
+
+    private int col(float x) {
+        int c = (int) ((x - originX) / cellW);
+        return c < 0 ? 0 : Math.min(c, cols - 1);
+    }
+
+    private int row(float y) {
+        int r = (int) ((y - originY) / cellH);
+        return r < 0 ? 0 : Math.min(r, rows - 1);
+    }
+
+    private static int clamp(int n) {
+        return Math.max(1, Math.min(MAX_CELLS_PER_AXIS, n));
+    }
+}
@@ -0,0 +1,408 @@
+package com.eenot.eeditor;
+
+import android.content.Context;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebView;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Метаданные сценариев из baseDir/scenarios для списка файлов (JS-объект AndroidScenarios).
+ * Из каждого файла потоком через JsonReader берётся только нужное: название, id,
+ * число стран, провинций и событий, языки. Результат хранится на диске с ключом
+ * путь + размер + время изменения, так что пересканируются только изменённые файлы.
+ *
+ * list() отвечает сразу из кэша; файлы, которых в кэше нет, помечены pending,
+ * а после фонового обновления приходит window.onScenarioIndexUpdated(result).
+ */
+class ScenarioIndex {
+    private static final String TAG = "ScenarioIndex";
+    static final String JS_CALLBACK = "onScenarioIndexUpdated";
+
+    private static final String DIR = "scenarios";
+    private static final String CACHE_FILE = "scenario-index.json";
+    private static final int CACHE_VERSION = 1;
+    // Для определения языка хватает нескольких сотен строк
+    private static final int MAX_LANGUAGE_SAMPLES = 300;
+
+    static final class Meta {
+        String path;
+        long size;
+        long modified;
+        String title = "";
+        String id = "";
+        int lands;
+        int provinces;
+        int events;
+        List<String> languages = new ArrayList<>();
+    }
+
+    private final WebView webView;
+    private final FileInterfaceNew files;
+    private final File cacheFile;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "scenario-index");
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    // Доступ только под synchronized (this)
+    private final Map<String, Meta> cache = new HashMap<>();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+    ScenarioIndex(Context context, WebView webView, FileInterfaceNew files) {
+        this.webView = webView;
+        this.files = files;
+        this.cacheFile = new File(context.getCacheDir(), CACHE_FILE);
+        worker.execute(this::load);
+    }
+
+    /**
+     * {ok, scenarios:[{name, relativePath, size, modified, title, id, lands, provinces,
+     * events, languages, pending}]} — сразу, без чтения сценариев.
+     */
+    @JavascriptInterface
+    public String list() {
+        File dir = files.resolveSafe(DIR);
+        if (dir == null || !dir.isDirectory()) return JsonCodec.error("Directory not found");
+        List<DirectoryIndex.Entry> entries = files.directoryIndex().list(dir, DIR, 0, 0, "*.json", null).entries;
+        boolean changed = false;
+        JsonCodec.Writer w = JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("scenarios").beginArray();
+        synchronized (this) {
+            for (DirectoryIndex.Entry e : entries) {
+                if (e.isDirectory) continue;
+                Meta meta = cache.get(e.relativePath);
+                boolean fresh = meta != null && meta.size == e.size && meta.modified == e.modified;
+                if (!fresh) changed = true;
+                writeEntry(w, e, fresh ? meta : null);
+            }
+            if (cache.size() != entries.size()) changed = true;
+        }
+        String result = w.endArray().endObject().toString();
+        if (changed) refresh();
+        return result;
+    }
+
+    /** Пересканирует изменённые файлы в фоне. */
+    @JavascriptInterface
+    public String refresh() {
+        if (refreshQueued.compareAndSet(false, true)) {
+            worker.execute(() -> {
+                refreshQueued.set(false);
+                update();
+            });
+        }
+        return JsonCodec.ok();
+    }
+
+    void shutdown() {
+        worker.shutdownNow();
+    }
+
+    private void update() {
+        File dir = files.resolveSafe(DIR);
+        if (dir == null || !dir.isDirectory()) return;
+        List<DirectoryIndex.Entry> entries = files.directoryIndex().list(dir, DIR, 0, 0, "*.json", null).entries;
+
+        Map<String, Meta> current;
+        synchronized (this) {
+            current = new HashMap<>(cache);
+        }
+        Map<String, Meta> next = new HashMap<>();
+        boolean changed = false;
+        for (DirectoryIndex.Entry e : entries) {
+            if (Thread.currentThread().isInterrupted()) return;
+            if (e.isDirectory) continue;
+            Meta meta = current.get(e.relativePath);
+            if (meta == null || meta.size != e.size || meta.modified != e.modified) {
+                meta = extract(new File(dir, e.name));
+                meta.path = e.relativePath;
+                meta.size = e.size;
+                meta.modified = e.modified;
+                changed = true;
+            }
+            next.put(e.relativePath, meta);
+        }
+        if (next.size() != current.size()) changed = true;
+        if (!changed) return;
+
+        synchronized (this) {
+            cache.clear();
+            cache.putAll(next);
+        }
+        save(next);
+        notifyPage(entries, next);
+    }
+
+    private void notifyPage(List<DirectoryIndex.Entry> entries, Map<String, Meta> metas) {
+        JsonCodec.Writer w = JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("scenarios").beginArray();
+        for (DirectoryIndex.Entry e : entries) {
+            if (!e.isDirectory) writeEntry(w, e, metas.get(e.relativePath));
+        }
+        final String script = "window." + JS_CALLBACK + " && window." + JS_CALLBACK
+                + "(" + w.endArray().endObject().toString() + ");";
+        webView.post(() -> webView.evaluateJavascript(script, null));
+    }
+
+    private static void writeEntry(JsonCodec.Writer w, DirectoryIndex.Entry e, Meta meta) {
+        w.beginObject()
+                .name("name").value(e.name)
+                .name("relativePath").value(e.relativePath)
+                .name("isDirectory").value(false)
+                .name("size").value(e.size)
+                .name("modified").value(e.modified);
+        if (meta != null) {
+            w.name("title").value(meta.title)
+                    .name("id").value(meta.id)
+                    .name("lands").value(meta.lands)
+                    .name("provinces").value(meta.provinces)
+                    .name("events").value(meta.events)
+                    .name("languages").beginArray();
+            for (String lang : meta.languages) w.value(lang);
+            w.endArray();
+        } else {
+            w.name("pending").value(true);
+        }
+        w.endObject();
+    }
+
+    /** Читает только верхний уровень сценария, остальное пропускает без разбора. */
+    static Meta extract(File file) {
+        Meta meta = new Meta();
+        LanguageDetector detector = new LanguageDetector();
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 64 * 1024))) {
+            reader.setLenient(true);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "name":
+                        meta.title = stringOrEmpty(reader);
+                        detector.sample(meta.title);
+                        break;
+                    case "id":
+                        meta.id = stringOrEmpty(reader);
+                        break;
+                    case "lands":
+                        meta.lands = countMembers(reader, detector, "name");
+                        break;
+                    case "provinces":
+                        meta.provinces = countMembers(reader, null, null);
+                        break;
+                    case "custom_events":
+                        meta.events = countMembers(reader, detector, "title");
+                        break;
+                    case "eeditor":
+                        readEeditor(reader, meta);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+        } catch (Exception e) {
+            // Битый файл всё равно показываем, просто без счётчиков
+            Log.w(TAG, "Cannot index " + file.getName() + ": " + e.getMessage());
+        }
+        if (meta.languages.isEmpty()) meta.languages.addAll(detector.languages());
+        return meta;
+    }
+
+    /**
+     * Считает элементы объекта или массива. Если задан sampleField, строковое поле
+     * с этим именем у вложенных объектов идёт в определитель языка.
+     */
+    private static int countMembers(JsonReader reader, LanguageDetector detector, String sampleField)
+            throws IOException {
+        JsonToken token = reader.peek();
+        boolean object = token == JsonToken.BEGIN_OBJECT;
+        if (!object && token != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return 0;
+        }
+        if (object) reader.beginObject();
+        else reader.beginArray();
+        int count = 0;
+        while (reader.hasNext()) {
+            if (object) reader.nextName();
+            if (sampleField != null && detector.wantsMore() && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (sampleField.equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                        detector.sample(reader.nextString());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+            count++;
+        }
+        if (object) reader.endObject();
+        else reader.endArray();
+        return count;
+    }
+
+    private static void readEeditor(JsonReader reader, Meta meta) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("languages".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.STRING) meta.languages.add(reader.nextString());
+                    else reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static String stringOrEmpty(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) return reader.nextString();
+        reader.skipValue();
+        return "";
+    }
+
+    /** Языки по алфавиту строк: кириллица — RU, латиница — EN. */
+    private static final class LanguageDetector {
+        private int samples;
+        private boolean cyrillic;
+        private boolean latin;
+
+        boolean wantsMore() {
+            return samples < MAX_LANGUAGE_SAMPLES && !(cyrillic && latin);
+        }
+
+        void sample(String s) {
+            if (s == null || !wantsMore()) return;
+            samples++;
+            for (int i = 0; i < s.length(); i++) {
+                Character.UnicodeBlock block = Character.UnicodeBlock.of(s.charAt(i));
+                if (block == Character.UnicodeBlock.CYRILLIC) cyrillic = true;
+                else if (Character.isLetter(s.charAt(i)) && s.charAt(i) < 0x250) latin = true;
+            }
+        }
+
+        Set<String> languages() {
+            Set<String> result = new LinkedHashSet<>();
+            if (latin) result.add("EN");
+            if (cyrillic) result.add("RU");
+            return result;
+        }
+    }
+
+    private void load() {
+        if (!cacheFile.exists()) return;
+        Map<String, Meta> loaded = new HashMap<>();
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            int version = 0;
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("version".equals(name)) {
+                    version = reader.nextInt();
+                } else if ("entries".equals(name) && version == CACHE_VERSION) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Meta m = readMeta(reader);
+                        if (m.path != null) loaded.put(m.path, m);
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (Exception e) {
+            Log.w(TAG, "Scenario index cache is unreadable, rebuilding", e);
+            return;
+        }
+        synchronized (this) {
+            // Записи, уже обновлённые сканированием, не перетираем
+            for (Map.Entry<String, Meta> e : loaded.entrySet()) cache.putIfAbsent(e.getKey(), e.getValue());
+        }
+    }
+
+    private static Meta readMeta(JsonReader reader) throws IOException {
+        Meta m = new Meta();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "path": m.path = reader.nextString(); break;
+                case "size": m.size = reader.nextLong(); break;
+                case "modified": m.modified = reader.nextLong(); break;
+                case "title": m.title = reader.nextString(); break;
+                case "id": m.id = reader.nextString(); break;
+                case "lands": m.lands = reader.nextInt(); break;
+                case "provinces": m.provinces = reader.nextInt(); break;
+                case "events": m.events = reader.nextInt(); break;
+                case "languages":
+                    reader.beginArray();
+                    while (reader.hasNext()) m.languages.add(reader.nextString());
+                    reader.endArray();
+                    break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        return m;
+    }
+
+    private void save(Map<String, Meta> metas) {
+        JsonCodec.Writer w = JsonCodec.writer().beginObject()
+                .name("version").value(CACHE_VERSION)
+                .name("entries").beginArray();
+        for (Meta m : metas.values()) {
+            w.beginObject()
+                    .name("path").value(m.path)
+                    .name("size").value(m.size)
+                    .name("modified").value(m.modified)
+                    .name("title").value(m.title)
+                    .name("id").value(m.id)
+                    .name("lands").value(m.lands)
+                    .name("provinces").value(m.provinces)
+                    .name("events").value(m.events)
+                    .name("languages").beginArray();
+            for (String lang : m.languages) w.value(lang);
+            w.endArray().endObject();
+        }
+        try {
+            AtomicFileWriter.replace(cacheFile,
+                    w.endArray().endObject().toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot save scenario index", e);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.eenot.eeditor;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Установка файлов сценария в filesDir/scenario без «пустого» промежутка.
+ *
+ * Новая версия собирается в scenario.staging, затем подменяет рабочую папку
+ * двумя переименованиями (scenario → scenario.old, staging → scenario).
+ * Если процесс умрёт между ними, {@link #recover()} при следующем запуске
+ * вернёт старую папку на место.
+ *
+ * При наличии manifest.json ({version, files:[{path, sha256, size}]}) качаются
+ * только файлы с новым хэшем, остальные берутся из текущей версии жёсткой
+ * ссылкой (или копией, если ссылку сделать нельзя).
+ */
+class ScenarioInstaller {
+    private static final String TAG = "ScenarioInstaller";
+    static final String MANIFEST_NAME = ".manifest.json";
+
+    static final class FileEntry {
+        final String path;
+        final String sha256;
+        final long size;
+
+        FileEntry(String path, String sha256, long size) {
+            this.path = path;
+            this.sha256 = sha256;
+            this.size = size;
+        }
+    }
+
+    static final class Manifest {
+        final String version;
+        final List<FileEntry> files;
+        final String raw;
+
+        Manifest(String version, List<FileEntry> files, String raw) {
+            this.version = version;
+            this.files = files;
+            this.raw = raw;
+        }
+    }
+
+    private final File liveDir;
+    private final File stagingDir;
+    private final File oldDir;
+    private final UpdateDownloader downloader;
+
+    ScenarioInstaller(File liveDir, UpdateDownloader downloader) {
+        this.liveDir = liveDir;
+        this.stagingDir = new File(liveDir.getPath() + ".staging");
+        this.oldDir = new File(liveDir.getPath() + ".old");
+        this.downloader = downloader;
+    }
+
+    File stagingDir() {
+        return stagingDir;
+    }
+
+    /** Доводит до конца или откатывает прерванную подмену папок. */
+    void recover() {
+        if (!liveDir.exists() && oldDir.exists()) {
+            if (!oldDir.renameTo(liveDir)) Log.e(TAG, "Cannot restore " + liveDir);
+        }
+        deleteRecursive(oldDir);
+        deleteRecursive(stagingDir);
+    }
+
+    /** @return манифест или null, если сервер его не публикует (404) */
+    @Nullable
+    Manifest fetchManifest(String url, File cacheDir) throws IOException {
+        File tmp = new File(cacheDir, "scenario-manifest.json");
+        try {
+            downloader.fetch(url, tmp, null);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            return parse(new String(Files.readAllBytes(tmp.toPath()), StandardCharsets.UTF_8));
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    static Manifest parse(String raw) throws IOException {
+        try {
+            JSONObject json = new JSONObject(raw);
+            JSONArray arr = json.getJSONArray("files");
+            List<FileEntry> files = new ArrayList<>(arr.length());
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject f = arr.getJSONObject(i);
+                String path = f.getString("path");
+                if (path.isEmpty() || path.startsWith("/") || path.contains("..") || path.equals(MANIFEST_NAME)) {
+                    throw new IOException("Bad path in manifest: " + path);
+                }
+                files.add(new FileEntry(path, f.getString("sha256").toLowerCase(Locale.ROOT), f.optLong("size", -1)));
+            }
+            return new Manifest(json.optString("version", ""), files, raw);
+        } catch (JSONException e) {
+            throw new IOException("Bad manifest: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Собирает новую версию по манифесту и подменяет ею рабочую папку.
+     *
+     * @param baseUrl адрес, к которому дописывается path файла
+     */
+    void installDelta(Manifest manifest, String baseUrl, UpdateDownloader.Progress progress) throws IOException {
+        Map<String, String> current = localHashes(manifest);
+        List<FileEntry> changed = new ArrayList<>();
+        long total = 0;
+        prepareStaging();
+        try {
+            for (FileEntry f : manifest.files) {
+                File dest = new File(stagingDir, f.path);
+                mkdirsFor(dest);
+                if (f.sha256.equals(current.get(f.path))) {
+                    reuse(new File(liveDir, f.path), dest);
+                } else {
+                    changed.add(f);
+                    total += Math.max(f.size, 0);
+                }
+            }
+            Log.i(TAG, "Delta update: " + changed.size() + " of " + manifest.files.size() + " files changed");
+
+            final long[] done = {0};
+            final long grandTotal = total;
+            for (FileEntry f : changed) {
+                File dest = new File(stagingDir, f.path);
+                final long before = done[0];
+                downloader.fetch(baseUrl + encodePath(f.path), dest, (bytes, size) -> {
+                    if (progress != null) progress.onBytes(before + bytes, grandTotal);
+                });
+                String actual = sha256(dest);
+                if (!actual.equals(f.sha256)) {
+                    throw new IOException("Hash mismatch for " + f.path + ": " + actual);
+                }
+                done[0] = before + dest.length();
+            }
+            AtomicFileWriter.replace(new File(stagingDir, MANIFEST_NAME), manifest.raw.getBytes(StandardCharsets.UTF_8));
+            swap();
+        } catch (IOException | RuntimeException e) {
+            deleteRecursive(stagingDir);
+            throw e;
+        }
+    }
+
+    /** Очищает папку сборки перед заполнением. */
+    void prepareStaging() throws IOException {
+        deleteRecursive(stagingDir);
+        if (!stagingDir.mkdirs()) throw new IOException("Cannot create " + stagingDir);
+    }
+
+    /** Делает собранную в staging версию рабочей. */
+    void swap() throws IOException {
+        deleteRecursive(oldDir);
+        if (liveDir.exists() && !liveDir.renameTo(oldDir)) {
+            throw new IOException("Cannot move " + liveDir + " aside");
+        }
+        if (!stagingDir.renameTo(liveDir)) {
+            // Возвращаем старую версию, чтобы не остаться без сценария
+            oldDir.renameTo(liveDir);
+            throw new IOException("Cannot move " + stagingDir + " into place");
+        }
+        deleteRecursive(oldDir);
+    }
+
+    /**
+     * Хэши текущих файлов: из локального манифеста или, если его нет, посчитанные заново.
+     * Файлы, изменённые позже манифеста, хэшируются заново: правка руками может
+     * не поменять размер.
+     */
+    private Map<String, String> localHashes(Manifest wanted) {
+        Map<String, String> hashes = new HashMap<>();
+        File local = new File(liveDir, MANIFEST_NAME);
+        if (local.exists()) {
+            try {
+                Manifest m = parse(new String(Files.readAllBytes(local.toPath()), StandardCharsets.UTF_8));
+                long installed = local.lastModified();
+                for (FileEntry f : m.files) {
+                    File file = new File(liveDir, f.path);
+                    if (!file.isFile() || (f.size >= 0 && file.length() != f.size)) continue;
+                    if (file.lastModified() < installed) {
+                        hashes.put(f.path, f.sha256);
+                    } else {
+                        putHash(hashes, f.path, file);
+                    }
+                }
+                return hashes;
+            } catch (IOException e) {
+                Log.w(TAG, "Ignoring local manifest: " + e.getMessage());
+            }
+        }
+        for (FileEntry f : wanted.files) {
+            File file = new File(liveDir, f.path);
+            if (!file.isFile() || (f.size >= 0 && file.length() != f.size)) continue;
+            putHash(hashes, f.path, file);
+        }
+        return hashes;
+    }
+
+    private static void putHash(Map<String, String> hashes, String path, File file) {
+        try {
+            hashes.put(path, sha256(file));
+        } catch (IOException ignored) {
+            // Нечитаемый файл просто скачается заново
+        }
+    }
+
+    /** Жёсткая ссылка на неизменный файл; если не вышло — копия. */
+    private static void reuse(File from, File to) throws IOException {
+        try {
+            Files.createLink(to.toPath(), from.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void mkdirsFor(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Cannot create " + parent);
+        }
+    }
+
+    static String sha256(File file) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) md.update(buffer, 0, n);
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : md.digest()) sb.append(String.format(Locale.ROOT, "%02x", b & 0xFF));
+        return sb.toString();
+    }
+
+    private static String encodePath(String path) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : path.split("/")) {
+            if (sb.length() > 0) sb.append('/');
+            try {
+                sb.append(java.net.URLEncoder.encode(part, "UTF-8").replace("+", "%20"));
+            } catch (java.io.UnsupportedEncodingException e) {
+                sb.append(part);
+            }
+        }
+        return sb.toString();
+    }
+
+    static void deleteRecursive(File fileOrDirectory) {
+        File[] children = fileOrDirectory.isDirectory() ? fileOrDirectory.listFiles() : null;
+        if (children != null) {
+            for (File child : children) deleteRecursive(child);
+        }
+        fileOrDirectory.delete();
+    }
+}
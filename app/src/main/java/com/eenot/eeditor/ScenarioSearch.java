@@ -0,0 +1,333 @@
+package com.eenot.eeditor;
+
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Полнотекстовый поиск по ключам и строковым значениям всех сценариев в
+ * baseDir/scenarios (JS-объект AndroidSearch).
+ *
+ * Инвертированный индекс: слово → пары (файл, смещение строки в байтах).
+ * Индекс сверяется со списком файлов (размер и время изменения из
+ * {@link DirectoryIndex}) только когда сменилась {@link DirectoryIndex#version()},
+ * перечитываются лишь изменённые файлы.
+ * Путь JSON для найденного места восстанавливается повторным проходом по файлу,
+ * поэтому в памяти пути не хранятся.
+ *
+ * Слова, встретившиеся больше MAX_POSTINGS раз (true, name, the...), считаются
+ * частыми: их списки выбрасываются, а в запросе такие слова проверяются по
+ * тексту найденной строки при её чтении.
+ */
+class ScenarioSearch {
+    private static final String TAG = "ScenarioSearch";
+    private static final String DIR = "scenarios";
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    private static final int MAX_SNIPPET = 200;
+    // Вхождений, после которых слово считается частым и не индексируется
+    private static final int MAX_POSTINGS = 32 * 1024;
+
+    private static final class IndexedFile {
+        final int id;
+        final String path;
+        final long size;
+        final long modified;
+
+        IndexedFile(int id, String path, long size, long modified) {
+            this.id = id;
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /** Растущий массив пар (id файла, смещение). */
+    private static final class Postings {
+        int[] data = new int[4];
+        int size;
+
+        void add(int file, int offset) {
+            if (size + 2 > data.length) data = Arrays.copyOf(data, data.length * 2);
+            data[size++] = file;
+            data[size++] = offset;
+        }
+    }
+
+    private final FileInterfaceNew files;
+
+    // Всё ниже — под synchronized (this)
+    private final Map<String, Postings> index = new HashMap<>();
+    private final Map<String, IndexedFile> byPath = new HashMap<>();
+    // id → файл; null, если файл удалён или переиндексирован
+    private final ArrayList<IndexedFile> byId = new ArrayList<>();
+    private final Set<String> common = new HashSet<>();
+    private int deadFiles;
+    // Версия DirectoryIndex, с которой индекс сверялся последний раз
+    private long indexedVersion = -1;
+
+    ScenarioSearch(FileInterfaceNew files) {
+        this.files = files;
+    }
+
+    /**
+     * Ищет слова запроса (все должны встретиться в одной строке).
+     *
+     * @return {ok, total, approximate, hits:[{file, path, offset, key, value}]}; offset — в байтах.
+     *         approximate = true, если в запросе есть частые слова: тогда total —
+     *         оценка сверху, а hits уже проверены
+     */
+    @JavascriptInterface
+    public String search(String query, int limit) {
+        try {
+            List<String> terms = tokenize(query);
+            if (terms.isEmpty()) return JsonCodec.error("Empty query");
+            int max = limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+
+            // Сначала собираем совпадения под блокировкой, файлы читаем уже без неё
+            LinkedHashMap<String, List<Integer>> hitsByFile = new LinkedHashMap<>();
+            List<String> frequent = new ArrayList<>();
+            int total;
+            synchronized (this) {
+                long version = files.directoryIndex().version();
+                if (version != indexedVersion) {
+                    refresh();
+                    indexedVersion = version;
+                }
+                List<String> indexed = new ArrayList<>();
+                for (String term : terms) {
+                    if (common.contains(term)) frequent.add(term);
+                    else indexed.add(term);
+                }
+                if (indexed.isEmpty()) return JsonCodec.error("Query has only common words");
+                total = collect(indexed, max, hitsByFile);
+            }
+
+            JsonCodec.Writer w = JsonCodec.writer().beginObject()
+                    .name("ok").value(true)
+                    .name("total").value(total)
+                    .name("approximate").value(!frequent.isEmpty())
+                    .name("hits").beginArray();
+            for (Map.Entry<String, List<Integer>> e : hitsByFile.entrySet()) {
+                describeHits(e.getKey(), e.getValue(), frequent, w);
+            }
+            return w.endArray().endObject().toString();
+        } catch (Exception e) {
+            Log.e(TAG, "search failed", e);
+            return JsonCodec.error(e.getMessage());
+        }
+    }
+
+    @JavascriptInterface
+    public int searchAsync(final String query, final int limit) {
+        return files.bridgeExecutor().submit(BridgeExecutor.PRIORITY_READ, () -> search(query, limit));
+    }
+
+    /** Приводит индекс в соответствие с файлами на диске. */
+    private void refresh() {
+        File root = files.resolveSafe(DIR);
+        Map<String, DirectoryIndex.Entry> present = new HashMap<>();
+        if (root != null && root.isDirectory()) walk(root, DIR, present);
+
+        for (IndexedFile f : new ArrayList<>(byPath.values())) {
+            DirectoryIndex.Entry e = present.get(f.path);
+            if (e == null || e.size != f.size || e.modified != f.modified) drop(f);
+        }
+        for (DirectoryIndex.Entry e : present.values()) {
+            if (!byPath.containsKey(e.relativePath)) add(e);
+        }
+        if (deadFiles > 16 && deadFiles * 2 > byId.size()) compact();
+    }
+
+    private void walk(File dir, String relativeDir, Map<String, DirectoryIndex.Entry> out) {
+        List<DirectoryIndex.Entry> entries = files.directoryIndex().list(dir, relativeDir, 0, 0, null, null).entries;
+        for (DirectoryIndex.Entry e : entries) {
+            if (e.isDirectory) {
+                walk(new File(dir, e.name), e.relativePath, out);
+            } else if (e.name.toLowerCase(Locale.ROOT).endsWith(".json")) {
+                out.put(e.relativePath, e);
+            }
+        }
+    }
+
+    private void add(DirectoryIndex.Entry entry) {
+        final IndexedFile f = new IndexedFile(byId.size(), entry.relativePath, entry.size, entry.modified);
+        byId.add(f);
+        byPath.put(f.path, f);
+        File file = files.resolveSafe(f.path);
+        if (file == null) return;
+        final Set<String> seen = new HashSet<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            new JsonScanner(in).scan((scanner, key, value, offset) -> {
+                seen.clear();
+                for (String term : tokenize(value)) {
+                    if (!seen.add(term) || common.contains(term)) continue;
+                    Postings p = index.get(term);
+                    if (p == null) {
+                        p = new Postings();
+                        index.put(term, p);
+                    }
+                    p.add(f.id, (int) offset);
+                    if (p.size / 2 > MAX_POSTINGS) {
+                        index.remove(term);
+                        common.add(term);
+                    }
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            // До места ошибки индекс уже заполнен — для поиска этого достаточно
+            Log.w(TAG, "Partial index for " + f.path + ": " + e.getMessage());
+        }
+    }
+
+    private void drop(IndexedFile f) {
+        byPath.remove(f.path);
+        byId.set(f.id, null);
+        deadFiles++;
+    }
+
+    /** Выбрасывает записи удалённых файлов и перенумеровывает живые. */
+    private void compact() {
+        int[] remap = new int[byId.size()];
+        ArrayList<IndexedFile> alive = new ArrayList<>();
+        for (int i = 0; i < byId.size(); i++) {
+            IndexedFile f = byId.get(i);
+            if (f == null) {
+                remap[i] = -1;
+            } else {
+                remap[i] = alive.size();
+                alive.add(new IndexedFile(alive.size(), f.path, f.size, f.modified));
+            }
+        }
+        java.util.Iterator<Postings> it = index.values().iterator();
+        while (it.hasNext()) {
+            Postings p = it.next();
+            int out = 0;
+            for (int i = 0; i < p.size; i += 2) {
+                int id = remap[p.data[i]];
+                if (id < 0) continue;
+                p.data[out++] = id;
+                p.data[out++] = p.data[i + 1];
+            }
+            p.size = out;
+            if (out == 0) it.remove();
+        }
+        byId.clear();
+        byId.addAll(alive);
+        byPath.clear();
+        for (IndexedFile f : alive) byPath.put(f.path, f);
+        deadFiles = 0;
+    }
+
+    /** @return число всех совпадений; первые max раскладываются по файлам */
+    private int collect(List<String> terms, int max, Map<String, List<Integer>> out) {
+        Postings rarest = null;
+        for (String term : terms) {
+            Postings p = index.get(term);
+            if (p == null) return 0;
+            if (rarest == null || p.size < rarest.size) rarest = p;
+        }
+        // Остальные слова должны попасть в ту же строку того же файла
+        List<Set<Long>> others = new ArrayList<>();
+        for (String term : terms) {
+            Postings p = index.get(term);
+            if (p == rarest) continue;
+            Set<Long> keys = new HashSet<>(p.size);
+            for (int i = 0; i < p.size; i += 2) keys.add(pack(p.data[i], p.data[i + 1]));
+            others.add(keys);
+        }
+        int total = 0;
+        for (int i = 0; i < rarest.size; i += 2) {
+            IndexedFile f = byId.get(rarest.data[i]);
+            if (f == null) continue;
+            long key = pack(rarest.data[i], rarest.data[i + 1]);
+            boolean all = true;
+            for (Set<Long> set : others) {
+                if (!set.contains(key)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (!all) continue;
+            if (total < max) {
+                List<Integer> list = out.get(f.path);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    out.put(f.path, list);
+                }
+                list.add(rarest.data[i + 1]);
+            }
+            total++;
+        }
+        return total;
+    }
+
+    /** Один проход по файлу, чтобы узнать путь и текст для каждого найденного смещения. */
+    private void describeHits(String path, List<Integer> offsets, final List<String> frequent,
+                              JsonCodec.Writer w) {
+        final Set<Long> wanted = new HashSet<>();
+        long last = 0;
+        for (int o : offsets) {
+            wanted.add((long) o);
+            last = Math.max(last, o);
+        }
+        final long stopAfter = last;
+        File file = files.resolveSafe(path);
+        if (file == null) return;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            new JsonScanner(in).scan((scanner, key, value, offset) -> {
+                if (wanted.contains(offset)
+                        && (frequent.isEmpty() || tokenize(value).containsAll(frequent))) {
+                    String snippet = value.length() > MAX_SNIPPET ? value.substring(0, MAX_SNIPPET) : value;
+                    w.beginObject()
+                            .name("file").value(path)
+                            .name("path").value(scanner.path())
+                            .name("offset").value(offset)
+                            .name("key").value(key)
+                            .name("value").value(snippet)
+                            .endObject();
+                }
+                return offset < stopAfter;
+            });
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read hits from " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static long pack(int file, int offset) {
+        return ((long) file << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    /** Слова из букв, цифр и '_' в нижнем регистре; id вида civilization_43 остаются целыми. */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) return terms;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            boolean word = Character.isLetterOrDigit(c) || c == '_';
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,253 @@
+package com.eenot.eeditor;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.webkit.WebView;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Запуск без ожидания сети.
+ *
+ * Раньше перед первой загрузкой делался HEAD на clients3.google.com (до 10 с
+ * офлайн), потом читался settings.json. Теперь:
+ * - состояние сети берётся из ConnectivityManager сразу и затем из колбэков;
+ * - settings.json читается в фоне параллельно с созданием WebView;
+ * - первая страница выбирается по ссылке из прошлого запуска (SharedPreferences)
+ *   и грузится сразу, её ассеты заранее читаются в кэш {@link LocalAssetServer};
+ * - если после чтения настроек или появления сети цель изменилась, а пользователь
+ *   ещё не ушёл с первой страницы, она один раз подменяется.
+ *
+ * Перед самым первым стартом на https-источнике localStorage переносится
+ * со старого file://, см. {@link StorageMigration}.
+ */
+class StartupPipeline {
+    private static final String TAG = "StartupPipeline";
+    private static final String PREFS = "startup";
+    private static final String KEY_LINK = "link";
+    private static final String SETTINGS_FILE = "settings.json";
+
+    private final Context context;
+    private final LocalAssetServer assets;
+    private final StorageMigration migration;
+    private final ConnectivityManager connectivity;
+    private final SharedPreferences prefs;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final ExecutorService io = Executors.newFixedThreadPool(2);
+
+    // Всё ниже — только на главном потоке
+    private WebView webView;
+    private ConnectivityManager.NetworkCallback callback;
+    private boolean online;
+    @Nullable
+    private String link;
+    private boolean settingsRead;
+    @Nullable
+    private String loadedUrl;
+    private int pageTrace;
+    private boolean traceDumped;
+
+    StartupPipeline(Context context, LocalAssetServer assets, StorageMigration migration) {
+        this.context = context;
+        this.assets = assets;
+        this.migration = migration;
+        this.connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.link = prefs.getString(KEY_LINK, null);
+        int trace = StartupTrace.begin("connectivity");
+        this.online = isValidated(connectivity != null ? connectivity.getActiveNetwork() : null);
+        StartupTrace.end(trace);
+    }
+
+    /**
+     * Запускает фоновые задачи, которые не зависят от WebView: чтение настроек
+     * и прогрев кэша ассетов. Вызывается до setContentView.
+     */
+    void prewarm() {
+        final String expected = target();
+        io.execute(() -> {
+            if (!expected.startsWith(LocalAssetServer.ORIGIN)) return;
+            int trace = StartupTrace.begin("prefetch", expected);
+            assets.prefetch(expected);
+            StartupTrace.end(trace);
+        });
+        io.execute(() -> {
+            int trace = StartupTrace.begin("settings");
+            final String fresh = readSettingsLink();
+            StartupTrace.end(trace);
+            main.post(() -> onSettings(fresh));
+        });
+    }
+
+    /** Загружает стартовую страницу сразу, не дожидаясь сети и настроек. */
+    void start(WebView view) {
+        webView = view;
+        if (callback == null && connectivity != null) {
+            callback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities caps) {
+                    final boolean validated = isValidated(caps);
+                    main.post(() -> onConnectivity(validated));
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    main.post(() -> onConnectivity(false));
+                }
+            };
+            try {
+                connectivity.registerDefaultNetworkCallback(callback);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Cannot register network callback", e);
+                callback = null;
+            }
+        }
+        if (migration.pending()) {
+            migration.run(view, this::loadTarget);
+            return;
+        }
+        loadTarget();
+    }
+
+    private void loadTarget() {
+        if (webView == null) return;
+        loadedUrl = target();
+        Log.d(TAG, "start online=" + online + " url=" + loadedUrl);
+        load(loadedUrl);
+    }
+
+    void stop() {
+        if (callback != null) {
+            try {
+                connectivity.unregisterNetworkCallback(callback);
+            } catch (RuntimeException ignored) {
+            }
+            callback = null;
+        }
+        main.removeCallbacksAndMessages(null);
+        io.shutdownNow();
+        webView = null;
+    }
+
+    private void onSettings(@Nullable String fresh) {
+        settingsRead = true;
+        if (fresh == null ? link == null : fresh.equals(link)) return;
+        link = fresh;
+        if (fresh == null) {
+            prefs.edit().remove(KEY_LINK).apply();
+        } else {
+            prefs.edit().putString(KEY_LINK, fresh).apply();
+        }
+        retarget();
+    }
+
+    private void onConnectivity(boolean validated) {
+        if (validated == online) return;
+        online = validated;
+        // Потеря сети уже открытую страницу не трогает, переключаемся только в сеть
+        if (validated) retarget();
+    }
+
+    /** Подменяет стартовую страницу, если цель изменилась и пользователь с неё не ушёл. */
+    private void retarget() {
+        if (webView == null || loadedUrl == null) return;
+        String next = target();
+        if (next.equals(loadedUrl)) return;
+        String current = webView.getUrl();
+        if (current != null && !current.equals(loadedUrl)) return;
+        Log.d(TAG, "retarget online=" + online + " settings=" + settingsRead + " url=" + next);
+        loadedUrl = next;
+        load(next);
+    }
+
+    private void load(String url) {
+        int trace = StartupTrace.begin("loadUrl", url);
+        webView.loadUrl(url);
+        StartupTrace.end(trace);
+    }
+
+    /** Каждая загрузка страницы — отдельная фаза в {@link StartupTrace}. */
+    void onPageStarted(String url) {
+        StartupTrace.end(pageTrace);
+        pageTrace = StartupTrace.begin("page", url);
+    }
+
+    /** После первой загруженной страницы шкала старта сохраняется в startup-trace.json. */
+    void onPageFinished(String url) {
+        StartupTrace.end(pageTrace);
+        pageTrace = 0;
+        if (traceDumped) return;
+        traceDumped = true;
+        final File target = new File(filesDir(), StartupTrace.FILE_NAME);
+        io.execute(() -> StartupTrace.dump(target));
+    }
+
+    /**
+     * Офлайн — index.html; в сети — ссылка из settings.json или page/hello.html.
+     */
+    private String target() {
+        if (!online) return assets.url("index.html");
+        if (link != null && !link.isEmpty()) return assets.rewrite(link);
+        return assets.url("page/hello.html");
+    }
+
+    private boolean isValidated(@Nullable Network network) {
+        if (network == null || connectivity == null) return false;
+        try {
+            return isValidated(connectivity.getNetworkCapabilities(network));
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static boolean isValidated(@Nullable NetworkCapabilities caps) {
+        return caps != null
+                && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    }
+
+    /** Тот же каталог, что baseDir у {@link FileInterfaceNew}. */
+    private File filesDir() {
+        File dir = context.getExternalFilesDir(null);
+        return dir != null ? dir : context.getFilesDir();
+    }
+
+    /** @return поле link из settings.json или null */
+    @Nullable
+    private String readSettingsLink() {
+        File file = new File(filesDir(), SETTINGS_FILE);
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) Math.min(file.length(), 64 * 1024)];
+            int n = 0;
+            int r;
+            while (n < bytes.length && (r = in.read(bytes, n, bytes.length - n)) != -1) n += r;
+            String text = new String(bytes, 0, n, StandardCharsets.UTF_8).trim();
+            if (text.startsWith("\uFEFF")) text = text.substring(1).trim();
+            if (!text.startsWith("{")) return null;
+            String value = new JSONObject(text).optString(KEY_LINK, null);
+            return value == null || value.isEmpty() ? null : value;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException | org.json.JSONException e) {
+            Log.w(TAG, "Cannot read " + SETTINGS_FILE + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.eenot.eeditor;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Временная шкала холодного старта и загрузок страниц.
+ *
+ * Фазы отмечаются парой {@link #begin}/{@link #end}; время монотонное
+ * (elapsedRealtimeNanos) и считается от старта процесса. Начало и конец могут
+ * быть в разных потоках, поэтому в systrace фазы идут асинхронными секциями
+ * (Android 10+). Записи хранятся в кольцевом буфере, шкалу можно получить
+ * через мост (Android.getStartupTrace) или сохранить в JSON.
+ */
+final class StartupTrace {
+    private static final String TAG = "StartupTrace";
+    private static final int CAPACITY = 256;
+    static final String FILE_NAME = "startup-trace.json";
+
+    // Кольцевой буфер фаз, под synchronized (StartupTrace.class)
+    private static final String[] names = new String[CAPACITY];
+    private static final String[] details = new String[CAPACITY];
+    private static final String[] threads = new String[CAPACITY];
+    private static final long[] starts = new long[CAPACITY];
+    private static final long[] ends = new long[CAPACITY];
+    private static int nextId = 1;
+
+    private static final long PROCESS_START_NS = Process.getStartElapsedRealtime() * 1_000_000L;
+
+    private StartupTrace() {
+    }
+
+    /** @return id фазы для {@link #end} */
+    static int begin(String name) {
+        return begin(name, null);
+    }
+
+    static int begin(String name, String detail) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        int id;
+        synchronized (StartupTrace.class) {
+            id = nextId++;
+            int slot = id % CAPACITY;
+            names[slot] = name;
+            details[slot] = detail;
+            threads[slot] = Thread.currentThread().getName();
+            starts[slot] = now;
+            ends[slot] = -1;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) Trace.beginAsyncSection(name, id);
+        return id;
+    }
+
+    static void end(int id) {
+        if (id <= 0) return;
+        long now = SystemClock.elapsedRealtimeNanos();
+        String name;
+        synchronized (StartupTrace.class) {
+            int slot = id % CAPACITY;
+            // Запись уже вытеснена более новыми
+            if (nextId - id > CAPACITY || ends[slot] >= 0) return;
+            ends[slot] = now;
+            name = names[slot];
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) Trace.endAsyncSection(name, id);
+    }
+
+    /**
+     * @return {ok, processStart, events:[{name, detail, thread, start, duration}]};
+     *         start — мс от старта процесса, duration — мс или -1, если фаза не закончилась
+     */
+    static String toJson() {
+        JsonCodec.Writer w = JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("processStart").value(PROCESS_START_NS / 1_000_000L)
+                .name("events").beginArray();
+        synchronized (StartupTrace.class) {
+            int first = Math.max(1, nextId - CAPACITY);
+            for (int id = first; id < nextId; id++) {
+                int slot = id % CAPACITY;
+                w.beginObject()
+                        .name("name").value(names[slot])
+                        .name("detail").value(details[slot])
+                        .name("thread").value(threads[slot])
+                        .name("start").value(millis(starts[slot] - PROCESS_START_NS))
+                        .name("duration").value(ends[slot] < 0 ? -1 : millis(ends[slot] - starts[slot]))
+                        .endObject();
+            }
+        }
+        return w.endArray().endObject().toString();
+    }
+
+    /** Сохраняет шкалу в файл целиком (через временный файл). */
+    static boolean dump(File target) {
+        try {
+            AtomicFileWriter.replace(target, toJson().getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot dump trace to " + target + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+}
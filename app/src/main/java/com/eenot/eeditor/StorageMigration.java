@@ -0,0 +1,124 @@
+package com.eenot.eeditor;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebView;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Однократный перенос localStorage со старого источника file:// на
+ * https-источник ассетов (JS-объект AndroidMigration).
+ *
+ * До перехода на {@link LocalAssetServer} страницы открывались с
+ * file:///android_asset/, и всё, что они хранили (язык, принятие условий,
+ * guestId, список бэкапов и т. д.), осталось у источника file://.
+ * При первом запуске новой версии:
+ * 1. грузится file:///android_asset/migrate.html и отдаёт хранилище в {@link #exportStorage};
+ * 2. та же страница грузится с https-источника, берёт снимок из {@link #pendingStorage()}
+ *    и записывает ключи, которых там ещё нет;
+ * 3. {@link #finish()} ставит отметку и передаёт управление обычному старту.
+ *
+ * Если что-то пошло не так, старт продолжается без отметки, и перенос
+ * повторится при следующем запуске: старое хранилище не трогается.
+ */
+class StorageMigration {
+    private static final String TAG = "StorageMigration";
+    private static final String PREFS = "startup";
+    private static final String KEY_DONE = "storageMigrated";
+    static final String PAGE = "migrate.html";
+    private static final long TIMEOUT_MS = 15_000;
+
+    private final SharedPreferences prefs;
+    private final LocalAssetServer assets;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    // Пишется на главном потоке, читается из потока JS-моста
+    @Nullable
+    private volatile String dump;
+
+    // Всё ниже — только на главном потоке
+    @Nullable
+    private WebView webView;
+    @Nullable
+    private Runnable then;
+    private final Runnable timeout = () -> {
+        Log.w(TAG, "Migration timed out, will retry on next start");
+        proceed();
+    };
+
+    StorageMigration(Context context, LocalAssetServer assets) {
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.assets = assets;
+    }
+
+    /** @return true, если перенос ещё не выполнялся */
+    boolean pending() {
+        return !prefs.getBoolean(KEY_DONE, false);
+    }
+
+    /**
+     * Запускает перенос и по окончании вызывает then на главном потоке.
+     * Повторный вызов во время переноса только заменяет then.
+     */
+    void run(WebView view, Runnable then) {
+        boolean running = this.then != null;
+        this.then = then;
+        if (running) return;
+        webView = view;
+        dump = null;
+        main.postDelayed(timeout, TIMEOUT_MS);
+        view.loadUrl(LocalAssetServer.FILE_ASSET_PREFIX + PAGE);
+    }
+
+    /** Снимок localStorage источника file:// в виде JSON-объекта ключ → строка. */
+    @JavascriptInterface
+    public String exportStorage(final String json) {
+        main.post(() -> {
+            if (then == null || webView == null) return;
+            dump = json;
+            webView.loadUrl(assets.url(PAGE));
+        });
+        return JsonCodec.ok();
+    }
+
+    /** @return снимок из {@link #exportStorage} или "{}" */
+    @JavascriptInterface
+    public String pendingStorage() {
+        String value = dump;
+        return value != null ? value : "{}";
+    }
+
+    @JavascriptInterface
+    public String finish() {
+        main.post(() -> {
+            if (then == null || dump == null) return;
+            prefs.edit().putBoolean(KEY_DONE, true).apply();
+            Log.i(TAG, "localStorage migrated to " + LocalAssetServer.ORIGIN);
+            proceed();
+        });
+        return JsonCodec.ok();
+    }
+
+    @JavascriptInterface
+    public String fail(final String message) {
+        main.post(() -> {
+            if (then == null) return;
+            Log.w(TAG, "Migration failed: " + message);
+            proceed();
+        });
+        return JsonCodec.ok();
+    }
+
+    private void proceed() {
+        main.removeCallbacks(timeout);
+        Runnable next = then;
+        then = null;
+        webView = null;
+        dump = null;
+        if (next != null) next.run();
+    }
+}
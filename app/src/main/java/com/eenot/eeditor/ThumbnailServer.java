@@ -0,0 +1,340 @@
+package com.eenot.eeditor;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+import android.util.LruCache;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Уменьшенные копии картинок под нужную ширину.
+ *
+ * URL: {@code https://appassets.androidplatform.net/thumb/<ширина>/assets/<путь>}
+ * для ассетов и {@code .../thumb/<ширина>/library/<путь>} для картинок
+ * библиотеки (источник берётся через {@link LibraryCache}). Ширина
+ * округляется вверх до шага {@link #STEP}, чтобы вариантов было немного.
+ * Готовые webp лежат в памяти (LruCache) и на диске в cacheDir/thumbs;
+ * исходники не меняются. Если картинку не декодировать (svg) или она и так
+ * не шире нужного, отдаётся оригинал.
+ */
+class ThumbnailServer {
+    private static final String TAG = "ThumbnailServer";
+    static final String PREFIX = LocalAssetServer.ORIGIN + "/thumb/";
+
+    static final int STEP = 64;
+    static final int MIN_WIDTH = 32;
+    static final int MAX_WIDTH = 1536;
+
+    private static final int MEMORY_BYTES = 6 * 1024 * 1024;
+    private static final long DISK_BYTES = 32L * 1024 * 1024;
+    private static final int QUALITY = 80;
+    private static final long WAIT_SECONDS = 15;
+    // Картинки библиотеки могут обновиться на сервере
+    private static final long LIBRARY_TTL_MS = 24 * 60 * 60 * 1000L;
+
+    private static final String CACHE_ASSET = "public, max-age=31536000, immutable";
+    private static final String CACHE_LIBRARY = "public, max-age=86400";
+
+    /** Разобранный адрес уменьшенной картинки. */
+    static final class Request {
+        final int width;
+        final boolean library;
+        final String path;
+
+        Request(int width, boolean library, String path) {
+            this.width = width;
+            this.library = library;
+            this.path = path;
+        }
+    }
+
+    private static final class Variant {
+        final byte[] bytes;
+        final String mimeType;
+
+        Variant(byte[] bytes, String mimeType) {
+            this.bytes = bytes;
+            this.mimeType = mimeType;
+        }
+    }
+
+    private final LocalAssetServer assets;
+    private final LibraryCache library;
+    private final File diskDir;
+    private final ExecutorService pool;
+    private final Map<String, Future<Variant>> inFlight = new ConcurrentHashMap<>();
+    private final LruCache<String, Variant> memory = new LruCache<String, Variant>(MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(String key, Variant value) {
+            return value.bytes.length;
+        }
+    };
+    private final AtomicInteger writesSinceTrim = new AtomicInteger();
+
+    ThumbnailServer(LocalAssetServer assets, LibraryCache library, File diskDir) {
+        this.assets = assets;
+        this.library = library;
+        this.diskDir = diskDir;
+        int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "thumbnail");
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+
+    /**
+     * @return ответ или null, если url не относится к уменьшенным картинкам
+     */
+    @Nullable
+    WebResourceResponse handle(String url) {
+        if (url == null || !url.startsWith(PREFIX)) return null;
+        Request req = parse(url);
+        if (req == null) return notFound();
+
+        final String key = req.width + "|" + (req.library ? "library/" : "assets/" + assets.build() + "/") + req.path;
+        Variant variant = memory.get(key);
+        if (variant == null) {
+            try {
+                variant = load(key, req);
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot make thumbnail for " + req.path + ": " + e.getMessage());
+                return notFound();
+            }
+        }
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", req.library ? CACHE_LIBRARY : CACHE_ASSET);
+        headers.put("Access-Control-Allow-Origin", "*");
+        return new WebResourceResponse(variant.mimeType, null, 200, "OK", headers,
+                new ByteArrayInputStream(variant.bytes));
+    }
+
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Диск и исходник читаются на вызывающем потоке (WebView IO): загрузка картинки
+     * библиотеки из сети не занимает маленький пул, где только декодирование и сжатие.
+     * Один вариант сжимается один раз, даже если его просят несколько запросов сразу.
+     */
+    private Variant load(final String key, final Request req) throws IOException {
+        Variant cached = fromDisk(key, req);
+        if (cached != null) {
+            memory.put(key, cached);
+            return cached;
+        }
+        Future<Variant> future = inFlight.get(key);
+        if (future == null) {
+            final byte[] source = readSource(req);
+            future = inFlight.computeIfAbsent(key, k -> pool.submit(() -> {
+                try {
+                    Variant v = generate(key, req, source);
+                    memory.put(key, v);
+                    return v;
+                } finally {
+                    inFlight.remove(key);
+                }
+            }));
+        }
+        try {
+            return future.get(WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+    }
+
+    @Nullable
+    private Variant fromDisk(String key, Request req) {
+        File file = diskFile(key);
+        if (!file.isFile()) return null;
+        if (req.library && System.currentTimeMillis() - file.lastModified() > LIBRARY_TTL_MS) return null;
+        try {
+            return new Variant(Files.readAllBytes(file.toPath()), "image/webp");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Variant generate(String key, Request req, byte[] source) {
+        String sourceMime = LocalAssetServer.mimeType(req.path);
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(source, 0, source.length, bounds);
+        // svg и прочее, что не декодируется, а также маленькие картинки — как есть
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0 || bounds.outWidth <= req.width) {
+            return new Variant(source, sourceMime);
+        }
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = sampleSize(bounds.outWidth, req.width);
+        Bitmap decoded = BitmapFactory.decodeByteArray(source, 0, source.length, opts);
+        if (decoded == null) return new Variant(source, sourceMime);
+        int height = Math.max(1, Math.round(bounds.outHeight * (req.width / (float) bounds.outWidth)));
+        Bitmap scaled = decoded.getWidth() == req.width
+                ? decoded : Bitmap.createScaledBitmap(decoded, req.width, height, true);
+        if (scaled != decoded) decoded.recycle();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        @SuppressWarnings("deprecation")
+        Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+        boolean ok = scaled.compress(format, QUALITY, out);
+        scaled.recycle();
+        if (!ok || out.size() >= source.length) return new Variant(source, sourceMime);
+
+        byte[] bytes = out.toByteArray();
+        try {
+            diskDir.mkdirs();
+            AtomicFileWriter.replace(diskFile(key), bytes);
+            if (writesSinceTrim.incrementAndGet() % 32 == 0) {
+                trimDisk();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot store thumbnail: " + e.getMessage());
+        }
+        return new Variant(bytes, "image/webp");
+    }
+
+    private byte[] readSource(Request req) throws IOException {
+        InputStream in;
+        if (req.library) {
+            LibraryCache.Response r = library.get(LibraryCache.BASE_URL + req.path, "GET", null);
+            if (r == null || r.status != 200) {
+                if (r != null) r.body.close();
+                throw new IOException("Source unavailable (" + (r == null ? "none" : r.status) + ")");
+            }
+            in = r.body;
+        } else {
+            in = assets.openAsset(req.path);
+        }
+        try (InputStream is = in) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            byte[] tmp = new byte[64 * 1024];
+            int n;
+            while ((n = is.read(tmp)) != -1) buf.write(tmp, 0, n);
+            return buf.toByteArray();
+        }
+    }
+
+    /** Удаляет самые старые варианты, пока папка больше лимита. */
+    private void trimDisk() {
+        File[] files = diskDir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) total += f.length();
+        if (total <= DISK_BYTES) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : files) {
+            if (total <= DISK_BYTES) break;
+            total -= f.length();
+            f.delete();
+        }
+    }
+
+    private File diskFile(String key) {
+        return new File(diskDir, sha1(key) + ".webp");
+    }
+
+    /** @return запрос или null, если адрес неверный */
+    @Nullable
+    static Request parse(String url) {
+        if (url == null || !url.startsWith(PREFIX)) return null;
+        String rest = url.substring(PREFIX.length());
+        int cut = rest.indexOf('?');
+        if (cut < 0) cut = rest.indexOf('#');
+        if (cut >= 0) rest = rest.substring(0, cut);
+        int slash = rest.indexOf('/');
+        if (slash <= 0) return null;
+        int width;
+        try {
+            width = Integer.parseInt(rest.substring(0, slash));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        rest = rest.substring(slash + 1);
+        boolean library;
+        if (rest.startsWith("assets/")) {
+            library = false;
+            rest = rest.substring("assets/".length());
+        } else if (rest.startsWith("library/")) {
+            library = true;
+            rest = rest.substring("library/".length());
+        } else {
+            return null;
+        }
+        String path = decode(rest);
+        if (path.isEmpty() || path.contains("..") || path.startsWith("/")) return null;
+        return new Request(bucket(width), library, path);
+    }
+
+    /** Ширина, округлённая вверх до шага и зажатая в допустимые пределы. */
+    static int bucket(int width) {
+        int w = Math.max(MIN_WIDTH, Math.min(MAX_WIDTH, width));
+        return Math.min(MAX_WIDTH, (w + STEP - 1) / STEP * STEP);
+    }
+
+    /** Наибольшая степень двойки, при которой картинка всё ещё не уже target. */
+    static int sampleSize(int sourceWidth, int target) {
+        int sample = 1;
+        while (sourceWidth / (sample * 2) >= target) sample *= 2;
+        return sample;
+    }
+
+    private static String decode(String path) {
+        try {
+            return java.net.URLDecoder.decode(path.replace("+", "%2B"), "UTF-8");
+        } catch (Exception e) {
+            return path;
+        }
+    }
+
+    private static String sha1(String s) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-1").digest(s.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(40);
+            for (byte b : d) sb.append(String.format(Locale.ROOT, "%02x", b & 0xFF));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(s.hashCode());
+        }
+    }
+
+    private static WebResourceResponse notFound() {
+        return new WebResourceResponse("text/plain", "UTF-8", 404, "Not Found", null,
+                new ByteArrayInputStream(new byte[0]));
+    }
+}
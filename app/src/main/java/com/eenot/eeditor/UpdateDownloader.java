@@ -0,0 +1,321 @@
+package com.eenot.eeditor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * HTTP для обновления сценариев: условные запросы и докачка.
+ *
+ * ETag/Last-Modified каждого URL запоминаются в файле состояния; повторный
+ * запрос идёт с If-None-Match/If-Modified-Since, и 304 означает, что скачивать
+ * нечего. Валидаторы {@link #fetchText} сохраняются только после {@link #commit},
+ * то есть когда обновление по этой версии установлено. Архив качается в target.part; оборванная загрузка продолжается
+ * запросом Range с If-Range, если сервер отдал тот же ETag.
+ */
+class UpdateDownloader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    interface Progress {
+        /**
+         * @param total -1, если размер неизвестен
+         * @throws IOException чтобы прервать загрузку (например, при отмене)
+         */
+        void onBytes(long done, long total) throws IOException;
+    }
+
+    private final File stateFile;
+    private final HttpSource http;
+    private final Properties state = new Properties();
+    // url → {ETag, Last-Modified} из fetchText, ещё не подтверждённые commit()
+    private final Map<String, String[]> pending = new HashMap<>();
+
+    UpdateDownloader(File stateFile) {
+        this(stateFile, new HttpSource.UrlConnection());
+    }
+
+    UpdateDownloader(File stateFile, HttpSource http) {
+        this.stateFile = stateFile;
+        this.http = http;
+        if (stateFile.exists()) {
+            try (InputStream in = new FileInputStream(stateFile)) {
+                state.load(in);
+            } catch (IOException ignored) {
+                // Повреждённое состояние — просто качаем без условий
+            }
+        }
+    }
+
+    /**
+     * Первая строка текстового ресурса (например, version.txt).
+     * Пока не вызван {@link #commit(String)}, следующий запрос останется безусловным.
+     *
+     * @return текст или null, если ресурс не менялся с последнего commit (304)
+     */
+    synchronized String fetchText(String url) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        addValidators(headers, url);
+        try (HttpSource.Response r = http.get(url, headers)) {
+            int code = r.code();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) return null;
+            if (code != HttpURLConnection.HTTP_OK) throw new IOException("Server returned HTTP " + code + " for " + url);
+            String line;
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(r.body(), StandardCharsets.UTF_8))) {
+                line = reader.readLine();
+            }
+            pending.put(url, new String[]{r.header("ETag"), r.header("Last-Modified")});
+            return line == null ? "" : line.trim();
+        }
+    }
+
+    /**
+     * Скачивает url в target.
+     *
+     * @param conditional если true и target уже есть, запрос идёт с If-None-Match
+     * @return false, если сервер ответил 304 и target остался прежним
+     */
+    synchronized boolean download(String url, File target, boolean conditional, Progress progress) throws IOException {
+        File part = new File(target.getPath() + ".part");
+        String partTag = state.getProperty(key(url, "partEtag"));
+        long have = part.exists() && partTag != null ? part.length() : 0;
+        if (have == 0 && part.exists()) part.delete();
+
+        Map<String, String> headers = new HashMap<>();
+        if (conditional && target.exists()) addValidators(headers, url);
+        if (have > 0) {
+            headers.put("Range", "bytes=" + have + "-");
+            headers.put("If-Range", partTag);
+        }
+        try (HttpSource.Response r = http.get(url, headers)) {
+            int code = r.code();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) return false;
+
+            boolean append;
+            long total;
+            if (code == HttpURLConnection.HTTP_PARTIAL && have > 0 && rangeStartsAt(r, have)) {
+                append = true;
+                long rest = r.contentLength();
+                total = rest >= 0 ? have + rest : -1;
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                // Сервер не поддерживает Range или файл изменился — с начала
+                append = false;
+                have = 0;
+                total = r.contentLength();
+            } else if (code == 416) {
+                // Кусок больше файла на сервере: начнём заново в следующий раз
+                part.delete();
+                state.remove(key(url, "partEtag"));
+                saveState();
+                throw new IOException("Range not satisfiable for " + url);
+            } else {
+                throw new IOException("Server returned HTTP " + code + " for " + url);
+            }
+
+            String etag = r.header("ETag");
+            if (etag != null && !isWeak(etag)) {
+                state.setProperty(key(url, "partEtag"), etag);
+            } else {
+                state.remove(key(url, "partEtag"));
+            }
+            saveState();
+
+            long done = have;
+            try (InputStream in = r.body();
+                 OutputStream out = new FileOutputStream(part, append)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                if (progress != null) progress.onBytes(done, total);
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                    done += n;
+                    if (progress != null) progress.onBytes(done, total);
+                }
+            }
+            if (total >= 0 && done != total) {
+                throw new IOException("Incomplete download: " + done + " of " + total);
+            }
+
+            if (target.exists() && !target.delete()) throw new IOException("Cannot replace " + target);
+            if (!part.renameTo(target)) throw new IOException("Cannot rename " + part);
+            state.remove(key(url, "partEtag"));
+            rememberValidators(url, r.header("ETag"), r.header("Last-Modified"));
+            return true;
+        }
+    }
+
+    /**
+     * Безусловная загрузка без докачки и без записи состояния — для мелких
+     * файлов, которые всё равно проверяются по хэшу.
+     */
+    void fetch(String url, File target, Progress progress) throws IOException {
+        try (HttpSource.Response r = http.get(url, null)) {
+            int code = r.code();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) throw new FileNotFoundException(url);
+            if (code != HttpURLConnection.HTTP_OK) throw new IOException("Server returned HTTP " + code + " for " + url);
+            long total = r.contentLength();
+            long done = 0;
+            try (InputStream in = r.body();
+                 OutputStream out = new FileOutputStream(target)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                    done += n;
+                    if (progress != null) progress.onBytes(done, total);
+                }
+            }
+        }
+    }
+
+    /**
+     * Сохраняет валидаторы последнего {@link #fetchText}: ответ обработан
+     * (обновление установлено или не нужно), дальше можно спрашивать условно.
+     */
+    synchronized void commit(String url) {
+        String[] validators = pending.remove(url);
+        if (validators != null) rememberValidators(url, validators[0], validators[1]);
+    }
+
+    /** Забывает сохранённые валидаторы url, следующий запрос будет безусловным. */
+    synchronized void forget(String url) {
+        pending.remove(url);
+        state.remove(key(url, "etag"));
+        state.remove(key(url, "lastModified"));
+        saveState();
+    }
+
+    private void addValidators(Map<String, String> headers, String url) {
+        String etag = state.getProperty(key(url, "etag"));
+        if (etag != null) headers.put("If-None-Match", etag);
+        String lastModified = state.getProperty(key(url, "lastModified"));
+        if (lastModified != null) headers.put("If-Modified-Since", lastModified);
+    }
+
+    private void rememberValidators(String url, String etag, String lastModified) {
+        putOrRemove(key(url, "etag"), etag);
+        putOrRemove(key(url, "lastModified"), lastModified);
+        saveState();
+    }
+
+    private void putOrRemove(String key, String value) {
+        if (value == null) {
+            state.remove(key);
+        } else {
+            state.setProperty(key, value);
+        }
+    }
+
+    private void saveState() {
+        try {
+            java.io.ByteArrayOutputStream buf = new java.io.ByteArrayOutputStream();
+            state.store(buf, null);
+            AtomicFileWriter.replace(stateFile, buf.toByteArray());
+        } catch (IOException ignored) {
+            // Без состояния следующий запрос просто будет безусловным
+        }
+    }
+
+    private static boolean rangeStartsAt(HttpSource.Response r, long offset) {
+        // Content-Range: bytes 100-999/1000
+        String range = r.header("Content-Range");
+        if (range == null) return false;
+        int space = range.indexOf(' ');
+        int dash = range.indexOf('-');
+        if (space < 0 || dash < space) return false;
+        try {
+            return Long.parseLong(range.substring(space + 1, dash).trim()) == offset;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isWeak(String etag) {
+        return etag.startsWith("W/");
+    }
+
+    private static String key(String url, String field) {
+        return field + "." + url;
+    }
+
+    /**
+     * Сравнение версий вида 1.10.2, v2.0-beta: числовые части сравниваются как
+     * числа, версия с суффиксом после '-' младше той же версии без суффикса.
+     *
+     * @return отрицательное, ноль или положительное, как у compareTo
+     */
+    static int compareVersions(String a, String b) {
+        String[] pa = splitVersion(a);
+        String[] pb = splitVersion(b);
+        String[] ca = pa[0].split("\\.");
+        String[] cb = pb[0].split("\\.");
+        for (int i = 0; i < Math.max(ca.length, cb.length); i++) {
+            String x = i < ca.length ? ca[i] : "0";
+            String y = i < cb.length ? cb[i] : "0";
+            int cmp = comparePart(x, y);
+            if (cmp != 0) return cmp;
+        }
+        // 1.0-beta < 1.0
+        if (pa[1].isEmpty() != pb[1].isEmpty()) return pa[1].isEmpty() ? 1 : -1;
+        if (pa[1].isEmpty()) return 0;
+        String[] sa = pa[1].split("\\.");
+        String[] sb = pb[1].split("\\.");
+        for (int i = 0; i < Math.min(sa.length, sb.length); i++) {
+            int cmp = comparePart(sa[i], sb[i]);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(sa.length, sb.length);
+    }
+
+    /** @return {основная часть, суффикс после '-'}; метаданные после '+' отбрасываются */
+    private static String[] splitVersion(String v) {
+        v = v == null ? "" : v.trim();
+        if (v.startsWith("v") || v.startsWith("V")) v = v.substring(1);
+        int plus = v.indexOf('+');
+        if (plus >= 0) v = v.substring(0, plus);
+        int dash = v.indexOf('-');
+        return dash >= 0
+                ? new String[]{v.substring(0, dash), v.substring(dash + 1)}
+                : new String[]{v, ""};
+    }
+
+    private static int comparePart(String x, String y) {
+        boolean nx = isNumber(x);
+        boolean ny = isNumber(y);
+        if (nx && ny) {
+            String tx = stripZeros(x);
+            String ty = stripZeros(y);
+            if (tx.length() != ty.length()) return Integer.compare(tx.length(), ty.length());
+            return tx.compareTo(ty);
+        }
+        // Числа младше слов, как в semver
+        if (nx) return -1;
+        if (ny) return 1;
+        return x.compareTo(y);
+    }
+
+    private static boolean isNumber(String s) {
+        if (s.isEmpty()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') return false;
+        }
+        return true;
+    }
+
+    private static String stripZeros(String s) {
+        int i = 0;
+        while (i < s.length() - 1 && s.charAt(i) == '0') i++;
+        return s.substring(i);
+    }
+}
@@ -0,0 +1,168 @@
+package com.eenot.eeditor;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
+
+/**
+ * Выполняет обновление вместо AsyncTask: на своём потоке, с отменой,
+ * повторами с экспоненциальной задержкой и прореживанием прогресса по времени.
+ *
+ * Колбэки {@link UpdateManager.UpdateCallback} приходят через callbackExecutor
+ * (на Android — главный поток) в том же порядке, что и раньше:
+ * onUpdateProgress(true, 0), затем прогресс, затем onUpdateCompleted.
+ * Часы и задержки подставляются снаружи, поэтому движок проверяется в тестах
+ * без реального ожидания.
+ */
+final class UpdateEngine {
+    interface Clock {
+        long millis();
+
+        void sleep(long ms) throws InterruptedException;
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long millis() {
+            return System.nanoTime() / 1_000_000L;
+        }
+
+        @Override
+        public void sleep(long ms) throws InterruptedException {
+            Thread.sleep(ms);
+        }
+    };
+
+    /** Одна попытка обновления; true — файлы обновились. */
+    interface Job {
+        boolean run(Run run) throws IOException;
+    }
+
+    private final Executor worker;
+    private final Executor callbacks;
+    private final Clock clock;
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final long progressIntervalMs;
+
+    UpdateEngine(Executor worker, Executor callbacks, Clock clock,
+                 int maxAttempts, long baseDelayMs, long maxDelayMs, long progressIntervalMs) {
+        this.worker = worker;
+        this.callbacks = callbacks;
+        this.clock = clock;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.progressIntervalMs = progressIntervalMs;
+    }
+
+    /** Запускает job; при отмене колбэк получит onUpdateCompleted(false). */
+    Run start(Job job, UpdateManager.UpdateCallback callback) {
+        Run run = new Run(callback);
+        deliverProgress(callback, 0);
+        worker.execute(() -> execute(job, run));
+        return run;
+    }
+
+    private void execute(Job job, Run run) {
+        boolean updated = false;
+        run.attach(Thread.currentThread());
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    run.checkCancelled();
+                    updated = job.run(run);
+                    break;
+                } catch (FileNotFoundException e) {
+                    // 404 повтором не лечится
+                    run.error = e;
+                    break;
+                } catch (IOException | RuntimeException e) {
+                    // Таймаут сокета — тоже InterruptedIOException, его повторяем, отмену — нет
+                    run.error = e;
+                    if (run.isCancelled() || attempt >= maxAttempts) break;
+                    try {
+                        clock.sleep(backoff(attempt));
+                    } catch (InterruptedException interrupted) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            run.attach(null);
+        }
+        final boolean result = updated && !run.isCancelled();
+        final UpdateManager.UpdateCallback callback = run.callback;
+        if (callback != null) callbacks.execute(() -> callback.onUpdateCompleted(result));
+    }
+
+    /** Задержка перед попыткой attempt + 1: base, 2·base, 4·base… но не больше maxDelay. */
+    long backoff(int attempt) {
+        long delay = baseDelayMs << Math.min(attempt - 1, 20);
+        return Math.min(delay, maxDelayMs);
+    }
+
+    private void deliverProgress(final UpdateManager.UpdateCallback callback, final int percent) {
+        if (callback != null) callbacks.execute(() -> callback.onUpdateProgress(true, percent));
+    }
+
+    /** Состояние одного запуска: отмена и прореживание прогресса. */
+    final class Run {
+        private final UpdateManager.UpdateCallback callback;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+        // Под synchronized (this)
+        private Thread thread;
+        private int lastPercent;
+        private long lastDelivered = Long.MIN_VALUE;
+
+        Run(UpdateManager.UpdateCallback callback) {
+            this.callback = callback;
+        }
+
+        /**
+         * Прогресс в процентах. Значения не убывают и передаются не чаще
+         * progressIntervalMs, кроме 100 — оно доходит всегда.
+         */
+        void progress(int percent) throws InterruptedIOException {
+            checkCancelled();
+            synchronized (this) {
+                if (percent <= lastPercent) return;
+                long now = clock.millis();
+                if (percent < 100 && lastDelivered != Long.MIN_VALUE && now - lastDelivered < progressIntervalMs) return;
+                lastPercent = percent;
+                lastDelivered = now;
+            }
+            deliverProgress(callback, percent);
+        }
+
+        void checkCancelled() throws InterruptedIOException {
+            if (cancelled || Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Update cancelled");
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /** Прерывает текущую попытку или ожидание перед повтором. */
+        synchronized void cancel() {
+            cancelled = true;
+            if (thread != null) thread.interrupt();
+        }
+
+        /** Последняя ошибка попытки или null. */
+        Throwable error() {
+            return error;
+        }
+
+        private synchronized void attach(Thread t) {
+            // Флаг прерывания не должен достаться следующей задаче этого потока
+            if (t == null && thread != null) Thread.interrupted();
+            thread = t;
+        }
+    }
+}
@@ -5,13 +5,19 @@ import android.app.PendingIntent;
 import android.content.Intent;
 import androidx.core.app.NotificationCompat;
 import android.content.Context;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import java.io.*;
-import java.net.URL;
-import java.net.HttpURLConnection;  // Add this import
-import java.util.zip.ZipInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class UpdateManager {
+    private static final String TAG = "UpdateManager";
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_BASE_DELAY_MS = 2_000;
+    private static final long RETRY_MAX_DELAY_MS = 30_000;
+    private static final long PROGRESS_INTERVAL_MS = 100;
     private static final String CHANNEL_ID = "update_channel";
     private static final int NOTIFICATION_ID = 1;
     private final NotificationManager notificationManager;
@@ -19,9 +25,16 @@ public class UpdateManager {
     private final Context context;
     private final String versionUrl = "https://raw.githubusercontent.com/eenot-eenot/EEditor-Warnament-Scenario/refs/heads/main/version.txt";
     private final String repoUrl = "https://github.com/eenot-eenot/EEditor-Warnament-Scenario/archive/refs/heads/main.zip";
+    // Отдельные файлы и manifest.json для обновления по разнице
+    private final String rawBaseUrl = "https://raw.githubusercontent.com/eenot-eenot/EEditor-Warnament-Scenario/refs/heads/main/";
+    private final String manifestUrl = rawBaseUrl + "manifest.json";
     private final File localVersionFile;
     private final File scenarioDir;
+    private final UpdateDownloader downloader;
+    private final ScenarioInstaller installer;
     private UpdateCallback callback;
+    private final UpdateEngine engine;
+    private volatile UpdateEngine.Run currentRun;
 
     public interface UpdateCallback {
         void onUpdateCompleted(boolean updated);
@@ -32,6 +45,18 @@ public class UpdateManager {
         this.context = context;
         this.localVersionFile = new File(context.getFilesDir(), "version.txt");
         this.scenarioDir = new File(context.getFilesDir(), "scenario");
+        this.downloader = new UpdateDownloader(new File(context.getFilesDir(), "update-state.properties"));
+        this.installer = new ScenarioInstaller(scenarioDir, downloader);
+        // Свой поток вместо общего последовательного исполнителя AsyncTask
+        ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "scenario-update");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        Handler main = new Handler(Looper.getMainLooper());
+        this.engine = new UpdateEngine(worker, main::post, UpdateEngine.SYSTEM_CLOCK,
+                MAX_ATTEMPTS, RETRY_BASE_DELAY_MS, RETRY_MAX_DELAY_MS, PROGRESS_INTERVAL_MS);
         notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
         builder = createNotificationBuilder();
     }
@@ -49,182 +74,109 @@ public class UpdateManager {
 
     public void checkAndUpdate(UpdateCallback callback) {
         this.callback = callback;
-        new UpdateCheckTask().execute();
+        cancel();
+        currentRun = engine.start(this::runUpdate, callback);
+    }
+
+    /** Прерывает текущее обновление; колбэк получит onUpdateCompleted(false). */
+    public void cancel() {
+        UpdateEngine.Run run = currentRun;
+        if (run != null) run.cancel();
     }
 
     public File getIndexHtmlFile() {
         return new File(scenarioDir, "index.html");
     }
 
-    private class UpdateCheckTask extends AsyncTask<Void, Integer, Boolean> {
+    /** Одна попытка обновления, при ошибке движок повторит её с задержкой. */
+    private boolean runUpdate(UpdateEngine.Run run) throws IOException {
+        try {
+            String localVersion = "";
 
-        @Override
-        protected void onPreExecute() {
-            super.onPreExecute();
-            if (callback != null) {
-                callback.onUpdateProgress(true, 0);
+            if (localVersionFile.exists()) {
+                localVersion = readFile(localVersionFile);
             }
-        }
 
-        @Override
-        protected Boolean doInBackground(Void... voids) {
-            try {
-                publishProgress(0); // Начало проверки
-                String remoteVersion = readUrl(versionUrl);
-                String localVersion = "";
-                
-                if (localVersionFile.exists()) {
-                    localVersion = readFile(localVersionFile);
-                }
-
-                if (localVersion.isEmpty() || remoteVersion.compareTo(localVersion) > 0) {
-                    downloadAndExtract();
-                    writeFile(localVersionFile, remoteVersion);
-                    return true;
-                }
-                // Если обновление не требуется, отправляем 100% и завершаем
-                publishProgress(100);
-                return false;
-            } catch (Exception e) {
-                e.printStackTrace();
-                return false;
+            // null — version.txt не менялся с прошлой успешной проверки (304)
+            String remoteVersion = downloader.fetchText(versionUrl);
+            if (remoteVersion == null && localVersion.isEmpty()) {
+                downloader.forget(versionUrl);
+                remoteVersion = downloader.fetchText(versionUrl);
             }
-        }
 
-        @Override
-        protected void onProgressUpdate(Integer... values) {
-            if (callback != null) {
-                callback.onUpdateProgress(true, values[0]);
+            if (remoteVersion != null && (localVersion.isEmpty()
+                    || UpdateDownloader.compareVersions(remoteVersion, localVersion) > 0)) {
+                downloadAndExtract(run);
+                writeFile(localVersionFile, remoteVersion);
+                // Только теперь 304 на version.txt означает «эта версия уже стоит»
+                downloader.commit(versionUrl);
+                return true;
             }
+            downloader.commit(versionUrl);
+            // Если обновление не требуется, отправляем 100% и завершаем
+            run.progress(100);
+            return false;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Update attempt failed: " + e);
+            // Иначе следующая проверка получит 304 и не повторит неудавшееся обновление
+            downloader.forget(versionUrl);
+            throw e;
         }
+    }
 
-        @Override
-        protected void onPostExecute(Boolean updated) {
-            if (callback != null) {
-                // Больше не отправляем прогресс здесь
-                callback.onUpdateCompleted(updated);
-            }
+    private void downloadAndExtract(UpdateEngine.Run run) throws IOException {
+        // Остатки прерванного прошлого обновления
+        installer.recover();
+
+        run.progress(5);
+        ScenarioInstaller.Manifest manifest = installer.fetchManifest(manifestUrl, context.getCacheDir());
+        if (manifest != null) {
+            // Качаются только изменившиеся файлы, остальные переносятся из текущей версии
+            installer.installDelta(manifest, rawBaseUrl, progressRange(run, 5, 95));
+            run.progress(100);
+            return;
         }
 
-        private String readUrl(String urlString) throws IOException {
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(new URL(urlString).openStream()))) {
-                return reader.readLine().trim();
-            }
-        }
+        File tempFile = new File(context.getCacheDir(), "scenario.zip");
 
-        private void downloadAndExtract() throws IOException {
-            File tempFile = new File(context.getCacheDir(), "scenario.zip");
-            
-            // Download with progress
-            publishProgress(5); // Начинаем загрузку
-            URL url = new URL(repoUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.connect();
-            
-            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                throw new IOException("Server returned HTTP " + connection.getResponseCode());
-            }
-            
-            int fileLength = connection.getContentLength();
-            if (fileLength <= 0) {
-                fileLength = 1000000;
-            }
-            
-            try (InputStream input = new BufferedInputStream(connection.getInputStream());
-                 FileOutputStream output = new FileOutputStream(tempFile)) {
-                
-                byte[] buffer = new byte[4096];
-                long totalBytesRead = 0;
-                int bytesRead;
-                int lastProgress = 5;
-                
-                while ((bytesRead = input.read(buffer)) != -1) {
-                    output.write(buffer, 0, bytesRead);
-                    totalBytesRead += bytesRead;
-                    
-                    int progress = 5 + (int) (totalBytesRead * 40 / fileLength); // 5-45%
-                    if (progress > lastProgress) {
-                        publishProgress(progress);
-                        lastProgress = progress;
-                    }
-                }
-            } finally {
-                connection.disconnect();
-            }
+        // Оборванная загрузка продолжится с места обрыва (scenario.zip.part)
+        downloader.download(repoUrl, tempFile, false, progressRange(run, 5, 45));
 
-            // Extract files
-            deleteRecursive(scenarioDir);
-            scenarioDir.mkdirs();
-
-            publishProgress(50); // Начало распаковки
-            int filesExtracted = 0;
-            int totalFiles = countZipEntries(tempFile);
-            
-            try (ZipInputStream zip = new ZipInputStream(new FileInputStream(tempFile))) {
-                java.util.zip.ZipEntry entry;
-                while ((entry = zip.getNextEntry()) != null) {
-                    if (!entry.isDirectory()) {
-                        String fileName = entry.getName().substring(entry.getName().indexOf("/") + 1);
-                        File destFile = new File(scenarioDir, fileName);
-                        File parent = destFile.getParentFile();
-                        if (parent != null) {
-                            parent.mkdirs();
-                        }
-                        
-                        try (FileOutputStream output = new FileOutputStream(destFile)) {
-                            byte[] buffer = new byte[4096];
-                            int len;
-                            while ((len = zip.read(buffer)) > 0) {
-                                output.write(buffer, 0, len);
-                            }
-                        }
-                        
-                        filesExtracted++;
-                        int extractProgress = 50 + (filesExtracted * 45 / Math.max(totalFiles, 1)); // 50-95%
-                        publishProgress(extractProgress);
-                    }
-                    zip.closeEntry();
-                }
-            }
-            
-            tempFile.delete();
-            publishProgress(100); // Завершение
-        }
+        // Распаковка в scenario.staging, рабочая папка подменяется целиком в конце
+        installer.prepareStaging();
+        File stagingDir = installer.stagingDir();
 
-        private int countZipEntries(File zipFile) {
-            int count = 0;
-            try (ZipInputStream zip = new ZipInputStream(new FileInputStream(zipFile))) {
-                while (zip.getNextEntry() != null) {
-                    count++;
-                    zip.closeEntry();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-                return 0;
-            }
-            return Math.max(count, 1);
-        }
+        run.progress(50); // Начало распаковки
+        // Корневая папка архива GitHub (EEditor-Warnament-Scenario-main/) отбрасывается
+        ZipExtractor.extract(tempFile, stagingDir, 1, progressRange(run, 50, 95));
 
-        private void deleteRecursive(File fileOrDirectory) {
-            if (fileOrDirectory.isDirectory()) {
-                for (File child : fileOrDirectory.listFiles()) {
-                    deleteRecursive(child);
-                }
-            }
-            fileOrDirectory.delete();
-        }
+        run.checkCancelled();
+        installer.swap();
+        tempFile.delete();
+        run.progress(100); // Завершение
+    }
 
-        private String readFile(File file) throws IOException {
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                return reader.readLine().trim();
-            }
+    /**
+     * Переводит байты в проценты из диапазона from..to. Прореживание и отмену
+     * берёт на себя {@link UpdateEngine.Run#progress}.
+     */
+    private static UpdateDownloader.Progress progressRange(final UpdateEngine.Run run, final int from, final int to) {
+        return (done, total) -> {
+            if (total <= 0) total = 1000000;
+            run.progress(from + (int) (Math.min(done, total) * (to - from) / total));
+        };
+    }
+
+    private static String readFile(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            return line == null ? "" : line.trim();
         }
+    }
 
-        private void writeFile(File file, String content) throws IOException {
-            try (FileWriter writer = new FileWriter(file)) {
-                writer.write(content);
-            }
+    private static void writeFile(File file, String content) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(content);
         }
     }
 }
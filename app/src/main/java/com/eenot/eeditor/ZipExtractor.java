@@ -0,0 +1,151 @@
+package com.eenot.eeditor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Распаковка архива за один проход.
+ *
+ * Список и размеры файлов берутся из центрального каталога ZipFile, поэтому
+ * отдельный подсчёт записей не нужен. Папки создаются заранее, по одному разу,
+ * файлы распаковываются параллельно (по потоку на ядро) с буфером на поток.
+ * Прогресс — в байтах распакованных данных.
+ */
+final class ZipExtractor {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_THREADS = 4;
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private ZipExtractor() {
+    }
+
+    /**
+     * @param stripComponents сколько первых частей пути отбросить
+     *                        (1 — для архива GitHub, где всё лежит в repo-main/)
+     * @return число распакованных файлов
+     */
+    static int extract(File zipFile, File destDir, int stripComponents, UpdateDownloader.Progress progress)
+            throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            String destPath = destDir.getCanonicalPath() + File.separator;
+            List<ZipEntry> files = new ArrayList<>();
+            List<File> targets = new ArrayList<>();
+            Set<File> dirs = new LinkedHashSet<>();
+            long totalBytes = 0;
+
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = strip(entry.getName(), stripComponents);
+                if (name == null || name.isEmpty()) continue;
+                File target = new File(destDir, name);
+                // Защита от путей вида ../../ в архиве
+                if (!target.getCanonicalPath().startsWith(destPath)) {
+                    throw new IOException("Entry outside of target dir: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    dirs.add(target);
+                    continue;
+                }
+                File parent = target.getParentFile();
+                if (parent != null) dirs.add(parent);
+                files.add(entry);
+                targets.add(target);
+                totalBytes += Math.max(entry.getSize(), 0);
+            }
+
+            for (File dir : dirs) {
+                if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                    throw new IOException("Cannot create " + dir);
+                }
+            }
+
+            final long total = totalBytes;
+            final AtomicLong done = new AtomicLong();
+            int threads = Math.max(1, Math.min(MAX_THREADS,
+                    Math.min(files.size(), Runtime.getRuntime().availableProcessors())));
+            if (threads == 1) {
+                for (int i = 0; i < files.size(); i++) {
+                    copy(zip, files.get(i), targets.get(i), done, total, progress);
+                }
+                return files.size();
+            }
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>(files.size());
+                for (int i = 0; i < files.size(); i++) {
+                    final ZipEntry entry = files.get(i);
+                    final File target = targets.get(i);
+                    futures.add(pool.submit(() -> {
+                        copy(zip, entry, target, done, total, progress);
+                        return null;
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    try {
+                        f.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof IOException) throw (IOException) cause;
+                        throw new IOException(cause);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Extraction cancelled");
+            } finally {
+                pool.shutdownNow();
+            }
+            return files.size();
+        }
+    }
+
+    private static void copy(ZipFile zip, ZipEntry entry, File target, AtomicLong done, long total,
+                             UpdateDownloader.Progress progress) throws IOException {
+        byte[] buffer = BUFFERS.get();
+        try (InputStream in = zip.getInputStream(entry);
+             OutputStream out = new FileOutputStream(target)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Extraction cancelled");
+                out.write(buffer, 0, n);
+                long now = done.addAndGet(n);
+                if (progress != null) progress.onBytes(now, total);
+            }
+        }
+    }
+
+    /** Отбрасывает первые count частей пути; null, если от пути ничего не осталось. */
+    static String strip(String name, int count) {
+        String path = name.replace('\\', '/');
+        for (int i = 0; i < count; i++) {
+            int slash = path.indexOf('/');
+            if (slash < 0) return null;
+            path = path.substring(slash + 1);
+        }
+        return path;
+    }
+}
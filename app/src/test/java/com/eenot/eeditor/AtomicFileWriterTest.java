@@ -0,0 +1,154 @@
+package com.eenot.eeditor;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AtomicFileWriterTest {
+
+    private static File tempDir() throws IOException {
+        return Files.createTempDirectory("atomic").toFile();
+    }
+
+    private static String read(File f) throws IOException {
+        return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void replaceAppendAndPatch() throws IOException {
+        File f = new File(tempDir(), "a.json");
+        AtomicFileWriter.replace(f, bytes("hello world"));
+        AtomicFileWriter.append(f, bytes("!!"));
+        assertEquals("hello world!!", read(f));
+
+        AtomicFileWriter.patch(f, Arrays.asList(
+                new AtomicFileWriter.Patch(0, bytes("H")),
+                new AtomicFileWriter.Patch(6, bytes("W"))), 11);
+        assertEquals("Hello World", read(f));
+        assertEquals(1, f.getParentFile().list().length);
+    }
+
+    @Test
+    public void recoverReplaysCompleteJournal() throws IOException {
+        File f = new File(tempDir(), "b.json");
+        AtomicFileWriter.replace(f, bytes("0123456789"));
+
+        // Падение сразу после записи журнала: сам файл ещё не изменён
+        AtomicFileWriter.writeJournal(AtomicFileWriter.journalFile(f),
+                Arrays.asList(new AtomicFileWriter.Patch(4, bytes("XY"))), -1);
+        assertEquals("0123456789", read(f));
+
+        assertTrue(AtomicFileWriter.recover(f));
+        assertEquals("0123XY6789", read(f));
+        assertFalse(AtomicFileWriter.journalFile(f).exists());
+    }
+
+    @Test
+    public void truncatedJournalIsDiscarded() throws IOException {
+        File dir = tempDir();
+        File f = new File(dir, "d.json");
+        AtomicFileWriter.replace(f, bytes("original"));
+        File journal = new File(dir, ".d.json.journal");
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.writeInt(0x45454a31);
+            raf.writeLong(-1);
+            raf.writeInt(1);
+            raf.writeLong(0);
+            raf.writeInt(100);
+            raf.write(bytes("partial"));
+        }
+        assertFalse(AtomicFileWriter.recover(f));
+        assertFalse(journal.exists());
+        assertEquals("original", read(f));
+    }
+
+    @Test
+    public void journalWithImpossibleCountIsDiscarded() throws IOException {
+        File dir = tempDir();
+        File f = new File(dir, "e.json");
+        AtomicFileWriter.replace(f, bytes("original"));
+        File journal = new File(dir, ".e.json.journal");
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.writeInt(0x45454a31);
+            raf.writeLong(-1);
+            raf.writeInt(Integer.MAX_VALUE);
+            raf.writeLong(0);
+        }
+        assertFalse(AtomicFileWriter.recover(f));
+        assertEquals("original", read(f));
+    }
+
+    @Test
+    public void recoverAllReplaysJournalsInSubdirectories() throws IOException {
+        File dir = tempDir();
+        File f = new File(new File(dir, "sub"), "f.json");
+        f.getParentFile().mkdirs();
+        AtomicFileWriter.replace(f, bytes("0123456789"));
+        AtomicFileWriter.writeJournal(AtomicFileWriter.journalFile(f),
+                Arrays.asList(new AtomicFileWriter.Patch(0, bytes("AB"))), -1);
+        assertEquals(1, AtomicFileWriter.recoverAll(dir));
+        assertEquals("AB23456789", read(f));
+        assertFalse(AtomicFileWriter.journalFile(f).exists());
+    }
+
+    @Test
+    public void concurrentAppendsAreNotLost() throws Exception {
+        final File f = new File(tempDir(), "log.txt");
+        final byte[] line = bytes("0123456789");
+        Thread[] threads = new Thread[4];
+        final IOException[] failure = new IOException[1];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 50; i++) AtomicFileWriter.append(f, line);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertNull(failure[0]);
+        assertEquals(4 * 50 * line.length, f.length());
+        assertFalse(AtomicFileWriter.journalFile(f).exists());
+    }
+
+    @Test
+    public void concurrentReplacesLeaveOneCompleteVersion() throws Exception {
+        File dir = tempDir();
+        final File f = new File(dir, "c.json");
+        final byte[] a = new byte[256 * 1024];
+        final byte[] b = new byte[256 * 1024];
+        Arrays.fill(a, (byte) 'a');
+        Arrays.fill(b, (byte) 'b');
+        Thread[] threads = new Thread[4];
+        final IOException[] failure = new IOException[1];
+        for (int t = 0; t < threads.length; t++) {
+            final byte[] data = t % 2 == 0 ? a : b;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20; i++) AtomicFileWriter.replace(f, data);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertNull(failure[0]);
+        byte[] result = Files.readAllBytes(f.toPath());
+        assertTrue(Arrays.equals(a, result) || Arrays.equals(b, result));
+        assertEquals(1, dir.list().length);
+    }
+}
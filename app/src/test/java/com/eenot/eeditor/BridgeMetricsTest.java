@@ -0,0 +1,41 @@
+package com.eenot.eeditor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BridgeMetricsTest {
+
+    @Test
+    public void bucketsArePowersOfTwoMicroseconds() {
+        assertEquals(0, BridgeMetrics.bucket(999));
+        assertEquals(1, BridgeMetrics.bucket(1_000));
+        assertEquals(2, BridgeMetrics.bucket(3_999));
+        assertEquals(11, BridgeMetrics.bucket(1_500_000));
+        assertEquals(23, BridgeMetrics.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentileReturnsBucketUpperBound() {
+        long[] histogram = new long[24];
+        histogram[3] = 90;
+        histogram[10] = 10;
+        assertEquals(0.008, BridgeMetrics.percentile(histogram, 0.5), 1e-9);
+        assertEquals(0.008, BridgeMetrics.percentile(histogram, 0.9), 1e-9);
+        assertEquals(1.024, BridgeMetrics.percentile(histogram, 0.99), 1e-9);
+        assertEquals(-1, BridgeMetrics.percentile(new long[24], 0.5), 1e-9);
+    }
+
+    @Test
+    public void countsCallsErrorsAndBytes() {
+        BridgeMetrics metrics = new BridgeMetrics();
+        long start = System.nanoTime();
+        metrics.record(BridgeMetrics.READ_FILE, start, 10, "{\"ok\":true}");
+        metrics.record(BridgeMetrics.READ_FILE, start, 4, JsonCodec.error("File not found"));
+        String snapshot = metrics.snapshot();
+        assertTrue(snapshot, snapshot.contains("{\"name\":\"readFile\",\"count\":2,\"errors\":1,\"bytesIn\":28,"));
+        assertTrue(snapshot, snapshot.contains("{\"name\":\"writeFile\",\"count\":0,\"errors\":0,\"bytesIn\":0,\"bytesOut\":0,"));
+        // По границе на каждую корзину, последняя открыта сверху
+        assertTrue(snapshot, snapshot.contains(",2097152,4194304,null],\"methods\":"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.eenot.eeditor;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Микробенчмарк JsonCodec против прежнего MainActivity.JSONObjectEscape
+ * ({@link JsonCodecTest#legacyEscape}) на типичном для сценариев тексте.
+ * В обычный прогон тестов не входит: для замера снимите @Ignore и запустите
+ * ./gradlew testDebugUnitTest --tests "*JsonCodecBenchmark*" -i
+ */
+@Ignore("Бенчмарк, запускается вручную")
+public class JsonCodecBenchmark {
+    private static final int ROUNDS = 20;
+
+    private static String sampleScenario(int lands) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n\t\"lands\": {\n");
+        for (int i = 0; i < lands; i++) {
+            sb.append("\t\t\"land_").append(i).append("\": {\"name\": \"Республика Северная ")
+                    .append(i).append("\", \"name_zh\": \"北方共和国 ").append(i)
+                    .append("\", \"desc\": \"Описание \\\"страны\\\"\\nс переносом\"},\n");
+        }
+        sb.append("\t}\n}");
+        return sb.toString();
+    }
+
+    @Test
+    public void againstLegacyEscaper() {
+        String text = sampleScenario(5000);
+
+        // Прогрев
+        for (int i = 0; i < 3; i++) {
+            JsonCodecTest.legacyEscape(text);
+            JsonCodec.writer().value(text).toString();
+        }
+
+        long legacyNs = 0;
+        long codecNs = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long t0 = System.nanoTime();
+            String a = JsonCodecTest.legacyEscape(text);
+            long t1 = System.nanoTime();
+            String b = JsonCodec.writer().value(text).toString();
+            long t2 = System.nanoTime();
+            legacyNs += t1 - t0;
+            codecNs += t2 - t1;
+            assertTrue(a.length() > 0 && b.length() > 0);
+        }
+
+        System.out.printf("JSON escape, %d chars: legacy %.2f ms, JsonCodec %.2f ms (x%.1f)%n",
+                text.length(),
+                legacyNs / 1e6 / ROUNDS,
+                codecNs / 1e6 / ROUNDS,
+                (double) legacyNs / Math.max(codecNs, 1));
+    }
+}
@@ -0,0 +1,79 @@
+package com.eenot.eeditor;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * JsonCodec сверяется с прежним MainActivity.JSONObjectEscape
+ * на тексте, типичном для сценариев (кириллица, китайский, JSON-разметка).
+ */
+public class JsonCodecTest {
+
+    // Прежний экранировщик из MainActivity, оставлен как точка отсчёта
+    static String legacyEscape(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder();
+        sb.append("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '"': sb.append("\\\""); break;
+                case '\b': sb.append("\\b"); break;
+                case '\f': sb.append("\\f"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c > 0x7E) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append("\"");
+        return sb.toString();
+    }
+
+    @Test
+    public void escapesControlAndQuoteCharacters() {
+        String in = "a\"b\\c\nd\te\u0001fв中";
+        String out = JsonCodec.writer().value(in).toString();
+        assertEquals("\"a\\\"b\\\\c\\nd\\te\\u0001fв中\"", out);
+    }
+
+    @Test
+    public void matchesLegacyOnAscii() {
+        StringBuilder sb = new StringBuilder();
+        for (char c = 0; c < 0x7F; c++) sb.append(c);
+        String in = sb.toString();
+        assertEquals(legacyEscape(in), JsonCodec.writer().value(in).toString());
+    }
+
+    @Test
+    public void utf8EscapeMatchesStringEncoding() {
+        String in = "Привет \"мир\" 中文 😀\n";
+        char[] chars = in.toCharArray();
+        byte[] dst = new byte[chars.length * 6];
+        int n = JsonCodec.escapeUtf8(chars, 0, chars.length, dst);
+        String expected = JsonCodec.writer().value(in).toString();
+        expected = expected.substring(1, expected.length() - 1);
+        assertEquals(expected, new String(dst, 0, n, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void writerProducesCommasAndNesting() {
+        String out = JsonCodec.writer().beginObject()
+                .name("ok").value(true)
+                .name("files").beginArray()
+                .beginObject().name("size").value(1L).endObject()
+                .beginObject().name("size").value(2L).endObject()
+                .endArray()
+                .endObject().toString();
+        assertEquals("{\"ok\":true,\"files\":[{\"size\":1},{\"size\":2}]}", out);
+    }
+}
@@ -0,0 +1,95 @@
+package com.eenot.eeditor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonScannerTest {
+
+    private static JsonScanner scanner(String json) {
+        return new JsonScanner(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void reportsStringsWithPathAndByteOffset() throws IOException {
+        String json = "{\"lands\":{\"RUS\":{\"name\":\"Россия\"}},\"provinces\":[{\"owner\":\"RUS\"},{\"owner\":\"UKR\"}]}";
+        final List<String> seen = new ArrayList<>();
+        assertTrue(scanner(json).scan((s, key, value, offset) -> {
+            if (!key) seen.add(s.path() + "=" + value + "@" + offset);
+            return true;
+        }));
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        int russia = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("\"Ð");
+        assertEquals("lands.RUS.name=Россия@" + russia, seen.get(0));
+        assertTrue(seen.get(2).startsWith("provinces[1].owner=UKR@"));
+        assertEquals(3, seen.size());
+    }
+
+    @Test
+    public void decodesEscapesAndSurrogatePairs() throws IOException {
+        final String[] value = new String[1];
+        scanner("[\"a\\n\\u0431\\ud83d\\ude00\\\"\"]").scan((s, key, v, offset) -> {
+            value[0] = v;
+            return true;
+        });
+        assertEquals("a\nб😀\"", value[0]);
+    }
+
+    @Test
+    public void stopsWhenVisitorAsks() throws IOException {
+        final int[] count = {0};
+        assertFalse(scanner("[\"a\",\"b\",\"c\"]").scan((s, key, v, offset) -> ++count[0] < 2));
+        assertEquals(2, count[0]);
+    }
+
+    @Test
+    public void syntaxErrorHasLineColumnAndPath() {
+        try {
+            scanner("{\n  \"a\": [1, 2,, 3]\n}").validate();
+            fail();
+        } catch (JsonScanner.SyntaxError e) {
+            assertEquals(2, e.line);
+            assertEquals(14, e.column);
+            assertEquals("a[2]", e.path);
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+    }
+
+    @Test
+    public void rejectsTrailingDataAndBadNumbers() {
+        for (String bad : new String[]{"{} {}", "[01]", "[1.]", "{\"a\" 1}", "[\"\t\"]", "[tru]"}) {
+            try {
+                scanner(bad).validate();
+                fail(bad);
+            } catch (IOException expected) {
+                assertTrue(expected instanceof JsonScanner.SyntaxError);
+            }
+        }
+    }
+
+    @Test
+    public void collectsSeveralErrorsAndKeepsGoing() throws IOException {
+        String json = "{\n"
+                + "  \"a\": [1, 2,, 3],\n"
+                + "  \"b\": {\"x\": tru},\n"
+                + "  \"c\": \"ok\"\n"
+                + "  \"d\": 4\n"
+                + "}";
+        List<JsonScanner.SyntaxError> errors = scanner(json).validate(10);
+        assertEquals(3, errors.size());
+        assertEquals("a[2]", errors.get(0).path);
+        assertEquals(3, errors.get(1).line);
+        assertEquals("b.x", errors.get(1).path);
+        assertEquals(5, errors.get(2).line);
+
+        assertEquals(1, scanner(json).validate(1).size());
+        assertTrue(scanner("{\"a\": [1, {\"b\": null}]}").validate(10).isEmpty());
+    }
+}
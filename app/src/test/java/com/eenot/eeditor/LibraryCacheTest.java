@@ -0,0 +1,218 @@
+package com.eenot.eeditor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class LibraryCacheTest {
+    private static final String JSON_URL = LibraryCache.BASE_URL + "lib/1/2/12.json";
+    private static final String PNG_URL = LibraryCache.BASE_URL + "lib/1/2/12.png";
+
+    private HttpServer server;
+    private File dir;
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private volatile String etag = "\"a\"";
+    private volatile String cacheControl = "max-age=300";
+    private final List<String> requests = new ArrayList<>();
+    private HttpSource http;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("library").toFile();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::respond);
+        server.start();
+        // Адреса библиотеки перенаправляются на локальный сервер
+        final String local = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        final HttpSource real = new HttpSource.UrlConnection();
+        http = (url, headers) -> real.get(url.replace(LibraryCache.BASE_URL, local), headers);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        ScenarioInstaller.deleteRecursive(dir);
+    }
+
+    private void respond(HttpExchange ex) throws IOException {
+        String inm = ex.getRequestHeaders().getFirst("If-None-Match");
+        synchronized (requests) {
+            requests.add(ex.getRequestURI().getPath() + (inm != null ? " inm" : ""));
+            requests.notifyAll();
+        }
+        byte[] data = ("body of " + ex.getRequestURI().getPath() + " " + etag).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("ETag", etag);
+        ex.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        if (cacheControl != null) ex.getResponseHeaders().add("Cache-Control", cacheControl);
+        if (ex.getRequestURI().getPath().startsWith("/moved")) {
+            // Без Location HttpURLConnection не идёт дальше и отдаёт 3xx как есть
+            ex.sendResponseHeaders(307, -1);
+            ex.close();
+            return;
+        }
+        if (etag.equals(inm)) {
+            ex.sendResponseHeaders(304, -1);
+            ex.close();
+            return;
+        }
+        ex.sendResponseHeaders(200, data.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(data);
+        }
+    }
+
+    private LibraryCache cache(long maxBytes) {
+        return new LibraryCache(dir, http, now::get, maxBytes);
+    }
+
+    private static String read(LibraryCache.Response r) throws IOException {
+        try (InputStream in = r.body) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            byte[] tmp = new byte[4096];
+            int n;
+            while ((n = in.read(tmp)) != -1) buf.write(tmp, 0, n);
+            return buf.toString("UTF-8");
+        }
+    }
+
+    private int requestCount() {
+        synchronized (requests) {
+            return requests.size();
+        }
+    }
+
+    @Test
+    public void freshEntryIsServedWithoutNetwork() throws IOException {
+        LibraryCache cache = cache(1 << 20);
+        LibraryCache.Response first = cache.get(JSON_URL, "GET", null);
+        assertEquals("network", first.source);
+        assertEquals("application/json", first.mimeType);
+        assertEquals("*", first.headers.get("Access-Control-Allow-Origin"));
+        String body = read(first);
+
+        now.addAndGet(60_000);
+        LibraryCache.Response second = cache.get(JSON_URL, "GET", null);
+        assertEquals("fresh", second.source);
+        assertEquals(body, read(second));
+        assertEquals(1, requestCount());
+        cache.shutdown();
+    }
+
+    @Test
+    public void staleEntryIsServedAndRevalidatedInBackground() throws Exception {
+        LibraryCache cache = cache(1 << 20);
+        String body = read(cache.get(JSON_URL, "GET", null));
+
+        now.addAndGet(301_000);
+        LibraryCache.Response stale = cache.get(JSON_URL, "GET", null);
+        assertEquals("stale", stale.source);
+        assertEquals(body, read(stale));
+
+        synchronized (requests) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (requests.size() < 2 && System.currentTimeMillis() < deadline) requests.wait(100);
+            assertEquals("/lib/1/2/12.json inm", requests.get(1));
+        }
+        // 304 продлевает срок: следующий запрос снова свежий
+        for (int i = 0; i < 50 && !"fresh".equals(cache.get(JSON_URL, "GET", null).source); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals("fresh", cache.get(JSON_URL, "GET", null).source);
+        cache.shutdown();
+    }
+
+    @Test
+    public void offlineFallsBackToCachedCopy() throws IOException {
+        LibraryCache cache = cache(1 << 20);
+        cacheControl = "no-cache";
+        String body = read(cache.get(JSON_URL, "GET", null));
+        server.stop(0);
+
+        LibraryCache.Response offline = cache.get(JSON_URL, "GET", null);
+        assertEquals("offline", offline.source);
+        assertEquals(body, read(offline));
+
+        LibraryCache.Response missing = cache.get(PNG_URL, "GET", null);
+        assertEquals(504, missing.status);
+        cache.shutdown();
+    }
+
+    @Test
+    public void noStoreIsNotCachedAndOtherMethodsPassThrough() throws IOException {
+        LibraryCache cache = cache(1 << 20);
+        cacheControl = "no-store";
+        read(cache.get(JSON_URL, "GET", null));
+        assertFalse(cache.contains(JSON_URL));
+        assertNull(cache.get(JSON_URL, "POST", null));
+        assertNull(cache.get("https://example.com/a.json", "GET", null));
+        cache.shutdown();
+    }
+
+    @Test
+    public void redirectBecomesBadGateway() throws IOException {
+        LibraryCache cache = cache(1 << 20);
+        String moved = LibraryCache.BASE_URL + "moved.json";
+        LibraryCache.Response r = cache.get(moved, "GET", null);
+        assertEquals(502, r.status);
+        read(r);
+        assertFalse(cache.contains(moved));
+        cache.shutdown();
+    }
+
+    @Test
+    public void bodyIsServedWhenCacheCannotBeWritten() throws IOException {
+        // Вместо папки кэша — обычный файл, записать тело некуда
+        File blocked = new File(dir, "blocked");
+        assertTrue(blocked.createNewFile());
+        LibraryCache cache = new LibraryCache(blocked, http, now::get, 1 << 20);
+        LibraryCache.Response r = cache.get(JSON_URL, "GET", null);
+        assertEquals(200, r.status);
+        assertEquals("network", r.source);
+        assertEquals("body of /lib/1/2/12.json \"a\"", read(r));
+        assertFalse(cache.contains(JSON_URL));
+        cache.shutdown();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedAndReloadsIndex() throws IOException {
+        // Ответ сервера около 19 байт, в лимит помещаются два
+        LibraryCache cache = cache(45);
+        String a = LibraryCache.BASE_URL + "a.json";
+        String b = LibraryCache.BASE_URL + "b.json";
+        String c = LibraryCache.BASE_URL + "c.json";
+        read(cache.get(a, "GET", null));
+        now.addAndGet(1000);
+        read(cache.get(b, "GET", null));
+        now.addAndGet(1000);
+        read(cache.get(a, "GET", null));
+        now.addAndGet(1000);
+        read(cache.get(c, "GET", null));
+        assertTrue(cache.contains(a));
+        assertFalse(cache.contains(b));
+        assertTrue(cache.contains(c));
+        cache.shutdown();
+
+        LibraryCache reopened = cache(45);
+        assertTrue(reopened.contains(a));
+        assertTrue(reopened.contains(c));
+        assertEquals("fresh", reopened.get(c, "GET", null).source);
+        reopened.shutdown();
+    }
+}
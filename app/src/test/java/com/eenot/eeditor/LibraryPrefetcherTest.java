@@ -0,0 +1,162 @@
+package com.eenot.eeditor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class LibraryPrefetcherTest {
+
+    /** Сервер, который отвечает только когда тест выдаст разрешение. */
+    private static final class GatedSource implements HttpSource {
+        final Semaphore gate = new Semaphore(0);
+        final List<String> started = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public Response get(String url, Map<String, String> headers) throws IOException {
+            started.add(url.substring(LibraryCache.BASE_URL.length()));
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                if (!gate.tryAcquire(5, TimeUnit.SECONDS)) throw new IOException("Gate timeout");
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            final byte[] body = url.getBytes(StandardCharsets.UTF_8);
+            return new Response() {
+                @Override
+                public int code() {
+                    return 200;
+                }
+
+                @Override
+                public String header(String name) {
+                    return null;
+                }
+
+                @Override
+                public long contentLength() {
+                    return body.length;
+                }
+
+                @Override
+                public InputStream body() {
+                    return new ByteArrayInputStream(body);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+
+    private File dir;
+    private GatedSource http;
+    private LibraryCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("prefetch").toFile();
+        http = new GatedSource();
+        cache = new LibraryCache(dir, http, System::currentTimeMillis, 1 << 20);
+    }
+
+    @After
+    public void tearDown() {
+        cache.shutdown();
+        ScenarioInstaller.deleteRecursive(dir);
+    }
+
+    private void waitStarted(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (http.started.size() < count && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertTrue("started " + http.started, http.started.size() >= count);
+    }
+
+    private static List<String> cards(String... ids) {
+        List<String> paths = new ArrayList<>();
+        for (String id : ids) paths.add("lib/a/m/" + id);
+        return paths;
+    }
+
+    @Test
+    public void respectsConcurrencyLimit() throws Exception {
+        LibraryPrefetcher prefetcher = new LibraryPrefetcher(cache, 2);
+        assertEquals(12, prefetcher.update(cards("1", "2", "3", "4", "5", "6")));
+        waitStarted(2);
+        http.gate.release(12);
+        waitStarted(12);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!cache.contains(LibraryCache.BASE_URL + "lib/a/m/6.png") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(cache.contains(LibraryCache.BASE_URL + "lib/a/m/6.png"));
+        assertEquals(2, http.maxInFlight.get());
+        // Уже скачанное повторно в очередь не ставится
+        assertEquals(0, prefetcher.update(cards("1", "6")));
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void newListReordersAndDropsHiddenCards() throws Exception {
+        LibraryPrefetcher prefetcher = new LibraryPrefetcher(cache, 1);
+        prefetcher.update(cards("a", "b", "c"));
+        waitStarted(1);
+        // Прокрутили: a и b ушли, c видна, d появилась выше
+        assertEquals(4, prefetcher.update(cards("d", "c")));
+        http.gate.release(5);
+        waitStarted(5);
+        Thread.sleep(50);
+        assertEquals(Arrays.asList("lib/a/m/a.json", "lib/a/m/d.json", "lib/a/m/d.png",
+                "lib/a/m/c.json", "lib/a/m/c.png"), http.started);
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void staleFilesAreQueuedAgain() throws Exception {
+        final AtomicLong now = new AtomicLong(1_000_000L);
+        LibraryCache clocked = new LibraryCache(new File(dir, "clocked"), http, now::get, 1 << 20);
+        LibraryPrefetcher prefetcher = new LibraryPrefetcher(clocked, 2);
+        prefetcher.update(cards("1"));
+        http.gate.release(2);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!(clocked.isFresh(LibraryCache.BASE_URL + "lib/a/m/1.json")
+                && clocked.isFresh(LibraryCache.BASE_URL + "lib/a/m/1.png")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, prefetcher.update(cards("1")));
+        // Копия устарела — карточку снова нужно подкачать
+        now.addAndGet(10 * 60 * 1000L);
+        assertEquals(2, prefetcher.update(cards("1")));
+        prefetcher.shutdown();
+        clocked.shutdown();
+    }
+
+    @Test
+    public void rejectsPathsOutsideLibrary() {
+        LibraryPrefetcher prefetcher = new LibraryPrefetcher(cache, 1);
+        assertEquals(0, prefetcher.update(Arrays.asList("../secret", "lib/../x", "http://evil/", null)));
+        prefetcher.shutdown();
+    }
+}
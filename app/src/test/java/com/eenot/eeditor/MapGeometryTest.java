@@ -0,0 +1,115 @@
+package com.eenot.eeditor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class MapGeometryTest {
+    private static final String MAP = "{"
+            + "\"metadata\": {\"image_size\": {\"width\": 10, \"height\": 8}, \"tags\": [\"a\", {\"b\": null}]},"
+            + "\"provinces\": ["
+            + "  {\"id\": 0, \"vertex_indices\": [0, 1, 2, 3], \"center\": [1.5, 1.5], \"name\": \"Sq\\\"uare\"},"
+            + "  {\"id\": 7, \"vertex_indices\": [\"1\", 4, 2]},"
+            + "  {\"id\": 8, \"vertex_indices\": [1, 99]}"
+            + "],"
+            + "\"vertices_positions\": {\"0\": [1, 1], \"1\": [3, 1], \"2\": [3, 3], \"3\": [1, 3], \"4\": [\"6.5\", 2], \"x\": [0, 0]}"
+            + "}";
+
+    @Test
+    public void parsesFlatBuffers() throws IOException {
+        MapGeometry g = MapGeometry.parse(MAP);
+        assertEquals(3, g.provinceCount());
+        assertArrayEquals(new int[]{0, 7, 8}, g.ids);
+        assertArrayEquals(new int[]{0, 4, 7, 9}, g.offsets);
+        // Вершина 99 не существует — ссылка на добавленную нулевую вершину 5
+        assertArrayEquals(new int[]{0, 1, 2, 3, 1, 4, 2, 1, 5}, g.indices);
+        assertEquals(6, g.vertexCount());
+        assertEquals(6.5f, g.vertices[8], 0f);
+        assertEquals(0f, g.vertices[10], 0f);
+
+        assertArrayEquals(new float[]{1, 1, 3, 3}, slice(g.boxes, 0, 4), 0f);
+        assertArrayEquals(new float[]{3, 1, 6.5f, 3}, slice(g.boxes, 4, 4), 0f);
+        assertArrayEquals(new float[]{0, 0, 3, 1}, slice(g.boxes, 8, 4), 0f);
+        assertEquals(1.5f, g.centers[0], 0f);
+        assertTrue(Float.isNaN(g.centers[2]));
+        assertEquals(8, g.width());
+        assertEquals(4, g.height());
+    }
+
+    @Test
+    public void blobMatchesDocumentedLayout() throws IOException {
+        MapGeometry g = MapGeometry.parse(MAP);
+        ByteBuffer b = ByteBuffer.wrap(g.toBlob()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(MapGeometry.MAGIC, b.getInt(0));
+        assertEquals(MapGeometry.VERSION, b.getInt(4));
+        assertEquals(3, b.getInt(8));
+        assertEquals(6, b.getInt(12));
+        assertEquals(9, b.getInt(16));
+        assertEquals(0f, b.getFloat(32), 0f);
+        assertEquals(6.5f, b.getFloat(40), 0f);
+
+        int off = MapGeometry.HEADER_BYTES;
+        assertEquals(7, b.getInt(off + 4));                 // ids[1]
+        off += 3 * 4;
+        assertEquals(9, b.getInt(off + 3 * 4));             // offsets[3]
+        off += 4 * 4;
+        assertEquals(6.5f, b.getFloat(off + 6 * 4), 0f);    // boxes[1].maxX
+        off += 12 * 4;
+        assertEquals(1.5f, b.getFloat(off), 0f);            // centers[0].x
+        off += 6 * 4;
+        assertEquals(3f, b.getFloat(off + 2 * 4), 0f);      // vertices[1].x
+        off += 12 * 4;
+        assertEquals(5, b.getInt(off + 8 * 4));             // indices[8]
+        assertEquals(off + 9 * 4, b.capacity());
+    }
+
+    @Test
+    public void growsBuffersForLargeMaps() throws IOException {
+        StringBuilder verts = new StringBuilder("\"0\":[0,0],\"1\":[1,0],\"2\":[1,1]");
+        StringBuilder provs = new StringBuilder();
+        for (int p = 0; p < 1500; p++) {
+            if (p > 0) provs.append(',');
+            provs.append("{\"id\":").append(p).append(",\"vertex_indices\":[0,1,2],\"center\":[").append(p).append(",0]}");
+        }
+        MapGeometry g = MapGeometry.parse("{\"vertices_positions\":{" + verts + "},\"provinces\":[" + provs + "]}");
+        assertEquals(1500, g.provinceCount());
+        assertEquals(1499, g.ids[1499]);
+        assertEquals(4500, g.offsets[1500]);
+        assertEquals(1499f, g.centers[2998], 0f);
+    }
+
+    @Test
+    public void sparseVertexKeysAreNumberedDensely() throws IOException {
+        // Ключи почти у предела MAX_VERTEX: массив вершин не должен расти до них
+        MapGeometry g = MapGeometry.parse("{\"vertices_positions\": {"
+                + "\"16000000\": [5, 5], \"7\": [1, 1], \"900000\": [2, 2], \"7\": [3, 1]},"
+                + "\"provinces\": [{\"id\": 1, \"vertex_indices\": [7, 900000, 16000000, 8]}]}");
+        assertEquals(4, g.vertexCount());
+        assertArrayEquals(new int[]{0, 1, 2, 3}, g.indices);
+        // Повторный ключ 7 — последнее значение
+        assertArrayEquals(new float[]{3, 1, 2, 2, 5, 5, 0, 0}, g.vertices, 0f);
+        assertArrayEquals(new float[]{0, 0, 5, 5}, slice(g.boxes, 0, 4), 0f);
+    }
+
+    @Test
+    public void reportsSyntaxErrors() {
+        for (String bad : new String[]{"", "[]", "{\"provinces\": [", "{\"a\": tru}", "{} x",
+                "{\"provinces\": [{\"vertex_indices\": [-1]}]}"}) {
+            try {
+                MapGeometry.parse(bad);
+                fail("Expected error for " + bad);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    private static float[] slice(float[] a, int from, int length) {
+        float[] out = new float[length];
+        System.arraycopy(a, from, out, 0, length);
+        return out;
+    }
+}
@@ -0,0 +1,115 @@
+package com.eenot.eeditor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ProvinceGridTest {
+
+    /** Сетка n × n провинций-ромбов со стороной 10 и одна большая поверх всех. */
+    private static MapGeometry diamonds(int n) throws IOException {
+        StringBuilder verts = new StringBuilder();
+        StringBuilder provs = new StringBuilder();
+        int v = 0;
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                float cx = c * 10 + 5, cy = r * 10 + 5;
+                float[][] pts = {{cx, cy - 5}, {cx + 5, cy}, {cx, cy + 5}, {cx - 5, cy}};
+                if (provs.length() > 0) provs.append(',');
+                provs.append("{\"id\":").append(r * n + c).append(",\"vertex_indices\":[");
+                for (int i = 0; i < 4; i++) {
+                    if (verts.length() > 0) verts.append(',');
+                    verts.append('"').append(v).append("\":[").append(pts[i][0]).append(',').append(pts[i][1]).append(']');
+                    provs.append(i > 0 ? "," : "").append(v++);
+                }
+                provs.append("]}");
+            }
+        }
+        // Квадрат 20..40 поверх ромбов — рисуется последним, значит, выигрывает
+        float[][] top = {{20, 20}, {40, 20}, {40, 40}, {20, 40}};
+        provs.append(",{\"id\":9999,\"vertex_indices\":[");
+        for (int i = 0; i < 4; i++) {
+            verts.append(",\"").append(v).append("\":[").append(top[i][0]).append(',').append(top[i][1]).append(']');
+            provs.append(i > 0 ? "," : "").append(v++);
+        }
+        provs.append("]}");
+        return MapGeometry.parse("{\"vertices_positions\":{" + verts + "},\"provinces\":[" + provs + "]}");
+    }
+
+    /** Тот же расчёт, что в map-edit.js, перебором всех провинций. */
+    private static int bruteAt(MapGeometry g, float x, float y) {
+        for (int p = g.provinceCount() - 1; p >= 0; p--) {
+            int start = g.offsets[p], end = g.offsets[p + 1];
+            boolean inside = false;
+            for (int i = start, j = end - 1; i < end; j = i++) {
+                float xi = g.vertices[g.indices[i] * 2], yi = g.vertices[g.indices[i] * 2 + 1];
+                float xj = g.vertices[g.indices[j] * 2], yj = g.vertices[g.indices[j] * 2 + 1];
+                if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) inside = !inside;
+            }
+            if (inside) return p;
+        }
+        return -1;
+    }
+
+    @Test
+    public void provinceAtMatchesBruteForce() throws IOException {
+        MapGeometry g = diamonds(30);
+        ProvinceGrid grid = new ProvinceGrid(g);
+        Random rnd = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            float x = rnd.nextFloat() * 320 - 10;
+            float y = rnd.nextFloat() * 320 - 10;
+            assertEquals("at " + x + ", " + y, bruteAt(g, x, y), grid.provinceAt(x, y));
+        }
+        // Центр ромба 0 и точка внутри верхнего квадрата
+        assertEquals(0, grid.provinceAt(5, 5));
+        assertEquals(g.provinceCount() - 1, grid.provinceAt(25, 25));
+        assertEquals(-1, grid.provinceAt(0.5f, 0.5f));
+    }
+
+    @Test
+    public void provincesInRectMatchesBoxOverlap() throws IOException {
+        MapGeometry g = diamonds(20);
+        ProvinceGrid grid = new ProvinceGrid(g);
+        Random rnd = new Random(7);
+        int[] out = new int[4];
+        int[] count = new int[1];
+        for (int i = 0; i < 500; i++) {
+            float x0 = rnd.nextFloat() * 220 - 10, y0 = rnd.nextFloat() * 220 - 10;
+            float x1 = x0 + rnd.nextFloat() * 60, y1 = y0 + rnd.nextFloat() * 60;
+            List<Integer> expected = new ArrayList<>();
+            for (int p = 0; p < g.provinceCount(); p++) {
+                if (g.boxes[p * 4] <= x1 && g.boxes[p * 4 + 2] >= x0 && g.boxes[p * 4 + 1] <= y1 && g.boxes[p * 4 + 3] >= y0) {
+                    expected.add(p);
+                }
+            }
+            out = grid.provincesInRect(x1, y1, x0, y0, out, count);
+            List<Integer> actual = new ArrayList<>();
+            for (int k = 0; k < count[0]; k++) actual.add(out[k]);
+            assertEquals(expected, actual);
+        }
+        out = grid.provincesInRect(500, 500, 600, 600, out, count);
+        assertEquals(0, count[0]);
+    }
+
+    @Test
+    public void handlesEmptyAndDegenerateMaps() throws IOException {
+        ProvinceGrid empty = new ProvinceGrid(MapGeometry.parse("{}"));
+        assertEquals(-1, empty.provinceAt(0, 0));
+        int[] count = new int[1];
+        empty.provincesInRect(-1, -1, 1, 1, new int[0], count);
+        assertEquals(0, count[0]);
+
+        MapGeometry line = MapGeometry.parse("{\"vertices_positions\":{\"0\":[1,1],\"1\":[5,1]},"
+                + "\"provinces\":[{\"id\":1,\"vertex_indices\":[0,1]}]}");
+        ProvinceGrid grid = new ProvinceGrid(line);
+        assertEquals(-1, grid.provinceAt(3, 1));
+        assertArrayEquals(new int[0], Arrays.copyOf(grid.provincesInRect(0, 0, 9, 9, new int[1], count), count[0]));
+    }
+}
@@ -0,0 +1,209 @@
+package com.eenot.eeditor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ScenarioInstallerTest {
+    private static final String BASE = "https://example.invalid/scenario/";
+
+    private File dir;
+    private File live;
+    // Содержимое «сервера»: путь → текст
+    private final Map<String, String> served = new HashMap<>();
+    private final List<String> requests = new ArrayList<>();
+    private ScenarioInstaller installer;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("installer").toFile();
+        live = new File(dir, "scenario");
+        HttpSource http = (url, headers) -> {
+            String path = url.substring(BASE.length());
+            requests.add(path);
+            String body = served.get(path);
+            return response(body == null ? 404 : 200, body == null ? "" : body);
+        };
+        installer = new ScenarioInstaller(live, new UpdateDownloader(new File(dir, "state.properties"), http));
+    }
+
+    private static String sha256(String text) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8))) {
+            sb.append(String.format(Locale.ROOT, "%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    /** Манифест по парам путь/содержимое; те же файлы выкладываются на «сервер». */
+    private ScenarioInstaller.Manifest publish(String version, String... pathsAndContents) throws Exception {
+        served.clear();
+        StringBuilder sb = new StringBuilder("{\"version\":\"").append(version).append("\",\"files\":[");
+        for (int i = 0; i < pathsAndContents.length; i += 2) {
+            String path = pathsAndContents[i];
+            String content = pathsAndContents[i + 1];
+            served.put(path, content);
+            if (i > 0) sb.append(',');
+            sb.append("{\"path\":\"").append(path)
+                    .append("\",\"sha256\":\"").append(sha256(content))
+                    .append("\",\"size\":").append(content.getBytes(StandardCharsets.UTF_8).length).append('}');
+        }
+        return ScenarioInstaller.parse(sb.append("]}").toString());
+    }
+
+    private static String read(File f) throws IOException {
+        return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File f, String text) throws IOException {
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void parsesManifestAndRejectsBadPaths() throws IOException {
+        ScenarioInstaller.Manifest m = ScenarioInstaller.parse(
+                "{\"version\":\"1.2\",\"files\":[{\"path\":\"a/b.json\",\"sha256\":\"ABCD\",\"size\":3},"
+                        + "{\"path\":\"c.json\",\"sha256\":\"ef\"}]}");
+        assertEquals("1.2", m.version);
+        assertEquals(2, m.files.size());
+        assertEquals("a/b.json", m.files.get(0).path);
+        assertEquals("abcd", m.files.get(0).sha256);
+        assertEquals(3, m.files.get(0).size);
+        assertEquals(-1, m.files.get(1).size);
+
+        for (String path : Arrays.asList("", "/etc/passwd", "a/../../b", ScenarioInstaller.MANIFEST_NAME)) {
+            try {
+                ScenarioInstaller.parse("{\"files\":[{\"path\":\"" + path + "\",\"sha256\":\"00\"}]}");
+                fail(path);
+            } catch (IOException expected) {
+            }
+        }
+        try {
+            ScenarioInstaller.parse("{\"version\":\"1\"}");
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void installDeltaDownloadsOnlyChangedFiles() throws Exception {
+        installer.installDelta(publish("1", "a.json", "aaa", "maps/b.json", "bbb"), BASE, null);
+        assertEquals("aaa", read(new File(live, "a.json")));
+        assertEquals("bbb", read(new File(live, "maps/b.json")));
+        assertTrue(new File(live, ScenarioInstaller.MANIFEST_NAME).isFile());
+
+        requests.clear();
+        installer.installDelta(publish("2", "a.json", "aaa", "maps/b.json", "BBB!", "c.json", "ccc"), BASE, null);
+        Collections.sort(requests);
+        assertEquals(Arrays.asList("c.json", "maps/b.json"), requests);
+        assertEquals("aaa", read(new File(live, "a.json")));
+        assertEquals("BBB!", read(new File(live, "maps/b.json")));
+        assertEquals("ccc", read(new File(live, "c.json")));
+        assertFalse(installer.stagingDir().exists());
+        assertFalse(new File(dir, "scenario.old").exists());
+    }
+
+    @Test
+    public void fileEditedAfterInstallIsDownloadedAgain() throws Exception {
+        installer.installDelta(publish("1", "a.json", "aaa", "b.json", "bbb"), BASE, null);
+        // Тот же размер — отличить правку можно только по времени изменения
+        File edited = new File(live, "a.json");
+        write(edited, "xyz");
+        edited.setLastModified(new File(live, ScenarioInstaller.MANIFEST_NAME).lastModified() + 10_000);
+
+        requests.clear();
+        installer.installDelta(publish("1", "a.json", "aaa", "b.json", "bbb"), BASE, null);
+        assertEquals(Collections.singletonList("a.json"), requests);
+        assertEquals("aaa", read(edited));
+    }
+
+    @Test
+    public void hashMismatchKeepsLiveVersion() throws Exception {
+        installer.installDelta(publish("1", "a.json", "aaa"), BASE, null);
+        ScenarioInstaller.Manifest next = publish("2", "a.json", "new");
+        served.put("a.json", "bad");
+        try {
+            installer.installDelta(next, BASE, null);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals("aaa", read(new File(live, "a.json")));
+        assertFalse(installer.stagingDir().exists());
+    }
+
+    @Test
+    public void swapReplacesLiveDirectory() throws Exception {
+        write(new File(live, "old.json"), "old");
+        installer.prepareStaging();
+        write(new File(installer.stagingDir(), "new.json"), "new");
+        installer.swap();
+        assertEquals("new", read(new File(live, "new.json")));
+        assertFalse(new File(live, "old.json").exists());
+        assertFalse(installer.stagingDir().exists());
+        assertFalse(new File(dir, "scenario.old").exists());
+    }
+
+    @Test
+    public void recoverRestoresOldDirectoryAfterInterruptedSwap() throws Exception {
+        // Падение между переименованиями: рабочей папки нет, старая отложена
+        File old = new File(dir, "scenario.old");
+        write(new File(old, "a.json"), "aaa");
+        write(new File(installer.stagingDir(), "a.json"), "half");
+        installer.recover();
+        assertEquals("aaa", read(new File(live, "a.json")));
+        assertFalse(old.exists());
+        assertFalse(installer.stagingDir().exists());
+
+        // Если подмена успела завершиться, остатки просто удаляются
+        write(new File(old, "a.json"), "stale");
+        installer.recover();
+        assertEquals("aaa", read(new File(live, "a.json")));
+        assertFalse(old.exists());
+    }
+
+    private static HttpSource.Response response(final int code, final String body) {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return new HttpSource.Response() {
+            @Override
+            public int code() {
+                return code;
+            }
+
+            @Override
+            public String header(String name) {
+                return null;
+            }
+
+            @Override
+            public long contentLength() {
+                return bytes.length;
+            }
+
+            @Override
+            public InputStream body() {
+                return new ByteArrayInputStream(bytes);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
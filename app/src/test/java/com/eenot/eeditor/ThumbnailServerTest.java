@@ -0,0 +1,47 @@
+package com.eenot.eeditor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailServerTest {
+
+    @Test
+    public void parsesAssetAndLibraryUrls() {
+        ThumbnailServer.Request asset = ThumbnailServer.parse(
+                ThumbnailServer.PREFIX + "100/assets/img/ads/saturn%20screen.png?x=1");
+        assertNotNull(asset);
+        assertFalse(asset.library);
+        assertEquals(128, asset.width);
+        assertEquals("img/ads/saturn screen.png", asset.path);
+
+        ThumbnailServer.Request lib = ThumbnailServer.parse(
+                ThumbnailServer.PREFIX + "840/library/lib/eenot/world/eenot_world_v1_modern-world.png");
+        assertNotNull(lib);
+        assertTrue(lib.library);
+        assertEquals(896, lib.width);
+        assertEquals("lib/eenot/world/eenot_world_v1_modern-world.png", lib.path);
+    }
+
+    @Test
+    public void rejectsBadUrls() {
+        assertNull(ThumbnailServer.parse(ThumbnailServer.PREFIX + "abc/assets/img/a.png"));
+        assertNull(ThumbnailServer.parse(ThumbnailServer.PREFIX + "64/other/img/a.png"));
+        assertNull(ThumbnailServer.parse(ThumbnailServer.PREFIX + "64/assets/../secret.png"));
+        assertNull(ThumbnailServer.parse(ThumbnailServer.PREFIX + "64/assets/%2E%2E/secret.png"));
+        assertNull(ThumbnailServer.parse(LocalAssetServer.ORIGIN + "/assets/1/img/a.png"));
+    }
+
+    @Test
+    public void bucketsAndSampleSizes() {
+        assertEquals(64, ThumbnailServer.bucket(1));
+        assertEquals(64, ThumbnailServer.bucket(64));
+        assertEquals(128, ThumbnailServer.bucket(65));
+        assertEquals(ThumbnailServer.MAX_WIDTH, ThumbnailServer.bucket(100_000));
+
+        assertEquals(1, ThumbnailServer.sampleSize(500, 300));
+        assertEquals(2, ThumbnailServer.sampleSize(1200, 600));
+        assertEquals(4, ThumbnailServer.sampleSize(2560, 512));
+        assertEquals(4, ThumbnailServer.sampleSize(2559, 512));
+    }
+}
@@ -0,0 +1,155 @@
+package com.eenot.eeditor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UpdateDownloaderTest {
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private File dir;
+    private byte[] body;
+    // Сколько байт отдать до обрыва соединения; -1 — всё
+    private volatile int cutAfter = -1;
+    private volatile boolean rangeSupported = true;
+    private final List<String> requests = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("update").toFile();
+        body = new byte[200_000];
+        for (int i = 0; i < body.length; i++) body[i] = (byte) (i * 31);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/version.txt", ex -> respond(ex, "1.10.0\n".getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/main.zip", ex -> respond(ex, body));
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private void respond(HttpExchange ex, byte[] data) throws IOException {
+        String inm = ex.getRequestHeaders().getFirst("If-None-Match");
+        String range = ex.getRequestHeaders().getFirst("Range");
+        synchronized (requests) {
+            requests.add(ex.getRequestURI().getPath() + (inm != null ? " inm" : "") + (range != null ? " " + range : ""));
+        }
+        ex.getResponseHeaders().add("ETag", ETAG);
+        if (ETAG.equals(inm)) {
+            ex.sendResponseHeaders(304, -1);
+            ex.close();
+            return;
+        }
+        int from = 0;
+        if (range != null && rangeSupported && ETAG.equals(ex.getRequestHeaders().getFirst("If-Range"))) {
+            from = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+            ex.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + (data.length - 1) + "/" + data.length);
+            ex.sendResponseHeaders(206, data.length - from);
+        } else {
+            ex.sendResponseHeaders(200, data.length);
+        }
+        try (OutputStream out = ex.getResponseBody()) {
+            int end = cutAfter >= 0 ? Math.min(data.length, from + cutAfter) : data.length;
+            out.write(data, from, end - from);
+            out.flush();
+        } catch (IOException ignored) {
+            // Обрыв соединения сымитирован намеренно
+        }
+        ex.close();
+    }
+
+    @Test
+    public void secondVersionCheckIsNotModified() throws IOException {
+        UpdateDownloader d = new UpdateDownloader(new File(dir, "state"));
+        assertEquals("1.10.0", d.fetchText(url("/version.txt")));
+        // Пока версия не установлена, проверка остаётся безусловной
+        assertEquals("1.10.0", d.fetchText(url("/version.txt")));
+        assertEquals("1.10.0", new UpdateDownloader(new File(dir, "state")).fetchText(url("/version.txt")));
+        d.commit(url("/version.txt"));
+        assertNull(d.fetchText(url("/version.txt")));
+        // Состояние переживает перезапуск
+        assertNull(new UpdateDownloader(new File(dir, "state")).fetchText(url("/version.txt")));
+        d.forget(url("/version.txt"));
+        assertEquals("1.10.0", d.fetchText(url("/version.txt")));
+    }
+
+    @Test
+    public void interruptedDownloadResumesWithRange() throws IOException {
+        File target = new File(dir, "main.zip");
+        cutAfter = 50_000;
+        try {
+            new UpdateDownloader(new File(dir, "state")).download(url("/main.zip"), target, false, null);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertFalse(target.exists());
+        assertEquals(50_000, new File(dir, "main.zip.part").length());
+
+        cutAfter = -1;
+        final long[] first = {-1};
+        assertTrue(new UpdateDownloader(new File(dir, "state")).download(url("/main.zip"), target, false,
+                (done, total) -> {
+                    if (first[0] < 0) first[0] = done;
+                    assertEquals(body.length, total);
+                }));
+        assertEquals(50_000, first[0]);
+        assertArrayEquals(body, Files.readAllBytes(target.toPath()));
+        assertTrue(requests.contains("/main.zip bytes=50000-"));
+        assertFalse(new File(dir, "main.zip.part").exists());
+
+        assertFalse(new UpdateDownloader(new File(dir, "state")).download(url("/main.zip"), target, true, null));
+    }
+
+    @Test
+    public void restartsWhenServerIgnoresRange() throws IOException {
+        File target = new File(dir, "main.zip");
+        cutAfter = 1000;
+        UpdateDownloader d = new UpdateDownloader(new File(dir, "state"));
+        try {
+            d.download(url("/main.zip"), target, false, null);
+            fail();
+        } catch (IOException expected) {
+        }
+        cutAfter = -1;
+        rangeSupported = false;
+        assertTrue(d.download(url("/main.zip"), target, false, null));
+        assertArrayEquals(body, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void comparesSemanticVersions() {
+        assertTrue(UpdateDownloader.compareVersions("1.10.0", "1.9.9") > 0);
+        assertTrue(UpdateDownloader.compareVersions("v2.0", "1.99") > 0);
+        assertEquals(0, UpdateDownloader.compareVersions("1.2", "1.2.0"));
+        assertEquals(0, UpdateDownloader.compareVersions("1.2.0+build5", "1.2.0"));
+        assertTrue(UpdateDownloader.compareVersions("1.0-beta", "1.0") < 0);
+        assertTrue(UpdateDownloader.compareVersions("1.0-beta.2", "1.0-beta.10") < 0);
+        assertTrue(UpdateDownloader.compareVersions("1.0-alpha", "1.0-beta") < 0);
+        assertTrue(UpdateDownloader.compareVersions("010", "9") > 0);
+        for (String v : Arrays.asList("1", "1.0.1", "2.0-rc1")) {
+            assertEquals(0, UpdateDownloader.compareVersions(v, v));
+        }
+    }
+}
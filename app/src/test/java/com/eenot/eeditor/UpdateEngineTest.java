@@ -0,0 +1,193 @@
+package com.eenot.eeditor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class UpdateEngineTest {
+
+    /** Часы, которые идут только вручную; sleep лишь запоминает задержку. */
+    private static final class FakeClock implements UpdateEngine.Clock {
+        long now;
+        final List<Long> sleeps = new ArrayList<>();
+
+        @Override
+        public long millis() {
+            return now;
+        }
+
+        @Override
+        public void sleep(long ms) {
+            sleeps.add(ms);
+            now += ms;
+        }
+    }
+
+    private static final class Recorder implements UpdateManager.UpdateCallback {
+        final List<Integer> progress = Collections.synchronizedList(new ArrayList<>());
+        volatile Boolean completed;
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onUpdateCompleted(boolean updated) {
+            completed = updated;
+            done.countDown();
+        }
+
+        @Override
+        public void onUpdateProgress(boolean isLoading, int value) {
+            assertTrue(isLoading);
+            progress.add(value);
+        }
+    }
+
+    private static UpdateEngine engine(FakeClock clock) {
+        return new UpdateEngine(Runnable::run, Runnable::run, clock, 4, 1000, 3000, 100);
+    }
+
+    @Test
+    public void retriesWithExponentialBackoff() {
+        FakeClock clock = new FakeClock();
+        Recorder callback = new Recorder();
+        AtomicInteger attempts = new AtomicInteger();
+        engine(clock).start(run -> {
+            if (attempts.incrementAndGet() < 4) throw new IOException("flaky");
+            return true;
+        }, callback);
+        assertEquals(4, attempts.get());
+        assertEquals(java.util.Arrays.asList(1000L, 2000L, 3000L), clock.sleeps);
+        assertEquals(Boolean.TRUE, callback.completed);
+        assertEquals(Collections.singletonList(0), callback.progress);
+    }
+
+    @Test
+    public void givesUpAfterMaxAttemptsAndDoesNotRetryNotFound() {
+        FakeClock clock = new FakeClock();
+        Recorder callback = new Recorder();
+        AtomicInteger attempts = new AtomicInteger();
+        UpdateEngine.Run run = engine(clock).start(r -> {
+            attempts.incrementAndGet();
+            throw new IOException("down");
+        }, callback);
+        assertEquals(4, attempts.get());
+        assertEquals(Boolean.FALSE, callback.completed);
+        assertEquals("down", run.error().getMessage());
+
+        attempts.set(0);
+        engine(clock).start(r -> {
+            attempts.incrementAndGet();
+            throw new FileNotFoundException("gone");
+        }, new Recorder());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void throttlesProgressByTime() {
+        final FakeClock clock = new FakeClock();
+        Recorder callback = new Recorder();
+        engine(clock).start(run -> {
+            for (int p = 1; p <= 100; p++) {
+                clock.now += 10;
+                run.progress(p);
+                run.progress(p - 1); // назад не идёт
+            }
+            return true;
+        }, callback);
+        // 0 из start, затем раз в 100 мс, и обязательно 100 в конце
+        assertEquals(java.util.Arrays.asList(0, 1, 11, 21, 31, 41, 51, 61, 71, 81, 91, 100), callback.progress);
+    }
+
+    @Test
+    public void cancelInterruptsRunningAttempt() throws Exception {
+        Recorder callback = new Recorder();
+        CountDownLatch started = new CountDownLatch(1);
+        final boolean[] sawCancel = {false};
+        UpdateEngine engine = new UpdateEngine(Executors.newSingleThreadExecutor(), Runnable::run,
+                UpdateEngine.SYSTEM_CLOCK, 4, 10, 10, 0);
+        UpdateEngine.Run run = engine.start(r -> {
+            started.countDown();
+            try {
+                while (true) {
+                    r.progress(1);
+                    Thread.sleep(5);
+                }
+            } catch (InterruptedException | InterruptedIOException e) {
+                sawCancel[0] = true;
+                throw new InterruptedIOException();
+            }
+        }, callback);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        run.cancel();
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertEquals(Boolean.FALSE, callback.completed);
+        assertTrue(sawCancel[0]);
+    }
+
+    @Test
+    public void downloaderUsesInjectedHttpSource() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        HttpSource flaky = (url, headers) -> {
+            if (calls.incrementAndGet() == 1) throw new IOException("connection reset");
+            boolean cached = headers != null && "\"a\"".equals(headers.get("If-None-Match"));
+            return response(cached ? 304 : 200, "2.0.1\n");
+        };
+        UpdateDownloader downloader = new UpdateDownloader(
+                Files.createTempFile("state", ".properties").toFile(), flaky);
+        final String[] version = new String[2];
+        Recorder callback = new Recorder();
+        engine(new FakeClock()).start(run -> {
+            version[0] = downloader.fetchText("https://example.invalid/version.txt");
+            downloader.commit("https://example.invalid/version.txt");
+            version[1] = downloader.fetchText("https://example.invalid/version.txt");
+            return true;
+        }, callback);
+        assertEquals(Boolean.TRUE, callback.completed);
+        assertEquals("2.0.1", version[0]);
+        assertNull(version[1]);
+        assertEquals(3, calls.get());
+    }
+
+    private static HttpSource.Response response(final int code, final String body) {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return new HttpSource.Response() {
+            @Override
+            public int code() {
+                return code;
+            }
+
+            @Override
+            public String header(String name) {
+                return "ETag".equalsIgnoreCase(name) ? "\"a\"" : null;
+            }
+
+            @Override
+            public long contentLength() {
+                return bytes.length;
+            }
+
+            @Override
+            public InputStream body() {
+                return new ByteArrayInputStream(bytes);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package com.eenot.eeditor;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ZipExtractorTest {
+
+    private static File zip(File dir, String... namesAndContents) throws IOException {
+        File f = new File(dir, "a.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(f))) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                if (namesAndContents[i + 1] != null) {
+                    out.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                }
+                out.closeEntry();
+            }
+        }
+        return f;
+    }
+
+    @Test
+    public void extractsInParallelStrippingRootFolder() throws IOException {
+        File dir = Files.createTempDirectory("zip").toFile();
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) big.append(i % 10);
+        File zip = zip(dir,
+                "repo-main/", null,
+                "repo-main/index.html", "<html>",
+                "repo-main/js/a.js", "var a;",
+                "repo-main/js/deep/b.json", big.toString(),
+                "repo-main/empty/", null);
+        File dest = new File(dir, "out");
+        final AtomicLong last = new AtomicLong();
+        final AtomicLong total = new AtomicLong();
+        int count = ZipExtractor.extract(zip, dest, 1, (done, t) -> {
+            last.accumulateAndGet(done, Math::max);
+            total.set(t);
+        });
+        assertEquals(3, count);
+        assertEquals("<html>", new String(Files.readAllBytes(new File(dest, "index.html").toPath()), StandardCharsets.UTF_8));
+        assertEquals(big.toString(), new String(Files.readAllBytes(new File(dest, "js/deep/b.json").toPath()), StandardCharsets.UTF_8));
+        assertTrue(new File(dest, "empty").isDirectory());
+        assertEquals(6 + 6 + 100_000, total.get());
+        assertEquals(total.get(), last.get());
+    }
+
+    @Test
+    public void rejectsEntriesOutsideTarget() throws IOException {
+        File dir = Files.createTempDirectory("zip").toFile();
+        File zip = zip(dir, "root/../../evil.txt", "x");
+        try {
+            ZipExtractor.extract(zip, new File(dir, "out"), 1, null);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertFalse(new File(dir, "evil.txt").exists());
+    }
+
+    @Test
+    public void stripsPathComponents() {
+        assertEquals("a/b.txt", ZipExtractor.strip("root/a/b.txt", 1));
+        assertEquals("", ZipExtractor.strip("root/", 1));
+        assertNull(ZipExtractor.strip("file.txt", 1));
+    }
+}